@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import coyote.cli.actions.Action;
+
+
+/**
+ * A source of actions keyed by their noun.
+ * 
+ * <p>The implementation used by the CLI is generated at build time from the 
+ * {@link coyote.cli.actions.Noun} annotations on the actions.</p>
+ */
+public interface ActionRegistry {
+
+  /**
+   * @return the (lower case) nouns of all the actions in this registry
+   */
+  public String[] getNouns();
+
+
+
+
+  /**
+   * Create a new instance of the action registered under the given noun.
+   * 
+   * @param noun the lower case noun of the action
+   * 
+   * @return a new action or null if no action is registered under the noun
+   */
+  public Action newAction( String noun );
+
+}
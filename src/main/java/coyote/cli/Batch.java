@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import coyote.commons.StringUtil;
+
+
+/**
+ * Runs many command lines in this JVM on a bounded pool of workers.
+ * 
+ * <p>Each line of the batch file is one command line, parsed exactly as if
+ * it had been given to the CLI. Blank lines and lines starting with '#' are
+ * ignored. The output of each command is collected separately and written
+ * in the order of the file, followed by a summary of the failures and
+ * timings.</p>
+ */
+public class Batch {
+
+  /**
+   * One line of the batch and the results of running it.
+   */
+  private static class Command {
+    int line;
+    String text;
+    int code;
+    long elapsed;
+    byte[] out;
+    byte[] err;
+  }
+
+  private final CLI cli;
+
+
+
+
+  /**
+   * @param cli the configured CLI used to run each command
+   */
+  public Batch( final CLI cli ) {
+    this.cli = cli;
+  }
+
+
+
+
+  /**
+   * Run all the commands in the given file.
+   * 
+   * @param file the file containing one command line per line
+   * @param threads the maximum number of commands run at the same time
+   * 
+   * @return 0 if all the commands succeeded, 1 otherwise
+   * 
+   * @throws IOException if the batch file could not be read
+   */
+  public int run( final File file, final int threads ) throws IOException {
+    final List<Command> commands = read( file );
+    final File directory = ExecutionContext.current().getDirectory();
+
+    // each command runs in a context of its own, this is the batch's
+    final ExecutionContext context = ExecutionContext.current();
+    final boolean quiet = context.isQuiet();
+    final boolean debug = context.isDebug();
+    final PrintStream out = context.getOut();
+    final PrintStream console = context.getConsole();
+    final PrintStream err = context.getErr();
+
+    final int workers = Math.max( 1, threads );
+
+    final ExecutorService pool = Executors.newFixedThreadPool( workers, new ThreadFactory() {
+      int count = 0;
+
+
+      @Override
+      public synchronized Thread newThread( final Runnable r ) {
+        final Thread thread = new Thread( r, "cliqs-batch-" + ( ++count ) );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+
+    final long start = System.currentTimeMillis();
+    final List<Command> failures = new ArrayList<Command>();
+    long slowest = 0;
+    long total = 0;
+
+    try {
+      // keep a window of commands in flight and write them out in order
+      final LinkedList<Future<Command>> pending = new LinkedList<Future<Command>>();
+      for ( int x = 0; x <= commands.size(); x++ ) {
+        while ( !pending.isEmpty() && ( ( pending.size() >= ( workers * 2 ) ) || ( x == commands.size() ) ) ) {
+          final Command done = pending.removeFirst().get();
+          out.write( done.out );
+          err.write( done.err );
+          err.flush();
+
+          total += done.elapsed;
+          slowest = Math.max( slowest, done.elapsed );
+          if ( done.code != 0 ) {
+            failures.add( done );
+          }
+        }
+
+        if ( x < commands.size() ) {
+          final Command command = commands.get( x );
+          final FutureTask<Command> task = new FutureTask<Command>( new Callable<Command>() {
+            @Override
+            public Command call() {
+              return execute( command, directory );
+            }
+          } );
+          pending.add( task );
+
+          if ( workers == 1 ) {
+            task.run();
+          } else {
+            pool.execute( task );
+          }
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    } catch ( final ExecutionException e ) {
+      throw new IOException( "Batch command failed: " + e.getCause(), e.getCause() );
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    // summarize the failures and timings
+    if ( !quiet ) {
+      final long elapsed = System.currentTimeMillis() - start;
+      console.println( "Batch of " + commands.size() + " commands completed with " + failures.size() + " failures in " + elapsed + "ms" );
+      for ( final Command failure : failures ) {
+        console.println( "  line " + failure.line + " exited with " + failure.code + ": " + failure.text );
+      }
+      if ( debug && ( commands.size() > 0 ) ) {
+        console.println( "  average command time " + ( total / commands.size() ) + "ms, slowest " + slowest + "ms, " + workers + " workers" );
+      }
+      console.flush();
+    }
+
+    return failures.isEmpty() ? 0 : 1;
+  }
+
+
+
+
+  /**
+   * Run one command capturing its output.
+   */
+  private Command execute( final Command command, final File directory ) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    final PrintStream stdout = new PrintStream( out, true );
+    final PrintStream stderr = new PrintStream( err, true );
+
+    final long start = System.currentTimeMillis();
+    final ExecutionContext context = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), stdout, stderr );
+    context.setDirectory( directory );
+    command.code = cli.run( StringUtil.splitArguments( command.text ), context );
+    command.elapsed = System.currentTimeMillis() - start;
+
+    command.out = out.toByteArray();
+    command.err = err.toByteArray();
+    return command;
+  }
+
+
+
+
+  /**
+   * Read the commands from the batch file.
+   */
+  private List<Command> read( final File file ) throws IOException {
+    final List<Command> retval = new ArrayList<Command>();
+    try (BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), StringUtil.UTF_8 ) )) {
+      int count = 0;
+      String line;
+      while ( ( line = reader.readLine() ) != null ) {
+        count++;
+        final String text = line.trim();
+        if ( ( text.length() > 0 ) && !text.startsWith( "#" ) ) {
+          final Command command = new Command();
+          command.line = count;
+          command.text = text;
+          retval.add( command );
+        }
+      }
+    }
+    return retval;
+  }
+
+}
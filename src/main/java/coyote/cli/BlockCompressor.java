@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * An output stream which compresses what is written to it on several threads.
+ * 
+ * <p>The data is cut into fixed-size blocks which are compressed at the same
+ * time on a pool shared by every compressor in the JVM, one thread per
+ * processor. The compressed blocks are written to the target in the order
+ * they were written, so the output scales with the number of cores and is
+ * still read by the usual tools:</p>
+ * <ul>
+ * <li>{@code gzip} - each block is a gzip member of its own; the members of a
+ * gzip file are read one after the other by {@code gunzip} and
+ * {@code GZIPInputStream}</li>
+ * <li>{@code deflate} - a single zlib stream whose blocks each end on a byte
+ * boundary (a sync flush) with the checksum of all the data at the end</li>
+ * </ul>
+ * 
+ * <p>Each block is compressed without the history of the one before it, 
+ * which costs a little in size for the speed. Flushing the stream writes the
+ * blocks which are done but does not cut the current block short, so 
+ * frequent flushes do not spoil the compression; what remains is written 
+ * when the stream is closed.</p>
+ */
+public class BlockCompressor extends OutputStream {
+
+  /** Write a multi-member gzip stream */
+  public static final String GZIP = "gzip";
+
+  /** Write a zlib (deflate) stream */
+  public static final String DEFLATE = "deflate";
+
+  /** The number of bytes compressed as one block */
+  public static final int BLOCK_SIZE = 256 * 1024;
+
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+  /** The header of a gzip member: deflate, no name, no time, unknown OS */
+  private static final byte[] GZIP_HEADER = { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff };
+
+  /** The header of a zlib stream: deflate with a 32k window, default level */
+  private static final byte[] ZLIB_HEADER = { 0x78, (byte)0x9c };
+
+  /** Compresses the blocks of every compressor, created when first needed */
+  private static ExecutorService pool = null;
+
+  private final OutputStream target;
+  private final boolean gzip;
+  private final int level;
+  private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+  private final Adler32 checksum = new Adler32();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int count = 0;
+  private boolean started = false;
+  private boolean closed = false;
+
+
+
+
+  /**
+   * Create a compressor writing to the given target.
+   * 
+   * @param target where the compressed data is written, closed with this
+   *        stream
+   * @param format either {@link #GZIP} or {@link #DEFLATE}
+   * @param level the compression level, 0-9 or -1 for the default
+   * 
+   * @throws IllegalArgumentException if the format is not supported
+   */
+  public BlockCompressor( final OutputStream target, final String format, final int level ) {
+    if ( GZIP.equalsIgnoreCase( format ) ) {
+      gzip = true;
+    } else if ( DEFLATE.equalsIgnoreCase( format ) ) {
+      gzip = false;
+    } else {
+      throw new IllegalArgumentException( "Unsupported compression '" + format + "' (use gzip or deflate)" );
+    }
+    this.target = target;
+    this.level = level;
+  }
+
+
+
+
+  /**
+   * @return the pool compressing the blocks
+   */
+  private static synchronized ExecutorService getPool() {
+    if ( pool == null ) {
+      pool = Executors.newFixedThreadPool( THREADS, new ThreadFactory() {
+        int count = 0;
+
+
+        @Override
+        public synchronized Thread newThread( final Runnable r ) {
+          final Thread thread = new Thread( r, "cliqs-compress-" + ( ++count ) );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+    return pool;
+  }
+
+
+
+
+  /**
+   * Compress a block into a gzip member or a piece of a zlib stream.
+   */
+  private static byte[] compress( final byte[] data, final int length, final boolean gzip, final boolean last, final int level ) {
+    final Deflater deflater = new Deflater( level, true );
+    try {
+      final Bytes out = new Bytes( length / 2 + 64 );
+      if ( gzip ) {
+        out.write( GZIP_HEADER, 0, GZIP_HEADER.length );
+      }
+
+      deflater.setInput( data, 0, length );
+      if ( gzip || last ) {
+        deflater.finish();
+        while ( !deflater.finished() ) {
+          out.deflate( deflater, Deflater.NO_FLUSH );
+        }
+      } else {
+        // end on a byte boundary so the next block can follow
+        while ( out.deflate( deflater, Deflater.SYNC_FLUSH ) ) {}
+      }
+
+      if ( gzip ) {
+        final CRC32 crc = new CRC32();
+        crc.update( data, 0, length );
+        out.writeInt( (int)crc.getValue(), false );
+        out.writeInt( length, false );
+      }
+      return out.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+
+
+
+  /**
+   * A growing byte array which the deflater writes into.
+   */
+  private static class Bytes {
+    private byte[] data;
+    private int size = 0;
+
+
+
+
+    Bytes( final int capacity ) {
+      data = new byte[Math.max( capacity, 64 )];
+    }
+
+
+
+
+    /**
+     * Run the deflater into the free space.
+     * 
+     * @return true if it filled the space and may have more to write
+     */
+    boolean deflate( final Deflater deflater, final int flush ) {
+      if ( size == data.length ) {
+        grow( data.length );
+      }
+      final int free = data.length - size;
+      final int written = deflater.deflate( data, size, free, flush );
+      size += written;
+      return written == free;
+    }
+
+
+
+
+    private void grow( final int more ) {
+      final byte[] bigger = new byte[Math.max( data.length * 2, size + more )];
+      System.arraycopy( data, 0, bigger, 0, size );
+      data = bigger;
+    }
+
+
+
+
+    byte[] toByteArray() {
+      if ( size == data.length ) {
+        return data;
+      }
+      final byte[] retval = new byte[size];
+      System.arraycopy( data, 0, retval, 0, size );
+      return retval;
+    }
+
+
+
+
+    void write( final byte[] b, final int off, final int len ) {
+      if ( ( data.length - size ) < len ) {
+        grow( len );
+      }
+      System.arraycopy( b, off, data, size, len );
+      size += len;
+    }
+
+
+
+
+    void writeInt( final int value, final boolean bigEndian ) {
+      final byte[] b = new byte[4];
+      for ( int x = 0; x < 4; x++ ) {
+        b[bigEndian ? 3 - x : x] = (byte)( value >>> ( 8 * x ) );
+      }
+      write( b, 0, 4 );
+    }
+  }
+
+
+
+
+  /**
+   * Compress the remaining data, write everything to the target and close
+   * it.
+   * 
+   * @see java.io.OutputStream#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    try {
+      // a zlib stream always ends with a final block, a gzip stream needs at 
+      // least one member
+      if ( ( count > 0 ) || !gzip || !started ) {
+        submit( true );
+      }
+      drain( true );
+      if ( !gzip ) {
+        final Bytes trailer = new Bytes( 4 );
+        trailer.writeInt( (int)checksum.getValue(), true );
+        target.write( trailer.toByteArray() );
+      }
+      target.flush();
+    }
+    finally {
+      target.close();
+    }
+  }
+
+
+
+
+  /**
+   * Write the compressed blocks which are done, in order.
+   * 
+   * @param wait true to wait for all of them
+   */
+  private void drain( final boolean wait ) throws IOException {
+    while ( !pending.isEmpty() && ( wait || pending.getFirst().isDone() ) ) {
+      writeNext();
+    }
+  }
+
+
+
+
+  /**
+   * Write the compressed blocks which are done to the target and flush it.
+   * 
+   * <p>The current block is not cut short; it is written when it is full or
+   * when the stream is closed.</p>
+   * 
+   * @see java.io.OutputStream#flush()
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    if ( !closed ) {
+      drain( false );
+      target.flush();
+    }
+  }
+
+
+
+
+  /**
+   * Hand the current block to the pool.
+   */
+  private void submit( final boolean last ) throws IOException {
+    if ( !started ) {
+      started = true;
+      if ( !gzip ) {
+        target.write( ZLIB_HEADER );
+      }
+    }
+
+    final byte[] data = block;
+    final int length = count;
+    pending.add( getPool().submit( new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        return compress( data, length, gzip, last, level );
+      }
+    } ) );
+    block = new byte[BLOCK_SIZE];
+    count = 0;
+
+    // write what is done, and keep no more than two blocks a thread waiting
+    drain( false );
+    while ( pending.size() > ( THREADS * 2 ) ) {
+      writeNext();
+    }
+  }
+
+
+
+
+  /**
+   * Wait for the oldest block to be compressed and write it to the target.
+   */
+  private void writeNext() throws IOException {
+    try {
+      target.write( pending.removeFirst().get() );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while compressing" );
+    } catch ( final ExecutionException e ) {
+      throw new IOException( "Could not compress output: " + e.getCause(), e.getCause() );
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public synchronized void write( final byte[] b, int off, int len ) throws IOException {
+    if ( closed ) {
+      throw new IOException( "Output is closed" );
+    }
+    if ( !gzip ) {
+      checksum.update( b, off, len );
+    }
+    while ( len > 0 ) {
+      final int size = Math.min( len, block.length - count );
+      System.arraycopy( b, off, block, count, size );
+      count += size;
+      off += size;
+      len -= size;
+      if ( count == block.length ) {
+        submit( false );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write( final int b ) throws IOException {
+    write( new byte[] { (byte)b }, 0, 1 );
+  }
+
+}
@@ -11,12 +11,27 @@
  */
 package coyote.cli;
 
-import java.util.Calendar;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -26,12 +41,20 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import coyote.cli.actions.AbstractAction;
 import coyote.cli.actions.Action;
 import coyote.cli.actions.ActionException;
+import coyote.cli.actions.ActionExecutor;
+import coyote.cli.actions.ContextAction;
+import coyote.cli.actions.ExitException;
+import coyote.cli.template.SymbolTable;
+import coyote.commons.CronExpression;
 import coyote.commons.DateUtil;
 import coyote.commons.StringUtil;
 import coyote.commons.SystemPropertyUtil;
@@ -40,24 +63,42 @@ import coyote.commons.SystemPropertyUtil;
 /**
  * CLI - This is the command line interface to the load actions.
  * 
- * <p>All supported actions are to be place in CoreContext.xml</p>
+ * <p>Actions are registered with the {@link coyote.cli.actions.Noun} 
+ * annotation and found through a registry generated at build time. Custom 
+ * wiring can still be placed in an optional CoreContext.xml.</p>
+ * 
+ * <p>Actions are only created when their noun is requested, so the cost of 
+ * starting the CLI does not grow with the number of actions registered.</p>
  * 
  * <p>This class is responsible for parsing input from the user, setting up the 
  * environment and determining which action to call to satisfy the user 
  * request. It is intended to codify complex operations for easy replication.</p>
  * 
+ * <p>Everything about a command is kept in its {@link ExecutionContext}, so 
+ * one CLI can run several commands at the same time.</p>
+ * 
  */
-public class CLI extends AbstractAction {
+public class CLI extends AbstractAction implements BeanFactoryAware {
 
   private static String VERSION = "0.1 dev - build 11 Mar 2015";
-  private static CommandLine _cmd = null;
   private static String appname = "cliqs"; // name of the properties file to load
-  private static String NOUN = null;
 
   private static final String[] CONFIG_FILES = new String[] { "CoreContext.xml" };
 
   private static final Map<String, Action> actions = new HashMap<String, Action>();
 
+  /** The names of the beans to create when their noun is requested */
+  private static final Map<String, String> actionBeans = new HashMap<String, String>();
+
+  /** The symbols every command starts with, read once for all of them */
+  private Map<Object, Object> baseSymbols = null;
+
+  /** Where the lazily registered actions are created */
+  private BeanFactory beanFactory = null;
+
+  /** The actions registered at build time, used when no bean overrides them */
+  private ActionRegistry registry = null;
+
   // Command Line Option Names
   private static final String OPT_ENV = "env";
   private static final String OPT_FMT = "fmt";
@@ -65,18 +106,76 @@ public class CLI extends AbstractAction {
   private static final String OPT_VERBOSE = "v";
   private static final String OPT_DEBUG = "d";
   private static final String OPT_OUT = "o";
+  private static final String OPT_PORT = "port";
+  private static final String OPT_FILE = "f";
+  private static final String OPT_THREADS = "threads";
+  private static final String OPT_TIMINGS = "timings";
+  private static final String OPT_COMMAND = "cmd";
+  private static final String OPT_EVERY = "every";
+  private static final String OPT_CRON = "cron";
+  private static final String OPT_FLUSH = "flush";
+  private static final String OPT_FSYNC = "fsync";
+  private static final String OPT_COMPRESS = "compress";
+  private static final String OPT_ROTATE = "rotate";
+  private static final String OPT_CACHE = "cache";
+  private static final String OPT_NOCACHE = "nocache";
+  private static final String OPT_TIMEOUT = "timeout";
+
+  /** The exit code of a command whose action ran out of time */
+  private static final int TIMED_OUT = 124;
+
+  /** Options which change where and how a result is written, not the result */
+  private static final String[] UNCACHED_OPTIONS = { OPT_ENV, OPT_QUIET, OPT_VERBOSE, OPT_DEBUG, OPT_OUT, OPT_TIMINGS, OPT_EVERY, OPT_CRON, OPT_FLUSH, OPT_FSYNC, OPT_COMPRESS, OPT_ROTATE, OPT_CACHE, OPT_NOCACHE, OPT_TIMEOUT };
 
   // Environments Supported
   private static final String DEV = "DEV";
   private static final String TEST = "TEST";
   private static final String UAT = "UAT";
   private static final String PROD = "PROD";
+  private static final String ALL = "ALL";
+  private static final String[] ENVIRONMENTS = { DEV, TEST, UAT, PROD };
 
+  /** The shared actions in use by a command right now */
+  private final Set<Action> busy = Collections.newSetFromMap( new IdentityHashMap<Action, Boolean>() );
 
 
 
+
+  /**
+   * @return the command line of the command running on this thread
+   */
   public static CommandLine getCommandLine() {
-    return _cmd;
+    return ExecutionContext.current().getCommandLine();
+  }
+
+
+
+
+  /**
+   * Create the command line interface object.
+   * 
+   * <p>Actions are found in the registry generated at build time from their 
+   * {@link coyote.cli.actions.Noun} annotations. If a CoreContext.xml is found 
+   * on the class path, the CLI is configured from that context instead and 
+   * the actions wired there override those of the same noun in the 
+   * registry.</p>
+   * 
+   * @return the configured command line interface
+   */
+  private static CLI createCLI() {
+    final CLI retval;
+
+    if ( CLI.class.getClassLoader().getResource( CONFIG_FILES[0] ) != null ) {
+      // Load configuration context from the class path
+      @SuppressWarnings("resource")
+      final ApplicationContext applicationContext = new ClassPathXmlApplicationContext( CONFIG_FILES );
+      retval = applicationContext.getBean( "cli", CLI.class );
+    } else {
+      retval = new CLI();
+    }
+
+    retval.setActionRegistry( new GeneratedActionRegistry() );
+    return retval;
   }
 
 
@@ -88,31 +187,49 @@ public class CLI extends AbstractAction {
    * @param args command line arguments to parse.
    */
   public static void main( final String[] args ) {
+    // a single command uses the context of the JVM itself
+    final ExecutionContext context = ExecutionContext.getDefault();
+    final PhaseTimer timer = context.getTimer();
+    timer.reset();
+
+    // messages are written on a thread of their own, so what is printed 
+    // straight to System.out or System.err must wait for them
+    ExecutionContext.installStreams();
+
+    // actions may exit from anywhere, so report the timings as the JVM ends;
+    // the time from the last phase to the exit is recorded as "exit"
+    final PhaseTimer timings = timer;
+    Runtime.getRuntime().addShutdownHook( new Thread( "cliqs-timings" ) {
+      @Override
+      public void run() {
+        timings.end( "exit" );
+        reportTimings( context );
+      }
+    } );
 
     // Load system properties from conventional locations using encryption
     SystemPropertyUtil.loadSecure( appname );
-
-    // Load configuration context from the class path
-    @SuppressWarnings("resource")
-    final ApplicationContext applicationContext = new ClassPathXmlApplicationContext( CONFIG_FILES );
+    timer.end( "properties" );
 
     // Now get the configured command line interface object
-    final CLI loader = applicationContext.getBean( "cli", CLI.class );
+    final CLI loader = createCLI();
+    timer.end( "context" );
 
+    Integer exitCode = null;
     try {
 
       // process the command line arguments
-      loader.processArgs( args );
+      loader.processArgs( context, args );
 
       // validate the arguments and select the appropriate action to
       // handle the request
-      loader.validate();
+      loader.validate( context );
 
       final long start = System.currentTimeMillis();
-      loader.execute();
+      loader.execute( context );
       final long elapsed = System.currentTimeMillis() - start;
 
-      debug( "Action completed - execution time " + DateUtil.formatElapsed( elapsed ) );
+      debug( () -> "Action completed - execution time " + DateUtil.formatElapsed( elapsed ) );
 
       // send a tone to the console if the command took longer than 30
       // seconds and we are not being quiet...just to let you know the
@@ -121,16 +238,25 @@ public class CLI extends AbstractAction {
         System.out.println( (char)7 );
       }
 
-      System.exit( 0 );
+      exitCode = 0;
 
+    } catch ( final ExitException ex ) {
+      // a command in a resident mode (e.g. batch) ended the run
+      exitCode = ex.getCode();
     } catch ( final Exception ex ) {
       ex.printStackTrace();
     }
     finally {
-      if ( OUT != System.out ) {
+      if ( context.getOut() != context.getConsole() ) {
         debug( "Closing output stream." );
-        OUT.close();
+        context.getOut().close();
       }
+      ConsoleWriter.flush();
+      timer.end( "close" );
+    }
+
+    if ( exitCode != null ) {
+      System.exit( exitCode );
     }
 
   }
@@ -140,8 +266,11 @@ public class CLI extends AbstractAction {
 
   private final String ACTION_VERSION = "Version";
 
-  // That which does what was asked
-  Action action = null;
+  private final String ACTION_DAEMON = "Daemon";
+
+  private final String ACTION_BATCH = "Batch";
+
+  private final String ACTION_STREAM = "Stream";
 
 
 
@@ -159,25 +288,42 @@ public class CLI extends AbstractAction {
   /**
    * Builds the options supported in the command line to be used by parser.
    * 
+   * <p>Only the options of the given action are merged with the global 
+   * options; the other actions are not consulted (or even created).</p>
+   * 
+   * @param selected the action whose options are to be added, may be null
+   * 
    * @return Options for the parser
    */
   @SuppressWarnings("static-access")
-  private Options buildOptions() {
-
-    // go through all the actions and determine the options supported
+  private Options buildOptions( final Action selected ) {
 
     final Options o = new Options();
     o.addOption( new Option( OPT_QUIET, "surpress messages (quiet) just the facts." ) );
     o.addOption( new Option( OPT_VERBOSE, "verbose output, more object data displayed." ) );
     o.addOption( new Option( OPT_DEBUG, "debugging messages, describes what's happening." ) );
 
-    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "environment" ).withType( String.class ).withDescription( "The environment (e.g. DEV, TEST, PROD) to use." ).create( OPT_ENV ) );
-    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "CSV,TAB" ).withType( String.class ).withDescription( "The format of the output. (Default is text)" ).create( OPT_FMT ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "environment" ).withType( String.class ).withDescription( "The environment (e.g. DEV, TEST, PROD) to use, a list (e.g. DEV,PROD) or ALL to run in several at once." ).create( OPT_ENV ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "TXT,CSV,TAB,JSON,NDJSON" ).withType( String.class ).withDescription( "The format of the output. (Default is TXT)" ).create( OPT_FMT ) );
     o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "filename" ).withType( String.class ).withDescription( "Output results to file (try 'default')" ).create( OPT_OUT ) );
-
-    // use a visitor pattern to build the options the actions expect
-    for ( final Action action : actions.values() ) {
-      action.buildOptions( o );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "filename" ).withType( String.class ).withDescription( "File of command lines to run in batch" ).create( OPT_FILE ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "count" ).withType( Number.class ).withDescription( "Number of batch commands to run at the same time" ).create( OPT_THREADS ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "command" ).withType( String.class ).withDescription( "Command to which each streamed line is added as the last argument" ).create( OPT_COMMAND ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "interval" ).withType( String.class ).withDescription( "Keep running the command at this interval (e.g. 60s, 5m, 1h)" ).create( OPT_EVERY ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "expression" ).withType( String.class ).withDescription( "Keep running the command on this cron schedule (e.g. \"*/5 * * * *\")" ).create( OPT_CRON ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "line|size|time" ).withType( String.class ).withDescription( "When buffered output is written (e.g. line, size:256k, time:500ms; default is by line for a terminal, by size otherwise)" ).create( OPT_FLUSH ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "never|close|interval" ).withType( String.class ).withDescription( "When the output file is forced to the disk (e.g. close, interval:5s; default is never)" ).create( OPT_FSYNC ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "gzip|deflate" ).withType( String.class ).withDescription( "Compress the output file on all processors" ).create( OPT_COMPRESS ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "size|interval" ).withType( String.class ).withDescription( "Start a new output file after this size or time (e.g. 256MB, 1h)" ).create( OPT_ROTATE ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "ttl" ).withType( String.class ).withDescription( "Replay the result of the same command for this long instead of running it again (e.g. 5m)" ).create( OPT_CACHE ) );
+    o.addOption( new Option( OPT_NOCACHE, "always run the action, neither replaying nor storing a cached result." ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "interval" ).withType( String.class ).withDescription( "Cancel the action and exit with code 124 if it runs longer than this (e.g. 30s, 5m)" ).create( OPT_TIMEOUT ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "port" ).withType( Number.class ).withDescription( "Loopback port on which the daemon listens (default is any free port)" ).create( OPT_PORT ) );
+    o.addOption( OptionBuilder.hasArg().isRequired( false ).withArgName( "text|json" ).withType( String.class ).withDescription( "Write the time spent in each phase to standard error" ).create( OPT_TIMINGS ) );
+
+    // use a visitor pattern to build the options the action expects
+    if ( selected != null ) {
+      selected.buildOptions( o );
     }
 
     return o;
@@ -186,25 +332,108 @@ public class CLI extends AbstractAction {
 
 
 
+  /**
+   * Acquire the action for the given noun for the command of the given 
+   * context.
+   * 
+   * <p>The first command uses the shared action. A command wanting the same 
+   * noun while the shared action is in use gets an instance of its own, or 
+   * waits for the shared one if the action can not be created again.</p>
+   */
+  private Action acquire( final ExecutionContext context, final String noun ) throws ActionException {
+    final Action shared = getAction( noun );
+    if ( shared == null ) {
+      return null;
+    }
+
+    synchronized( busy ) {
+      if ( busy.add( shared ) ) {
+        context.sharedAction = true;
+        return shared;
+      }
+    }
+
+    final Action retval = newAction( noun );
+    if ( retval != null ) {
+      return retval;
+    }
+
+    synchronized( busy ) {
+      try {
+        while ( !busy.add( shared ) ) {
+          busy.wait();
+        }
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new ActionException( "Interrupted waiting for action '" + noun + "'" );
+      }
+      context.sharedAction = true;
+      return shared;
+    }
+  }
+
+
+
+
   /**
    * Based on the contents of the system-wide arguments, perform some manner
    * of processing.
    */
   @Override
   public void execute() {
+    execute( ExecutionContext.current() );
+  }
+
+
+
+
+  /**
+   * Execute the action selected for the command of the given context.
+   */
+  @Override
+  public void execute( final ExecutionContext context ) {
+    final Action action = context.action;
+    final PhaseTimer timer = context.getTimer();
 
     // Now execute the appropriate action
 
-    if ( action != null ) {
+    if ( ( action != null ) && ( context.environments.size() > 1 ) ) {
+      // run the action in each of the requested environments at once
+      final int code;
+      try {
+        code = new FanOut( this ).run( context );
+      }
+      finally {
+        release( context );
+      }
+      timer.end( "execute" );
+      if ( code != 0 ) {
+        terminate( code );
+      }
+    } else if ( action != null ) {
       try {
         // Have the action validate the arguments
-        action.validate();
+        validateAction( action, context );
+        timer.end( "validate" );
+
+        // replay the result of the same command if it is cached
+        final String cacheKey = getCacheKey( context, action );
+        if ( ( cacheKey != null ) && ResultCache.getDefault().replay( context, cacheKey ) ) {
+          context.debug( "Replayed the cached result" );
+          timer.end( "cache" );
+          return;
+        }
+        final ResultCache.Recorder recorder = ( cacheKey != null ) ? ResultCache.getDefault().record( context, cacheKey, getCacheTtl( context, action ) ) : null;
+        boolean success = false;
 
         try {
           // Now try to execute the action with the validated
           // arguments
-          action.execute();
+          executeAction( action, context );
+          success = true;
 
+        } catch ( final ExitException e ) {
+          throw e;
         } catch ( final Exception e ) {
           error( "Unexpected issues executing action: " + e.getMessage() );
           error( e.getMessage() );
@@ -214,6 +443,14 @@ public class CLI extends AbstractAction {
           }
 
         }
+        finally {
+          if ( recorder != null ) {
+            recorder.finish( success );
+          }
+          timer.end( "execute" );
+        }
+      } catch ( final ExitException e ) {
+        throw e;
       } catch ( final Exception e ) {
         error( "Problems validating action: " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")" );
         if ( isDebug() || isVerbose() ) {
@@ -221,7 +458,9 @@ public class CLI extends AbstractAction {
         }
       }
       finally {
-        action.close();
+        closeAction( action, context );
+        release( context );
+        timer.end( "close" );
       }
 
     } else {
@@ -234,10 +473,132 @@ public class CLI extends AbstractAction {
 
 
   /**
+   * Close the action of the given context unless it already was (e.g. when
+   * it ran out of time).
+   */
+  static void closeAction( final Action action, final ExecutionContext context ) {
+    if ( !context.actionClosed ) {
+      context.actionClosed = true;
+      action.close();
+    }
+  }
+
+
+
+
+  /**
+   * Execute the given action in the given context.
+   */
+  static void executeAction( final Action action, final ExecutionContext context ) throws ActionException {
+    try {
+      if ( context.timeout > 0 ) {
+        executeAction( action, context, context.timeout );
+      } else if ( action instanceof ContextAction ) {
+        ( (ContextAction)action ).execute( context );
+      } else {
+        action.execute();
+      }
+    }
+    finally {
+      context.finishRecords();
+    }
+  }
+
+
+
+
+  /**
+   * Execute the given action asynchronously and wait no longer than the 
+   * given time for it to finish.
+   * 
+   * <p>When the time is up the action is cancelled and closed, and the 
+   * command exits with a code of 124. An action which does not stop when it
+   * is interrupted runs on, but the command no longer listens to it (see
+   * {@link ExecutionContext#detach()}) and its instance is not given to
+   * another command until it has stopped.</p>
+   */
+  private static void executeAction( final Action action, final ExecutionContext context, final long timeout ) throws ActionException {
+    final CompletableFuture<Void> future = action.executeAsync( context );
+    try {
+      future.get( timeout, TimeUnit.MILLISECONDS );
+    } catch ( final TimeoutException e ) {
+      future.cancel( true );
+      context.stopped = ActionExecutor.whenStopped( future );
+      context.detach();
+      closeAction( action, context );
+      ConsoleWriter.post( context, context.getErr(), "Action timed out after " + DateUtil.formatElapsed( timeout ) );
+      throw new ExitException( TIMED_OUT );
+    } catch ( final InterruptedException e ) {
+      future.cancel( true );
+      Thread.currentThread().interrupt();
+      throw new ActionException( "Interrupted waiting for the action to finish" );
+    } catch ( final ExecutionException e ) {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof ActionException ) {
+        throw (ActionException)cause;
+      } else if ( cause instanceof RuntimeException ) {
+        throw (RuntimeException)cause;
+      } else if ( cause instanceof Error ) {
+        throw (Error)cause;
+      }
+      throw new ActionException( cause.getMessage(), cause );
+    }
+  }
+
+
+
+
+  /**
+   * Return the action registered for the given noun, creating it if this is 
+   * the first time it is requested.
+   * 
+   * @param noun the noun of the action (case insensitive)
+   * 
+   * @return the action for the noun or null if no action has been registered 
+   *         for that noun
+   */
+  public Action getAction( final String noun ) {
+    if ( noun == null ) {
+      return null;
+    }
+    final String key = noun.toLowerCase();
+
+    synchronized( actions ) {
+      Action retval = actions.get( key );
+      if ( ( retval == null ) && actionBeans.containsKey( key ) && ( beanFactory != null ) ) {
+        debug( "Creating action '" + key + "' from bean '" + actionBeans.get( key ) + "'" );
+        retval = beanFactory.getBean( actionBeans.get( key ), Action.class );
+      }
+      if ( ( retval == null ) && ( registry != null ) ) {
+        retval = registry.newAction( key );
+      }
+      if ( retval != null ) {
+        actions.put( key, retval );
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  /**
+   * Return all the actions supported by this CLI mapped by their noun.
+   * 
+   * <p>This creates every lazily registered action and should only be used 
+   * when all of them are needed, like displaying help.</p>
+   * 
    * @return the map of Nouns and their associated Actions
    */
   public Map<String, Action> getActionMap() {
-    return actions;
+    final Map<String, Action> retval = new TreeMap<String, Action>();
+    for ( final String noun : getNouns() ) {
+      final Action action = getAction( noun );
+      if ( action != null ) {
+        retval.put( noun, action );
+      }
+    }
+    return retval;
   }
 
 
@@ -247,7 +608,25 @@ public class CLI extends AbstractAction {
    * @return a collection of all the actions configured in this CLI
    */
   public Collection<Action> getActions() {
-    return actions.values();
+    return getActionMap().values();
+  }
+
+
+
+
+  /**
+   * @return the nouns of all the actions registered with this CLI, without 
+   *         creating any of the actions
+   */
+  public Set<String> getNouns() {
+    synchronized( actions ) {
+      final Set<String> retval = new TreeSet<String>( actions.keySet() );
+      retval.addAll( actionBeans.keySet() );
+      if ( registry != null ) {
+        retval.addAll( Arrays.asList( registry.getNouns() ) );
+      }
+      return retval;
+    }
   }
 
 
@@ -261,46 +640,278 @@ public class CLI extends AbstractAction {
 
 
   /**
-   * Populates the symbol table with the set arguments.
+   * Run a single command line through this CLI as if it were passed to main.
+   * 
+   * <p>This is used by the resident modes (e.g. the daemon) which keep the 
+   * CLI, its configuration and actions warm between commands. Standard in, 
+   * out and error of the command are the given streams. Calls to exit end the 
+   * command and their code is returned instead of terminating the JVM.</p>
+   * 
+   * <p>Each command runs in its own {@link ExecutionContext}, so this may be 
+   * called from several threads at the same time.</p>
+   * 
+   * @param args the command line arguments, noun first
+   * @param in the stream to use as standard input
+   * @param out the stream to use as standard output
+   * @param err the stream to use as standard error
+   * 
+   * @return the exit code of the command
+   */
+  public int run( final String[] args, final InputStream in, final PrintStream out, final PrintStream err ) {
+    ExecutionContext.installStreams();
+    final ExecutionContext context = new ExecutionContext( in, out, err );
+    context.setDirectory( ExecutionContext.current().getDirectory() );
+    return run( args, context );
+  }
+
+
+
+
+  /**
+   * Run a single command line in the given context.
+   * 
+   * <p>This is how the resident modes pass more than the streams of the 
+   * command, like the working directory of a daemon client or the records 
+   * of the previous stage of a pipeline.</p>
+   * 
+   * @param args the command line arguments, noun first
+   * @param context a new context holding the streams of the command
+   * 
+   * @return the exit code of the command
+   */
+  int run( final String[] args, final ExecutionContext context ) {
+    final PrintStream out = context.getOut();
+    final PrintStream err = context.getErr();
+
+    // what is written to the standard streams goes to the command writing it
+    ExecutionContext.installStreams();
+
+    // start each command with a clean slate
+    context.setResident( true );
+    resetSymbolTable( context.getSymbolTable() );
+
+    final ExecutionContext previous = context.bind();
+    int code = 0;
+    try {
+      processArgs( context, args );
+      validate( context );
+      execute( context );
+    } catch ( final ExitException e ) {
+      code = e.getCode();
+    } catch ( final Exception e ) {
+      e.printStackTrace( err );
+      code = 1;
+    }
+    finally {
+      release( context );
+      if ( context.getOut() != out ) {
+        context.debug( "Closing output stream." );
+        context.getOut().close();
+      }
+      context.getTimer().end( "close" );
+      reportTimings( context );
+      ConsoleWriter.flush( context );
+      out.flush();
+      err.flush();
+      ExecutionContext.release( previous );
+    }
+    return code;
+  }
+
+
+
+
+  /**
+   * Build the key of the cached result of the command of the given context.
+   * 
+   * <p>The key is made of everything which decides the result: the noun, 
+   * the environment, the values of the options (except those only deciding 
+   * where and how the result is written) and the other arguments.</p>
+   * 
+   * @return the key, or null if the result of the command is not cached
+   */
+  private static String getCacheKey( final ExecutionContext context, final Action action ) {
+    final CommandLine cmd = context.getCommandLine();
+    if ( ( cmd == null ) || cmd.hasOption( OPT_NOCACHE ) || ( getCacheTtl( context, action ) <= 0 ) ) {
+      return null;
+    }
+
+    final TreeMap<String, List<String>> values = new TreeMap<String, List<String>>();
+    for ( final Option option : cmd.getOptions() ) {
+      if ( !Arrays.asList( UNCACHED_OPTIONS ).contains( option.getOpt() ) ) {
+        final String[] args = option.getValues();
+        values.put( option.getOpt(), ( args != null ) ? Arrays.asList( args ) : Collections.<String> emptyList() );
+      }
+    }
+
+    final StringBuilder b = new StringBuilder();
+    b.append( context.getNoun().toLowerCase() );
+    b.append( '\n' );
+    b.append( context.getEnvironment() );
+    b.append( '\n' );
+    b.append( ( context.downstream != null ) ? "records" : "output" );
+    b.append( '\n' );
+    b.append( values );
+    b.append( '\n' );
+    b.append( Arrays.asList( cmd.getArgs() ) );
+    return b.toString();
+  }
+
+
+
+
+  /**
+   * @return how long the result of the command of the given context may be 
+   *         replayed, from the command line or the action, 0 for not at all
+   */
+  private static long getCacheTtl( final ExecutionContext context, final Action action ) {
+    if ( context.cacheTtl > 0 ) {
+      return context.cacheTtl;
+    }
+    return ( action instanceof AbstractAction ) ? ( (AbstractAction)action ).getCacheTtl() : 0;
+  }
+
+
+
+
+  /**
+   * Create another instance of the action for the given noun, apart from the 
+   * one shared by all commands.
+   * 
+   * <p>This allows the same action to be run on several threads at once.</p>
+   * 
+   * @param noun the noun of the action (case insensitive)
+   * 
+   * @return a new instance of the action, or null if the action can only be 
+   *         shared (e.g. it was wired as a singleton)
+   */
+  Action newAction( final String noun ) {
+    final Action shared = getAction( noun );
+    if ( shared == null ) {
+      return null;
+    }
+    final String key = noun.toLowerCase();
+
+    Action retval = null;
+    synchronized( actions ) {
+      if ( actionBeans.containsKey( key ) && ( beanFactory != null ) ) {
+        if ( beanFactory.isPrototype( actionBeans.get( key ) ) ) {
+          retval = beanFactory.getBean( actionBeans.get( key ), Action.class );
+        }
+      } else if ( registry != null ) {
+        retval = registry.newAction( key );
+      }
+    }
+
+    // only if it is the same kind of action as the one which was wired
+    return ( ( retval != null ) && ( retval != shared ) && ( retval.getClass() == shared.getClass() ) ) ? retval : null;
+  }
+
+
+
+
+  /**
+   * Release the shared action the command of the given context acquired, if 
+   * it has not already done so.
+   * 
+   * <p>An action which ran out of time may still be running; it is released
+   * once it has stopped.</p>
+   */
+  private void release( final ExecutionContext context ) {
+    if ( context.sharedAction ) {
+      context.sharedAction = false;
+      final Action action = context.action;
+      if ( context.stopped != null ) {
+        context.stopped.thenRun( () -> release( action ) );
+      } else {
+        release( action );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Let the next command waiting for the given shared action have it.
+   */
+  private void release( final Action action ) {
+    synchronized( busy ) {
+      busy.remove( action );
+      busy.notifyAll();
+    }
+  }
+
+
+
+
+  /**
+   * Wait until the action of the given context has stopped, which is later 
+   * than the command ended if it ran out of time and ignored being 
+   * interrupted.
+   */
+  static void awaitStopped( final ExecutionContext context ) {
+    if ( context.stopped != null ) {
+      try {
+        context.stopped.get();
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      } catch ( final ExecutionException e ) {
+        // never completed exceptionally
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Return the symbol table to the state every command starts with.
+   * 
+   * <p>The system properties are read into the table for the first command 
+   * only, later commands reuse what was read.</p>
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized void resetSymbolTable( final SymbolTable symbols ) {
+    symbols.clear();
+    if ( baseSymbols == null ) {
+      symbols.readSystemProperties();
+      baseSymbols = new HashMap<Object, Object>( symbols );
+    } else {
+      symbols.putAll( baseSymbols );
+    }
+  }
+
+
+
+
+  /**
+   * Populates the symbol table of the context with the set arguments.
    */
   @SuppressWarnings("unchecked")
-  private void populateSymbolTable() {
+  private void populateSymbolTable( final ExecutionContext context ) {
+    final CommandLine cmd = context.getCommandLine();
+    final SymbolTable symbols = context.getSymbolTable();
 
     // First put all the arguments in the table
-    for ( final Iterator<Option> it = _cmd.iterator(); it.hasNext(); ) {
+    for ( final Iterator<Option> it = cmd.iterator(); it.hasNext(); ) {
       final Option option = it.next();
 
       try {
-        final Object value = _cmd.getParsedOptionValue( option.getOpt() );
+        final Object value = cmd.getParsedOptionValue( option.getOpt() );
         if ( value != null ) {
-          _symbolTable.put( option.getOpt(), value.toString() );
+          symbols.put( option.getOpt(), value.toString() );
         }
       } catch ( final ParseException e ) {
-        error( e.getMessage() );
+        context.error( e.getMessage() );
       }
     }
 
     // Put the environment in the symbol table
-    _symbolTable.put( CLI.OPT_ENV, getEnvironment() );
+    symbols.put( CLI.OPT_ENV, context.getEnvironment() );
 
     // Place date and time values in the symbol table
-    final Calendar cal = Calendar.getInstance();
-
-    // Add current 'now' Date, Time and DateTime
-    final Date date = new Date();
-    if ( date != null ) {
-      cal.setTime( date );
-      _symbolTable.put( "nowDate", DateUtil.formatDate( date ) );
-      _symbolTable.put( "nowTime", DateUtil.formatTime( date ) );
-      _symbolTable.put( "nowDateTime", DateUtil.formatDateTime( date ) );
-      _symbolTable.put( "nowMonth", String.valueOf( cal.get( Calendar.MONTH ) + 1 ) );
-      _symbolTable.put( "nowDay", String.valueOf( cal.get( Calendar.DAY_OF_MONTH ) ) );
-      _symbolTable.put( "nowYear", String.valueOf( cal.get( Calendar.YEAR ) ) );
-      _symbolTable.put( "nowHour", String.valueOf( cal.get( Calendar.HOUR ) ) );
-      _symbolTable.put( "nowMinute", String.valueOf( cal.get( Calendar.MINUTE ) ) );
-      _symbolTable.put( "nowSecond", String.valueOf( cal.get( Calendar.SECOND ) ) );
-      _symbolTable.put( "nowMillisecond", String.valueOf( cal.get( Calendar.MILLISECOND ) ) );
-    }
+    symbols.putNow( new Date() );
 
   }
 
@@ -308,72 +919,258 @@ public class CLI extends AbstractAction {
 
 
   /**
-   * Parse the arguments into system-wide arguments.
+   * Parse the arguments into the context of the command.
    * 
+   * @param context the context of the command
    * @param args The arguments to parse
    */
   @SuppressWarnings("unchecked")
-  private void processArgs( final String[] args ) {
+  private void processArgs( final ExecutionContext context, final String[] args ) {
+    final PhaseTimer timer = context.getTimer();
+    String noun = null;
     String[] nargs = new String[0];
 
+    // each stage of a pipeline parses its own arguments when it runs
+    final List<String[]> stages = Pipeline.split( args );
+    if ( stages.size() > 1 ) {
+      context.stages = stages;
+      context.setNoun( stages.get( 0 ).length > 0 ? stages.get( 0 )[0] : null );
+      return;
+    }
+
     final CommandLineParser parser = new PosixParser();
-    final Options options = buildOptions();
     final HelpFormatter help = new HelpFormatter();
 
     // First, get the noun or action we are to perform, it is always the
     // first argument
     if ( ( args != null ) && ( args.length > 0 ) ) {
-      NOUN = args[0];
+      noun = args[0];
 
       // shift all the arguments to the left
       nargs = new String[args.length - 1];
       System.arraycopy( args, 1, nargs, 0, nargs.length );
     }
 
+    context.setNoun( noun );
+    timer.setNoun( noun );
+
+    // only the chosen action contributes options
+    final Action selected = getAction( noun );
+    timer.end( "action" );
+    final Options options = buildOptions( selected );
+    timer.end( "options" );
+
     try {
-      _cmd = parser.parse( options, nargs );
+      final CommandLine cmd = parser.parse( options, nargs );
+      context.setCommandLine( cmd );
+      timer.end( "parse" );
 
       // populate the symbol table with values based on command line
       // arguments
-      populateSymbolTable();
-      _symbolTable.put( "Action", NOUN );
+      populateSymbolTable( context );
+      context.getSymbolTable().put( "Action", noun );
+      timer.end( "symbols" );
+
+      context.setQuiet( cmd.hasOption( OPT_QUIET ) );
+      context.setVerbose( cmd.hasOption( OPT_VERBOSE ) );
+      context.setDebug( cmd.hasOption( OPT_DEBUG ) );
+
+      if ( cmd.hasOption( OPT_TIMINGS ) ) {
+        final String format = context.getCommandLineValue( OPT_TIMINGS ).toLowerCase();
+        if ( PhaseTimer.TEXT.equals( format ) || PhaseTimer.JSON.equals( format ) ) {
+          timer.setFormat( format );
+        } else {
+          exit( "Unsupported timings format '" + format + "'", 1 );
+        }
+      }
 
-      setQuiet( _cmd.hasOption( OPT_QUIET ) );
-      setVerbose( _cmd.hasOption( OPT_VERBOSE ) );
-      setDebug( _cmd.hasOption( OPT_DEBUG ) );
+      // a scheduled command is run again for each time, without the schedule
+      try {
+        if ( cmd.hasOption( OPT_EVERY ) ) {
+          context.interval = DateUtil.parseInterval( context.getCommandLineValue( OPT_EVERY ) );
+        }
+        if ( cmd.hasOption( OPT_CRON ) ) {
+          context.cron = new CronExpression( context.getCommandLineValue( OPT_CRON ) );
+        }
+      } catch ( final IllegalArgumentException e ) {
+        exit( e.getMessage(), 1 );
+      }
+      if ( ( context.interval > 0 ) && ( context.cron != null ) ) {
+        exit( "Use either -" + OPT_EVERY + " or -" + OPT_CRON + ", not both", 1 );
+      }
+      if ( ( context.interval > 0 ) || ( context.cron != null ) ) {
+        context.scheduled = withoutSchedule( args );
+      }
+
+      try {
+        if ( cmd.hasOption( OPT_FLUSH ) ) {
+          context.setFlushPolicy( OutputSink.Policy.parse( context.getCommandLineValue( OPT_FLUSH ) ) );
+        }
+        if ( cmd.hasOption( OPT_FSYNC ) ) {
+          context.setFileSync( FileSink.Sync.parse( context.getCommandLineValue( OPT_FSYNC ) ) );
+        }
+        if ( cmd.hasOption( OPT_COMPRESS ) ) {
+          final String format = context.getCommandLineValue( OPT_COMPRESS ).trim().toLowerCase();
+          if ( !BlockCompressor.GZIP.equals( format ) && !BlockCompressor.DEFLATE.equals( format ) ) {
+            throw new IllegalArgumentException( "Unsupported compression '" + format + "' (use gzip or deflate)" );
+          }
+          context.setCompression( format );
+        }
+        if ( cmd.hasOption( OPT_ROTATE ) ) {
+          context.setRotation( RotatingOutput.Limit.parse( context.getCommandLineValue( OPT_ROTATE ) ) );
+        }
+        if ( cmd.hasOption( OPT_CACHE ) ) {
+          context.cacheTtl = DateUtil.parseInterval( context.getCommandLineValue( OPT_CACHE ) );
+        }
+        if ( cmd.hasOption( OPT_TIMEOUT ) ) {
+          context.timeout = DateUtil.parseInterval( context.getCommandLineValue( OPT_TIMEOUT ) );
+        }
+      } catch ( final IllegalArgumentException e ) {
+        exit( e.getMessage(), 1 );
+      }
 
-      // setup our output file, support a default naming
-      if ( _cmd.hasOption( OPT_OUT ) ) {
-        String filename = getCommandLineValue( OPT_OUT );
+      // setup our output file, support a default naming, each scheduled run 
+      // opens its own
+      if ( cmd.hasOption( OPT_OUT ) && ( context.scheduled == null ) ) {
+        String filename = context.getCommandLineValue( OPT_OUT );
         if ( filename.equalsIgnoreCase( "default" ) ) {
           filename = "[#$Action#]_[#$nowYear#]-[#$nowMonth#]-[#$nowDay#].txt";
         }
         setOutput( filename );
       }
 
-      // Set the environment
-      final String environ = (String)_cmd.getParsedOptionValue( OPT_ENV );
+      // buffer the output, unless it already is (e.g. that of a batch run 
+      // for a scheduled command)
+      if ( !( context.getOut() instanceof OutputSink ) ) {
+        context.setOut( new OutputSink( context.getOut(), false, context.getFlushPolicy() ) );
+      }
+
+      // Set the environment, a list or ALL runs the action in each of them
+      final String environ = (String)cmd.getParsedOptionValue( OPT_ENV );
+      final List<String> environments = context.environments;
 
+      environments.clear();
       if ( environ != null ) {
-        setEnvironment( environ.toUpperCase() );
+        final String[] names = ALL.equalsIgnoreCase( environ.trim() ) ? ENVIRONMENTS : environ.split( "," );
+        for ( final String name : names ) {
+          final String env = name.trim().toUpperCase();
+
+          // Make sure it is one of the expected values
+          if ( !Arrays.asList( ENVIRONMENTS ).contains( env ) ) {
+            exit( "Unsupported environment '" + name.trim() + "'", 1 );
+          }
+          if ( !environments.contains( env ) ) {
+            environments.add( env );
+          }
+        }
+        context.setEnvironment( environments.get( 0 ) );
 
-        // Make sure it is one of the expected values
-        if ( DEV.equals( getEnvironment() ) || TEST.equals( getEnvironment() ) || UAT.equals( getEnvironment() ) || PROD.equals( getEnvironment() ) ) {
-          info( "Using the '" + getEnvironment() + "' environment." );
+        if ( environments.size() > 1 ) {
+          context.info( "Using the " + environments + " environments." );
         } else {
-          exit( "Unsupported environment '" + environ + "'", 1 );
+          context.info( "Using the '" + context.getEnvironment() + "' environment." );
         }
       }
+    } catch ( final ExitException e ) {
+      throw e;
     } catch ( final Exception e ) {
-      System.err.println( "Wrong parameters:" + e.getMessage() );
+      context.getErr().println( "Wrong parameters:" + e.getMessage() );
       help.printHelp( "Get NOUN [options]" + StringUtil.LINE_FEED + "Try Get HELP to get more help." + StringUtil.LINE_FEED + "Here are some command line options:", options );
-      System.exit( 1 );
+      terminate( 1 );
     }
 
-    if ( NOUN == null ) {
+    if ( noun == null ) {
       exit( "Get NOUN [options]" + StringUtil.LINE_FEED + "Try Get HELP to get more help.", 1 );
     }
+    timer.end( "parse" );
+
+  }
+
+
+
+
+  /**
+   * Report the time spent in each phase of the command.
+   * 
+   * <p>The phases are displayed as a debug message and, if requested with the 
+   * timings option, written to standard error as text or as a line of JSON 
+   * which can be collected to chart the timings across releases.</p>
+   * 
+   * @param context the context of the command which just completed
+   */
+  private static void reportTimings( final ExecutionContext context ) {
+    final PhaseTimer timings = context.getTimer();
+    context.debug( () -> "Phase timings: " + timings );
+    if ( PhaseTimer.JSON.equals( timings.getFormat() ) ) {
+      ConsoleWriter.post( context, context.getErr(), timings.toJson( VERSION ) );
+    } else if ( PhaseTimer.TEXT.equals( timings.getFormat() ) ) {
+      ConsoleWriter.post( context, context.getErr(), timings );
+    }
+    ConsoleWriter.flush( context );
+  }
+
+
+
+
+  /**
+   * @return the command line with the scheduling options removed
+   */
+  private static String[] withoutSchedule( final String[] args ) {
+    final List<String> retval = new ArrayList<String>();
+    for ( int x = 0; x < args.length; x++ ) {
+      if ( ( "-" + OPT_EVERY ).equals( args[x] ) || ( "-" + OPT_CRON ).equals( args[x] ) ) {
+        x++; // and its value
+      } else {
+        retval.add( args[x] );
+      }
+    }
+    return retval.toArray( new String[retval.size()] );
+  }
+
+
+
+
+  /**
+   * Set the names of the beans which provide the actions supported by this 
+   * CLI mapped by their "noun".
+   * 
+   * <p>The beans are not created until their noun is requested. Mark them as 
+   * {@code lazy-init} in the context so they are not created at start-up 
+   * either.</p>
+   * 
+   * @param map the map of nouns to the names of their action beans
+   */
+  public void setActionBeans( final Map<String, String> map ) {
+    synchronized( actions ) {
+      for ( final String name : map.keySet() ) {
+        actionBeans.put( name.toLowerCase(), map.get( name ) );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Set the registry of actions to use for nouns which have not been wired 
+   * explicitly through {@link #setActionMap(Map)} or 
+   * {@link #setActionBeans(Map)}.
+   * 
+   * @param registry the registry of actions generated at build time
+   */
+  public void setActionRegistry( final ActionRegistry registry ) {
+    this.registry = registry;
+  }
+
 
+
+
+  /**
+   * @see org.springframework.beans.factory.BeanFactoryAware#setBeanFactory(org.springframework.beans.factory.BeanFactory)
+   */
+  @Override
+  public void setBeanFactory( final BeanFactory factory ) throws BeansException {
+    beanFactory = factory;
   }
 
 
@@ -382,6 +1179,10 @@ public class CLI extends AbstractAction {
   /**
    * Set all the actions supported by this CLI mapped by their "noun"
    * 
+   * <p>These actions have already been created. Use 
+   * {@link #setActionBeans(Map)} to have actions created only when they are 
+   * needed.</p>
+   * 
    * @param map the map of actions this CLI is to support
    */
   public void setActionMap( final Map<String, Action> map ) {
@@ -402,21 +1203,118 @@ public class CLI extends AbstractAction {
    */
   @Override
   public void validate() throws ActionException {
-    if ( ACTION_VERSION.equalsIgnoreCase( NOUN ) ) {
-      System.out.println( VERSION );
-      System.exit( 0 );
-    } else if ( ACTION_HELP.equalsIgnoreCase( NOUN ) ) {
+    validate( ExecutionContext.current() );
+  }
+
+
+
+
+  /**
+   * Select the action for the command of the given context, running the 
+   * nouns built into the CLI itself.
+   */
+  @Override
+  public void validate( final ExecutionContext context ) throws ActionException {
+    final String noun = context.getNoun();
+    final CommandLine cmd = context.getCommandLine();
+
+    if ( context.stages != null ) {
+      // run the stages at once, passing records from one to the next
+      for ( final String[] stage : context.stages ) {
+        if ( stage.length == 0 ) {
+          exit( "Empty stage in pipeline", 1 );
+        }
+      }
+      terminate( new Pipeline( this ).run( context.stages ) );
+    } else if ( context.scheduled != null ) {
+      // keep running the command, each run is validated on its own
+      if ( !ACTION_BATCH.equalsIgnoreCase( noun ) && ( getAction( noun ) == null ) ) {
+        exit( "Cannot schedule '" + noun + "'", 1 );
+      }
+      final Scheduler scheduler = new Scheduler( this );
+      terminate( ( context.cron != null ) ? scheduler.cron( context.scheduled, context.cron ) : scheduler.every( context.scheduled, context.interval ) );
+    } else if ( ACTION_VERSION.equalsIgnoreCase( noun ) ) {
+      context.getConsole().println( VERSION );
+      terminate( 0 );
+    } else if ( ACTION_HELP.equalsIgnoreCase( noun ) ) {
       // Display the help page for this CLI
       Help.display( this );
-      System.exit( 0 );
+      terminate( 0 );
+    } else if ( ACTION_DAEMON.equalsIgnoreCase( noun ) ) {
+      if ( context.isResident() ) {
+        exit( "Already running as a daemon", 1 );
+      }
+
+      // Keep this CLI, its context and actions warm and serve commands
+      // forwarded by the client until the process is stopped
+      int port = 0;
+      if ( cmd.hasOption( OPT_PORT ) ) {
+        try {
+          port = Integer.parseInt( context.getCommandLineValue( OPT_PORT ) );
+        } catch ( final NumberFormatException e ) {
+          exit( "Invalid port '" + context.getCommandLineValue( OPT_PORT ) + "'", 1 );
+        }
+      }
+      try {
+        new Daemon( this ).serve( port );
+      } catch ( final Exception e ) {
+        throw new ActionException( "Daemon failed: " + e.getMessage(), e );
+      }
+      terminate( 0 );
+    } else if ( ACTION_BATCH.equalsIgnoreCase( noun ) ) {
+      if ( !cmd.hasOption( OPT_FILE ) ) {
+        exit( "Batch requires a file of commands (-f)", 1 );
+      }
+
+      int threads = Runtime.getRuntime().availableProcessors();
+      if ( cmd.hasOption( OPT_THREADS ) ) {
+        try {
+          threads = Integer.parseInt( context.getCommandLineValue( OPT_THREADS ) );
+        } catch ( final NumberFormatException e ) {
+          exit( "Invalid thread count '" + context.getCommandLineValue( OPT_THREADS ) + "'", 1 );
+        }
+      }
+
+      final int code;
+      try {
+        code = new Batch( this ).run( context.resolve( context.getCommandLineValue( OPT_FILE ) ), threads );
+      } catch ( final IOException e ) {
+        throw new ActionException( "Could not run batch: " + e.getMessage(), e );
+      }
+      context.getOut().flush();
+      terminate( code );
+    } else if ( ACTION_STREAM.equalsIgnoreCase( noun ) ) {
+      // run each line of standard input as soon as it is read
+      final int code;
+      try {
+        code = new Stream( this ).run( context.getIn(), context.getCommandLineValue( OPT_COMMAND ) );
+      } catch ( final IOException e ) {
+        throw new ActionException( "Could not read the command stream: " + e.getMessage(), e );
+      }
+      context.getOut().flush();
+      terminate( code );
     } else {
       // lookup the noun
-      action = actions.get( NOUN.toLowerCase() );
+      context.action = acquire( context, noun );
     }
 
     // If we could not determine the action, exit with an error
-    if ( action == null ) {
-      exit( "Unsupported noun '" + NOUN + "'\r\nTry 'Load HELP'", 1 );
+    if ( context.action == null ) {
+      exit( "Unsupported noun '" + noun + "'\r\nTry 'Load HELP'", 1 );
+    }
+  }
+
+
+
+
+  /**
+   * Validate the given action in the given context.
+   */
+  static void validateAction( final Action action, final ExecutionContext context ) throws ActionException {
+    if ( action instanceof ContextAction ) {
+      ( (ContextAction)action ).validate( context );
+    } else {
+      action.validate();
     }
   }
 
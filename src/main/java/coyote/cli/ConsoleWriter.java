@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import coyote.commons.StringUtil;
+
+
+/**
+ * Writes the messages of commands (info, debug, trace and error) to their
+ * streams on threads of their own.
+ * 
+ * <p>Printing a message locks the stream and writes to it, so threads
+ * logging at the same time wait on each other and on the terminal. Messages
+ * are instead placed in a bounded ring buffer of their command and written
+ * by a thread of that command, which joins the messages waiting for the same
+ * stream into one write. The messages of a command are written in the order
+ * they were logged, whichever of its streams they go to, so an error follows
+ * the information logged before it. When the buffer of a command is full the
+ * logging thread waits for room; no message is dropped.</p>
+ * 
+ * <p>Each command has its own buffer and thread, so a slow stream (e.g. a
+ * daemon client on a slow connection) only holds up the command writing to
+ * it, never the messages of the other commands. A thread which has had
+ * nothing to write for a while ends, and is started again with the next
+ * message of its command.</p>
+ * 
+ * <p>Anything else writing to a stream with messages still waiting for it
+ * (e.g. the output of a command on the console) calls
+ * {@link #await(OutputStream)} first, so it is not written ahead of them.
+ * Everything buffered is written when the JVM shuts down.</p>
+ */
+public final class ConsoleWriter {
+
+  /** The number of messages which can wait to be written for a command */
+  static final int CAPACITY = 4096;
+
+  /** How long the thread of a command waits for messages before it ends */
+  static final long IDLE = 10000;
+
+  private static final ReentrantLock LOCK = new ReentrantLock();
+  private static final Condition WRITTEN = LOCK.newCondition();
+
+  /** The messages waiting for each command */
+  private static final Map<ExecutionContext, Queue> queues = new IdentityHashMap<ExecutionContext, Queue>();
+
+  /** Messages not yet written, read without the lock to skip waiting */
+  private static volatile long pending = 0;
+
+  private static int started = 0;
+  private static boolean hooked = false;
+
+
+
+
+  /**
+   * The messages waiting for one command, and the thread writing them.
+   */
+  private static class Queue extends Thread {
+    final ExecutionContext command;
+    final PrintStream[] targets = new PrintStream[CAPACITY];
+    final String[] messages = new String[CAPACITY];
+    final Condition notEmpty = LOCK.newCondition();
+    final Condition notFull = LOCK.newCondition();
+
+    /** The count of posted messages up to the last one for each stream */
+    final Map<OutputStream, Long> last = new IdentityHashMap<OutputStream, Long>();
+    long posted = 0;
+    long written = 0;
+
+
+
+
+    Queue( final ExecutionContext command ) {
+      super( "cliqs-console-" + ( ++started ) );
+      this.command = command;
+      setDaemon( true );
+    }
+
+
+
+
+    /**
+     * Write the messages as they are posted, ending when there have been
+     * none for a while.
+     */
+    @Override
+    public void run() {
+      final PrintStream[] streams = new PrintStream[CAPACITY];
+      final String[] batch = new String[CAPACITY];
+      final StringBuilder text = new StringBuilder( 1024 );
+
+      while ( true ) {
+        // take everything waiting, leaving the buffer to the loggers
+        final int count;
+        LOCK.lock();
+        try {
+          while ( posted == written ) {
+            try {
+              if ( !notEmpty.await( IDLE, TimeUnit.MILLISECONDS ) && ( posted == written ) ) {
+                queues.remove( command );
+                return;
+              }
+            } catch ( final InterruptedException ignore ) {
+              // only ends when idle
+            }
+          }
+          count = (int)( posted - written );
+          for ( int x = 0; x < count; x++ ) {
+            final int slot = (int)( ( written + x ) % CAPACITY );
+            streams[x] = targets[slot];
+            batch[x] = messages[slot];
+            targets[slot] = null;
+            messages[slot] = null;
+          }
+        }
+        finally {
+          LOCK.unlock();
+        }
+
+        // one write for each run of messages to the same stream
+        int start = 0;
+        while ( start < count ) {
+          final PrintStream target = streams[start];
+          text.setLength( 0 );
+          int end = start;
+          while ( ( end < count ) && ( streams[end] == target ) ) {
+            text.append( batch[end] ).append( StringUtil.LINE_FEED );
+            streams[end] = null;
+            batch[end] = null;
+            end++;
+          }
+          try {
+            target.print( text );
+            target.flush();
+          } catch ( final RuntimeException ignore ) {
+            // the stream is gone, its messages with it
+          }
+          start = end;
+        }
+
+        LOCK.lock();
+        try {
+          written += count;
+          pending -= count;
+          last.values().removeIf( position -> position <= written );
+          notFull.signalAll();
+          WRITTEN.signalAll();
+        }
+        finally {
+          LOCK.unlock();
+        }
+      }
+    }
+  }
+
+
+
+
+  private ConsoleWriter() {}
+
+
+
+
+  /**
+   * Wait until the messages posted so far to the given stream are written,
+   * whichever command posted them.
+   * 
+   * <p>This returns at once when no messages are waiting, and when it is
+   * called by a thread writing them.</p>
+   * 
+   * @param target the stream about to be written
+   */
+  public static void await( final OutputStream target ) {
+    if ( ( pending == 0 ) || ( Thread.currentThread() instanceof Queue ) ) {
+      return;
+    }
+    LOCK.lock();
+    try {
+      final List<Queue> waiting = new ArrayList<Queue>( queues.values() );
+      for ( final Queue queue : waiting ) {
+        final Long position = queue.last.get( target );
+        if ( position != null ) {
+          awaitWritten( queue, position );
+        }
+      }
+    }
+    finally {
+      LOCK.unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Wait, holding the lock, until the given number of messages of the queue
+   * are written.
+   */
+  private static void awaitWritten( final Queue queue, final long count ) {
+    boolean interrupted = false;
+    while ( queue.written < count ) {
+      try {
+        WRITTEN.await();
+      } catch ( final InterruptedException e ) {
+        interrupted = true;
+      }
+    }
+    if ( interrupted ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+
+  /**
+   * Wait until all the messages posted so far are written, whatever their
+   * command.
+   * 
+   * <p>Commands sharing the JVM with others should wait for their own
+   * messages with {@link #flush(ExecutionContext)} instead, so a slow stream
+   * of another command does not hold them up.</p>
+   */
+  public static void flush() {
+    if ( ( pending == 0 ) || ( Thread.currentThread() instanceof Queue ) ) {
+      return;
+    }
+    LOCK.lock();
+    try {
+      final List<Queue> waiting = new ArrayList<Queue>( queues.values() );
+      for ( final Queue queue : waiting ) {
+        awaitWritten( queue, queue.posted );
+      }
+    }
+    finally {
+      LOCK.unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Wait until the messages the given command posted so far are written.
+   * 
+   * @param command the context of the command
+   */
+  public static void flush( final ExecutionContext command ) {
+    if ( ( pending == 0 ) || ( Thread.currentThread() instanceof Queue ) ) {
+      return;
+    }
+    LOCK.lock();
+    try {
+      final Queue queue = queues.get( command );
+      if ( queue != null ) {
+        awaitWritten( queue, queue.posted );
+      }
+    }
+    finally {
+      LOCK.unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Queue a message of a command to be written to the given stream as a
+   * line.
+   * 
+   * <p>The message is turned into text by the calling thread, so it is
+   * written as it was when it was logged.</p>
+   * 
+   * @param command the context of the command logging the message
+   * @param target the stream to which the message is written
+   * @param msg the message
+   */
+  public static void post( final ExecutionContext command, final PrintStream target, final Object msg ) {
+    final String text = String.valueOf( msg );
+    boolean interrupted = false;
+    LOCK.lock();
+    try {
+      Queue queue = queues.get( command );
+      if ( queue == null ) {
+        queue = start( command );
+      }
+      while ( ( queue.posted - queue.written ) >= CAPACITY ) {
+        try {
+          queue.notFull.await();
+        } catch ( final InterruptedException e ) {
+          interrupted = true;
+        }
+      }
+      final int slot = (int)( queue.posted % CAPACITY );
+      queue.targets[slot] = target;
+      queue.messages[slot] = text;
+      queue.posted++;
+      queue.last.put( target, queue.posted );
+      pending++;
+      queue.notEmpty.signal();
+    }
+    finally {
+      LOCK.unlock();
+    }
+    if ( interrupted ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+
+  /**
+   * Start the writer of the given command, and make sure what is not written
+   * yet is written when the JVM shuts down.
+   */
+  private static Queue start( final ExecutionContext command ) {
+    final Queue retval = new Queue( command );
+    queues.put( command, retval );
+    retval.start();
+
+    if ( !hooked ) {
+      hooked = true;
+      try {
+        Runtime.getRuntime().addShutdownHook( new Thread( "cliqs-console-shutdown" ) {
+          @Override
+          public void run() {
+            flush();
+          }
+        } );
+      } catch ( final IllegalStateException e ) {
+        // first message logged while shutting down, whoever logs it flushes
+      }
+    }
+    return retval;
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import coyote.cli.actions.AbstractAction;
+import coyote.commons.PrivateFiles;
+import coyote.commons.StringUtil;
+
+
+/**
+ * The daemon keeps a fully configured CLI resident and runs the commands 
+ * forwarded to it by the {@link DaemonClient}.
+ * 
+ * <p>Starting the JVM, loading the properties, building the context and 
+ * warming up the actions is done once when the daemon starts. After that, 
+ * each command only costs the work of the action itself.</p>
+ * 
+ * <p>The daemon listens on the loopback interface only and writes its port 
+ * and a random secret to a rendezvous file readable only by the owner, in a 
+ * directory only the owner may enter. A client must present the secret 
+ * before any command is run. Relative file names of a command are resolved 
+ * against the working directory of its client, not that of the daemon, and 
+ * its output is written line by line if the standard output of the client 
+ * is a terminal.</p>
+ */
+public class Daemon {
+
+  private static final Logger LOG = LoggerFactory.getLogger( Daemon.class );
+
+  private final CLI cli;
+  private final String secret;
+  private final ExecutorService workers = Executors.newCachedThreadPool( new ThreadFactory() {
+    @Override
+    public Thread newThread( final Runnable r ) {
+      final Thread thread = new Thread( r, "cliqs-daemon" );
+      thread.setDaemon( true );
+      return thread;
+    }
+  } );
+
+
+
+
+  /**
+   * @param cli the configured CLI used to run the forwarded commands
+   */
+  public Daemon( final CLI cli ) {
+    this.cli = cli;
+
+    final byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes( bytes );
+    final StringBuilder b = new StringBuilder();
+    for ( final byte value : bytes ) {
+      b.append( String.format( "%02x", value ) );
+    }
+    secret = b.toString();
+  }
+
+
+
+
+  /**
+   * Listen for commands until the process is stopped.
+   * 
+   * @param port the loopback port on which to listen, 0 for any free port
+   * 
+   * @throws IOException if the daemon could not listen or publish its port
+   */
+  public void serve( final int port ) throws IOException {
+    AbstractAction.setResident( true );
+
+    final ServerSocket server = new ServerSocket( port, 50, InetAddress.getLoopbackAddress() );
+    final File rendezvous = DaemonProtocol.getRendezvousFile();
+    publish( rendezvous, server.getLocalPort() );
+
+    Runtime.getRuntime().addShutdownHook( new Thread( "cliqs-daemon-shutdown" ) {
+      @Override
+      public void run() {
+        rendezvous.delete();
+        try {
+          server.close();
+        } catch ( final IOException ignore ) {}
+      }
+    } );
+
+    AbstractAction.info( "Daemon listening on port " + server.getLocalPort() + " (" + rendezvous + ")" );
+
+    while ( !server.isClosed() ) {
+      final Socket socket;
+      try {
+        socket = server.accept();
+      } catch ( final IOException e ) {
+        if ( server.isClosed() ) {
+          break;
+        }
+        LOG.warn( "Could not accept connection: {}", e.getMessage() );
+        continue;
+      }
+
+      workers.execute( new Runnable() {
+        @Override
+        public void run() {
+          handle( socket );
+        }
+      } );
+    }
+    workers.shutdown();
+  }
+
+
+
+
+  /**
+   * Run the command sent over the given connection.
+   * 
+   * @param socket the connection from the client
+   */
+  private void handle( final Socket socket ) {
+    try {
+      final DataInputStream in = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+      final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+
+      if ( ( in.readInt() != DaemonProtocol.MAGIC ) || !secret.equals( in.readUTF() ) ) {
+        LOG.warn( "Rejected connection from {}", socket.getRemoteSocketAddress() );
+        return;
+      }
+
+      final String[] args = new String[in.readInt()];
+      for ( int x = 0; x < args.length; x++ ) {
+        args[x] = in.readUTF();
+      }
+      final File directory = new File( in.readUTF() );
+      final boolean terminal = in.readBoolean();
+      LOG.debug( "Running {} argument command", args.length );
+
+      // feed the STDIN frames from the client to the command
+      final PipedInputStream stdin = new PipedInputStream( 8192 );
+      final PipedOutputStream feed = new PipedOutputStream( stdin );
+      final Thread reader = new Thread( "cliqs-daemon-stdin" ) {
+        @Override
+        public void run() {
+          try {
+            final byte[] buffer = new byte[8192];
+            while ( in.readByte() == DaemonProtocol.STDIN ) {
+              int remaining = in.readInt();
+              if ( remaining == 0 ) {
+                break;
+              }
+              while ( remaining > 0 ) {
+                final int count = in.read( buffer, 0, Math.min( remaining, buffer.length ) );
+                if ( count < 0 ) {
+                  return;
+                }
+                feed.write( buffer, 0, count );
+                remaining -= count;
+              }
+            }
+          } catch ( final IOException e ) {
+            // client went away or the command stopped reading
+          }
+          finally {
+            try {
+              feed.close();
+            } catch ( final IOException ignore ) {}
+          }
+        }
+      };
+      reader.setDaemon( true );
+      reader.start();
+
+      final PrintStream stdout = new PrintStream( new DaemonProtocol.FrameOutputStream( out, DaemonProtocol.STDOUT ), true );
+      final PrintStream stderr = new PrintStream( new DaemonProtocol.FrameOutputStream( out, DaemonProtocol.STDERR ), true );
+
+      final ExecutionContext context = new ExecutionContext( stdin, stdout, stderr );
+      context.setDirectory( directory );
+      context.setTerminal( terminal );
+      final int code = cli.run( args, context );
+      stdin.close();
+
+      synchronized( out ) {
+        out.writeByte( DaemonProtocol.EXIT );
+        out.writeInt( code );
+        out.flush();
+      }
+    } catch ( final IOException e ) {
+      LOG.warn( "Connection failed: {}", e.getMessage() );
+    }
+    finally {
+      try {
+        socket.close();
+      } catch ( final IOException ignore ) {}
+    }
+  }
+
+
+
+
+  /**
+   * Write the port and secret to the rendezvous file so only the owner can 
+   * read it.
+   * 
+   * <p>The file is created with its permissions in one step, in the private 
+   * directory of the user. A file left by a daemon which was killed is 
+   * replaced, but one belonging to someone else, or which others may read, 
+   * is refused.</p>
+   */
+  private void publish( final File file, final int port ) throws IOException {
+    final File directory = DaemonProtocol.getRendezvousDirectory();
+    if ( directory != null ) {
+      PrivateFiles.createDirectory( directory );
+    }
+
+    if ( Files.exists( file.toPath(), LinkOption.NOFOLLOW_LINKS ) ) {
+      try {
+        PrivateFiles.check( file );
+      } catch ( final IOException e ) {
+        throw new IOException( "Refusing to use the rendezvous file: " + e.getMessage(), e );
+      }
+      Files.delete( file.toPath() );
+    }
+    PrivateFiles.createFile( file );
+
+    try (Writer writer = new OutputStreamWriter( new FileOutputStream( file ), StringUtil.UTF_8 )) {
+      writer.write( port + " " + secret );
+    }
+    file.deleteOnExit();
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import coyote.commons.PrivateFiles;
+import coyote.commons.SystemPropertyUtil;
+
+
+/**
+ * The thin client which forwards its arguments, standard input and output to 
+ * a running {@link Daemon}.
+ * 
+ * <p>This class only depends on the JDK and a few small classes of its own 
+ * so it starts quickly. If no daemon is 
+ * running, the command is run in this JVM exactly as {@link CLI} would. The 
+ * same happens if the rendezvous file does not belong to the user, so a 
+ * daemon started by someone else never sees the command.</p>
+ */
+public class DaemonClient {
+
+  /**
+   * Forward the command to the daemon and exit with its exit code.
+   * 
+   * @param args command line arguments to forward.
+   */
+  public static void main( final String[] args ) {
+    final String[] rendezvous = readRendezvous();
+    Socket socket = null;
+    if ( rendezvous != null ) {
+      try {
+        socket = new Socket( InetAddress.getLoopbackAddress(), Integer.parseInt( rendezvous[0] ) );
+        socket.setTcpNoDelay( true );
+      } catch ( final Exception e ) {
+        // stale rendezvous file, the daemon is gone
+        socket = null;
+      }
+    }
+
+    if ( socket == null ) {
+      // no daemon listening, do the work ourselves
+      CLI.main( args );
+      return;
+    }
+
+    int code = 1;
+    try {
+      code = forward( socket, rendezvous[1], args );
+    } catch ( final EOFException e ) {
+      System.err.println( "The cliqs daemon closed the connection before the command completed" );
+    } catch ( final IOException e ) {
+      System.err.println( "Lost connection to the cliqs daemon: " + e.getMessage() );
+    }
+    finally {
+      try {
+        socket.close();
+      } catch ( final IOException ignore ) {}
+    }
+    System.exit( code );
+  }
+
+
+
+
+  /**
+   * Read the port and secret of the running daemon from the rendezvous file.
+   * 
+   * @return the port and the secret, or null if no daemon has published them
+   */
+  private static String[] readRendezvous() {
+    final File file = DaemonProtocol.getRendezvousFile();
+    if ( !file.exists() ) {
+      return null;
+    }
+
+    try {
+      final File directory = DaemonProtocol.getRendezvousDirectory();
+      if ( directory != null ) {
+        PrivateFiles.check( directory );
+      }
+      PrivateFiles.check( file );
+    } catch ( final IOException e ) {
+      System.err.println( "Ignoring the cliqs daemon: " + e.getMessage() );
+      return null;
+    }
+
+    try (BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) )) {
+      final String[] tokens = reader.readLine().trim().split( " " );
+      return ( tokens.length == 2 ) ? tokens : null;
+    } catch ( final Exception e ) {
+      return null;
+    }
+  }
+
+
+
+
+  /**
+   * Send the arguments and pump standard input and output until the daemon 
+   * reports the exit code.
+   * 
+   * @param socket the connection to the daemon
+   * @param secret the secret published by the daemon
+   * @param args the command line arguments to forward
+   * 
+   * @return the exit code of the command
+   */
+  private static int forward( final Socket socket, final String secret, final String[] args ) throws IOException {
+    final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+    final DataInputStream in = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+
+    out.writeInt( DaemonProtocol.MAGIC );
+    out.writeUTF( secret );
+    out.writeInt( args.length );
+    for ( final String arg : args ) {
+      out.writeUTF( arg );
+    }
+    out.writeUTF( new File( SystemPropertyUtil.getWorkPath() ).getAbsolutePath() );
+    out.writeBoolean( OutputSink.isTerminal() );
+    out.flush();
+
+    final Thread pump = new Thread( "cliqs-client-stdin" ) {
+      @Override
+      public void run() {
+        final OutputStream frames = new DaemonProtocol.FrameOutputStream( out, DaemonProtocol.STDIN );
+        final byte[] buffer = new byte[8192];
+        try {
+          int count;
+          while ( ( count = System.in.read( buffer ) ) != -1 ) {
+            frames.write( buffer, 0, count );
+            frames.flush();
+          }
+          synchronized( out ) {
+            out.writeByte( DaemonProtocol.STDIN );
+            out.writeInt( 0 );
+            out.flush();
+          }
+        } catch ( final IOException e ) {
+          // the command completed and the connection is closed
+        }
+      }
+    };
+    pump.setDaemon( true );
+    pump.start();
+
+    final byte[] buffer = new byte[8192];
+    while ( true ) {
+      final byte type = in.readByte();
+      final int length = in.readInt();
+      if ( type == DaemonProtocol.EXIT ) {
+        System.out.flush();
+        System.err.flush();
+        return length;
+      }
+
+      final OutputStream target = ( type == DaemonProtocol.STDERR ) ? System.err : System.out;
+      int remaining = length;
+      while ( remaining > 0 ) {
+        final int count = in.read( buffer, 0, Math.min( remaining, buffer.length ) );
+        if ( count < 0 ) {
+          throw new EOFException();
+        }
+        target.write( buffer, 0, count );
+        remaining -= count;
+      }
+      target.flush();
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import coyote.commons.PrivateFiles;
+
+
+/**
+ * The wire format shared by the {@link Daemon} and the {@link DaemonClient}.
+ * 
+ * <p>The client opens a loopback connection and sends a handshake: the 
+ * {@link #MAGIC} number, the shared secret found in the rendezvous file, the 
+ * argument count, each argument, the working directory of the client, 
+ * against which relative file names are resolved, and whether the standard 
+ * output of the client is a terminal. After that, both sides exchange 
+ * frames of a single type byte, an integer length and that many bytes of 
+ * data. The client sends {@link #STDIN} frames (a zero length frame marks the 
+ * end of input) and the daemon sends {@link #STDOUT} and {@link #STDERR} 
+ * frames followed by a single {@link #EXIT} frame whose length field carries 
+ * the exit code of the command.</p>
+ * 
+ * <p>This class only uses JDK classes (and {@link PrivateFiles}, which does 
+ * too) so the client can start without loading any of the frameworks the 
+ * daemon keeps warm.</p>
+ */
+final class DaemonProtocol {
+
+  /** Identifies a cliqs connection */
+  static final int MAGIC = 0x434c4951;
+
+  static final byte STDIN = 0;
+  static final byte STDOUT = 1;
+  static final byte STDERR = 2;
+  static final byte EXIT = 3;
+
+  /** System property which overrides the location of the rendezvous file */
+  static final String RENDEZVOUS = "cliqs.daemon.file";
+
+
+
+
+  /**
+   * The rendezvous file holds the port and the secret of the running daemon.
+   * 
+   * <p>It is placed in the private directory of the user in the local 
+   * temporary directory, not the home directory, as home directories are 
+   * often network mounted. Both the daemon and the client check the file 
+   * belongs to the user before they trust it (see {@link PrivateFiles}).</p>
+   * 
+   * @return the file through which the client finds the daemon
+   */
+  static File getRendezvousFile() {
+    final File directory = getRendezvousDirectory();
+    return ( directory != null ) ? new File( directory, "daemon" ) : new File( System.getProperty( RENDEZVOUS ).trim() );
+  }
+
+
+
+
+  /**
+   * @return the private directory of the user holding the rendezvous file, 
+   *         or null if the location of the file was overridden
+   */
+  static File getRendezvousDirectory() {
+    final String override = System.getProperty( RENDEZVOUS );
+    if ( ( override != null ) && ( override.trim().length() > 0 ) ) {
+      return null;
+    }
+    return PrivateFiles.getTempDirectory( "cliqs" );
+  }
+
+
+
+
+  private DaemonProtocol() {}
+
+
+
+
+  /**
+   * Writes everything it is given as frames of a particular type.
+   */
+  static final class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte type;
+
+
+
+
+    FrameOutputStream( final DataOutputStream out, final byte type ) {
+      this.out = out;
+      this.type = type;
+    }
+
+
+
+
+    @Override
+    public void flush() throws IOException {
+      synchronized( out ) {
+        out.flush();
+      }
+    }
+
+
+
+
+    @Override
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+      if ( len > 0 ) {
+        synchronized( out ) {
+          out.writeByte( type );
+          out.writeInt( len );
+          out.write( b, off, len );
+        }
+      }
+    }
+
+
+
+
+    @Override
+    public void write( final int b ) throws IOException {
+      write( new byte[] { (byte)b }, 0, 1 );
+    }
+
+  }
+
+}
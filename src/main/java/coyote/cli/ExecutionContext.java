@@ -0,0 +1,1048 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import coyote.cli.actions.Action;
+import coyote.cli.format.RecordFormatter;
+import coyote.cli.template.SymbolTable;
+import coyote.commons.CipherUtil;
+import coyote.commons.CronExpression;
+import coyote.commons.SystemPropertyUtil;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Everything which belongs to one run of a command: its command line,
+ * environment, output streams and symbol table.
+ * 
+ * <p>Each command run through the CLI gets its own context, so several
+ * commands can run in one JVM at the same time without seeing each others
+ * arguments or writing into each others output. The context is passed to
+ * actions implementing {@link coyote.cli.actions.ContextAction} and is also
+ * bound to the thread running the command, which is how the static methods
+ * of {@link coyote.cli.actions.AbstractAction} find it for older
+ * actions.</p>
+ * 
+ * <p>Threads without a context of their own use the default context, which
+ * holds the streams the JVM started with.</p>
+ */
+public class ExecutionContext {
+
+  /** The environment used when none is specified on the command line */
+  public static final String DEFAULT_ENVIRONMENT = "DEV";
+
+  private static final int OUT = 0;
+  private static final int CONSOLE = 1;
+  private static final int ERR = 2;
+
+  /** The context bound to each thread */
+  private static final ThreadLocal<ExecutionContext> CURRENT = new ThreadLocal<ExecutionContext>();
+
+  /** Writes to the output of the context bound to the writing thread */
+  private static final PrintStream ROUTED_OUT = new PrintStream( new RoutedOutputStream( OUT ), true );
+
+  /** The standard streams which follow the context of each thread */
+  private static PrintStream routedConsole = null;
+  private static PrintStream routedErr = null;
+  private static InputStream routedIn = null;
+
+  /** Takes what a command no longer listening to its action is sent */
+  private static final PrintStream DISCARD = new PrintStream( new OutputStream() {
+    @Override
+    public void write( final byte[] b, final int off, final int len ) {}
+
+
+
+
+    @Override
+    public void write( final int b ) {}
+  } );
+
+  /** The context of threads which have not bound one of their own */
+  private static final ExecutionContext DEFAULT = new ExecutionContext( System.in, System.out, System.err );
+
+  static {
+    DEFAULT.terminal = OutputSink.isTerminal();
+    if ( System.getProperty( SystemPropertyUtil.WORK_DIR ) != null ) {
+      // started away from where the command was given
+      DEFAULT.directory = new File( SystemPropertyUtil.getWorkPath() );
+    }
+  }
+
+  private CommandLine commandLine = null;
+  private String noun = null;
+  private String environment = DEFAULT_ENVIRONMENT;
+  private boolean quiet = false;
+  private boolean verbose = false;
+  private boolean debug = false;
+  private boolean resident = false;
+  private boolean terminal = false;
+  private OutputSink.Policy flushPolicy = null;
+  private FileSink.Sync sync = null;
+  private String compression = null;
+  private RotatingOutput.Limit rotation = null;
+  private File directory = null;
+
+  private final InputStream in;
+  private PrintStream out;
+  private final PrintStream console;
+  private final PrintStream err;
+  private final SymbolTable symbols = new SymbolTable();
+  private final PhaseTimer timer = new PhaseTimer();
+  private RecordFormatter formatter = null;
+  private volatile Thread detached = null;
+
+  // What the CLI decided for this run
+  Action action = null;
+  boolean sharedAction = false;
+  final List<String> environments = new ArrayList<String>();
+  String[] scheduled = null;
+  long interval = 0;
+  CronExpression cron = null;
+  List<String[]> stages = null;
+  RecordPipe upstream = null;
+  RecordPipe downstream = null;
+  long cacheTtl = 0;
+  long timeout = 0;
+  boolean actionClosed = false;
+  CompletableFuture<Void> stopped = null;
+  ResultCache.Recorder recorder = null;
+  List<DataFrame> records = null;
+  String recordFormat = null;
+
+
+
+
+  /**
+   * An output stream which writes to a stream of the context bound to the
+   * writing thread.
+   */
+  private static class RoutedOutputStream extends OutputStream {
+    private final int stream;
+
+
+
+
+    RoutedOutputStream( final int stream ) {
+      this.stream = stream;
+    }
+
+
+
+
+    @Override
+    public void close() throws IOException {
+      // the streams belong to the contexts
+      flush();
+    }
+
+
+
+
+    @Override
+    public void flush() throws IOException {
+      target().flush();
+    }
+
+
+
+
+    private OutputStream target() {
+      final ExecutionContext context = current();
+      switch ( stream ) {
+        case OUT:
+          return context.stream( context.out );
+        case CONSOLE:
+          return context.stream( context.console );
+        default:
+          return context.stream( context.err );
+      }
+    }
+
+
+
+
+    @Override
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+      final OutputStream target = target();
+      ConsoleWriter.await( target );
+      target.write( b, off, len );
+    }
+
+
+
+
+    @Override
+    public void write( final int b ) throws IOException {
+      final OutputStream target = target();
+      ConsoleWriter.await( target );
+      target.write( b );
+    }
+  }
+
+
+
+
+  /**
+   * An input stream which reads from the input of the context bound to the
+   * reading thread.
+   */
+  private static class RoutedInputStream extends InputStream {
+
+    @Override
+    public int available() throws IOException {
+      return current().in.available();
+    }
+
+
+
+
+    @Override
+    public int read() throws IOException {
+      return current().in.read();
+    }
+
+
+
+
+    @Override
+    public int read( final byte[] b, final int off, final int len ) throws IOException {
+      return current().in.read( b, off, len );
+    }
+  }
+
+
+
+
+  /**
+   * @return the context bound to the current thread, or the default context
+   *         if the thread has none
+   */
+  public static ExecutionContext current() {
+    final ExecutionContext retval = CURRENT.get();
+    return ( retval != null ) ? retval : DEFAULT;
+  }
+
+
+
+
+  /**
+   * @return the context used by threads which have not bound one of their
+   *         own
+   */
+  public static ExecutionContext getDefault() {
+    return DEFAULT;
+  }
+
+
+
+
+  /**
+   * Return a stream which writes to the output of whichever context is bound
+   * to the thread writing to it.
+   * 
+   * <p>This allows a single shared stream to serve every command running at
+   * the same time.</p>
+   * 
+   * @return the output stream of the current context
+   */
+  public static PrintStream getRoutedOutput() {
+    return ROUTED_OUT;
+  }
+
+
+
+
+  /**
+   * Replace the standard streams of the JVM with ones which follow the
+   * context bound to each thread.
+   * 
+   * <p>This is done once by the modes which run several commands in one JVM,
+   * so what a command writes to {@code System.out} (e.g. through a library)
+   * ends up in its own output and not in that of another command. A single 
+   * command does it too, so what it writes there is not written ahead of the 
+   * messages still waiting in the {@link ConsoleWriter}.</p>
+   */
+  static synchronized void installStreams() {
+    if ( routedConsole == null ) {
+      routedConsole = new PrintStream( new RoutedOutputStream( CONSOLE ), true );
+      routedErr = new PrintStream( new RoutedOutputStream( ERR ), true );
+      routedIn = new RoutedInputStream();
+      System.setOut( routedConsole );
+      System.setErr( routedErr );
+      System.setIn( routedIn );
+    }
+  }
+
+
+
+
+  /**
+   * Bind the given context to the current thread again.
+   * 
+   * @param previous the context returned by {@link #bind()}, may be null
+   */
+  public static void release( final ExecutionContext previous ) {
+    if ( previous == null ) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set( previous );
+    }
+  }
+
+
+
+
+  /**
+   * Create a context whose output is sent to the console.
+   * 
+   * @param in the standard input of the command
+   * @param out the standard output of the command
+   * @param err the standard error of the command
+   */
+  public ExecutionContext( final InputStream in, final PrintStream out, final PrintStream err ) {
+    this( in, out, out, err );
+  }
+
+
+
+
+  /**
+   * Create a context whose output is kept apart from its console messages.
+   * 
+   * @param in the standard input of the command
+   * @param out where the results of the command are written
+   * @param console the standard output of the command, for its messages
+   * @param err the standard error of the command
+   */
+  public ExecutionContext( final InputStream in, final PrintStream out, final PrintStream console, final PrintStream err ) {
+    // never route a context to itself
+    this.in = ( in == routedIn ) ? current().in : in;
+    this.out = ( out == ROUTED_OUT ) ? current().out : ( out == routedConsole ) ? current().console : out;
+    this.console = ( console == routedConsole ) ? current().console : console;
+    this.err = ( err == routedErr ) ? current().err : err;
+  }
+
+
+
+
+  /**
+   * Bind this context to the current thread.
+   * 
+   * @return the context previously bound to the thread, to be passed to
+   *         {@link #release(ExecutionContext)} when this one is done
+   */
+  public ExecutionContext bind() {
+    final ExecutionContext retval = CURRENT.get();
+    CURRENT.set( this );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write a debug message to the console.
+   * 
+   * @param msg The message to write.
+   */
+  public void debug( final Object msg ) {
+    if ( !quiet && debug ) {
+      ConsoleWriter.post( this, console(), msg );
+    }
+  }
+
+
+
+
+  /**
+   * Write a debug message to the console, built only if it is written.
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public void debug( final Supplier<?> msg ) {
+    if ( !quiet && debug ) {
+      ConsoleWriter.post( this, console(), msg.get() );
+    }
+  }
+
+
+
+
+  /**
+   * @return the console, after writing out the buffered output of the command 
+   *         if it goes to the console as well, so messages appear in order
+   */
+  private PrintStream console() {
+    if ( ( out instanceof OutputSink ) && ( (OutputSink)out ).writesTo( console ) ) {
+      out.flush();
+    }
+    return stream( console );
+  }
+
+
+
+
+  /**
+   * Stop listening to the action of the command, which ran out of time but
+   * may still be running.
+   * 
+   * <p>From now on only the calling thread, which is ending the command, 
+   * writes to the streams of the command and emits its records. What the 
+   * action still writes or emits is discarded, so it can not add to a result
+   * which has been finished or to streams which have been closed or passed
+   * on to the next command.</p>
+   */
+  void detach() {
+    detached = Thread.currentThread();
+  }
+
+
+
+
+  /**
+   * Create a context for running the same command in another environment
+   * with its own streams.
+   * 
+   * @param env the environment of the new context
+   * @param output where the results of the command are written
+   * @param messages the standard output of the command
+   * @param errors the standard error of the command
+   * 
+   * @return a resident copy of this context
+   */
+  ExecutionContext derive( final String env, final PrintStream output, final PrintStream messages, final PrintStream errors ) {
+    final ExecutionContext retval = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), output, messages, errors );
+    retval.commandLine = commandLine;
+    retval.noun = noun;
+    retval.environment = env;
+    retval.quiet = quiet;
+    retval.verbose = verbose;
+    retval.debug = debug;
+    retval.resident = true;
+    retval.flushPolicy = flushPolicy;
+    retval.sync = sync;
+    retval.compression = compression;
+    retval.rotation = rotation;
+    retval.downstream = downstream;
+    retval.timeout = timeout;
+    retval.directory = directory;
+    synchronized( symbols ) {
+      retval.symbols.merge( symbols );
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write a record to the output of the command in the given format.
+   * 
+   * <p>The record is written as soon as it is emitted, so nothing but the
+   * formatter is held in memory however many records the command produces. 
+   * The format is chosen by the first record; the rest are written in the 
+   * same format. In a pipeline, the record is passed as it is to the next 
+   * stage instead. When the command runs in several environments at once, 
+   * the record is kept to be merged with those of the others (see 
+   * {@link FanOut}).</p>
+   * 
+   * @param record the record to write
+   * @param format the name of the format (e.g. CSV or JSON)
+   * 
+   * @throws IllegalArgumentException if the format is not supported
+   */
+  public void emit( final DataFrame record, final String format ) {
+    if ( isDetached() ) {
+      return;
+    }
+    if ( records != null ) {
+      synchronized( records ) {
+        if ( recordFormat == null ) {
+          recordFormat = format;
+        }
+        records.add( record );
+      }
+      return;
+    }
+    if ( downstream != null ) {
+      final ResultCache.Recorder cache = recorder;
+      if ( cache != null ) {
+        cache.add( record );
+      }
+      downstream.put( record );
+      return;
+    }
+    synchronized( this ) {
+      if ( formatter == null ) {
+        formatter = RecordFormatter.newInstance( format );
+      }
+      formatter.write( record, out );
+    }
+  }
+
+
+
+
+  /**
+   * Write what remains of the format of the emitted records (e.g. the closing
+   * bracket of a JSON array).
+   */
+  synchronized void finishRecords() {
+    if ( formatter != null ) {
+      formatter.finish( out );
+      formatter = null;
+    }
+  }
+
+
+
+
+  /**
+   * @return true if the command stopped listening to the current thread
+   */
+  private boolean isDetached() {
+    final Thread thread = detached;
+    return ( thread != null ) && ( thread != Thread.currentThread() );
+  }
+
+
+
+
+  /**
+   * @return the given stream of the command, or one discarding what is 
+   *         written if the command stopped listening to the current thread
+   */
+  private PrintStream stream( final PrintStream stream ) {
+    return isDetached() ? DISCARD : stream;
+  }
+
+
+
+
+  /**
+   * Write an error message to the error stream.
+   * 
+   * @param msg The message to write.
+   */
+  public void error( final Object msg ) {
+    if ( !quiet ) {
+      ConsoleWriter.post( this, stream( err ), msg );
+    }
+  }
+
+
+
+
+  /**
+   * Write an error message to the error stream, built only if it is written.
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public void error( final Supplier<?> msg ) {
+    if ( !quiet ) {
+      ConsoleWriter.post( this, stream( err ), msg.get() );
+    }
+  }
+
+
+
+
+  /**
+   * @return how output files are compressed ({@link BlockCompressor#GZIP} or
+   *         {@link BlockCompressor#DEFLATE}), null if they are not
+   */
+  public String getCompression() {
+    return compression;
+  }
+
+
+
+
+  /**
+   * @return the parsed command line, or null if the command line has not been
+   *         parsed
+   */
+  public CommandLine getCommandLine() {
+    return commandLine;
+  }
+
+
+
+
+  /**
+   * Get a named value from the command line.
+   * 
+   * @param name name of the value to return
+   * 
+   * @return The value or null if there were problems or the value does not
+   *         exist.
+   */
+  public String getCommandLineValue( final String name ) {
+    if ( commandLine == null ) {
+      // no argument parsing was performed
+      return null;
+    }
+    try {
+      final Object obj = commandLine.getParsedOptionValue( name );
+      return ( obj != null ) ? obj.toString() : null;
+    } catch ( final ParseException e ) {
+      debug( "Error retrieving Command Line value '" + name + "' - " + e.getMessage() );
+      return null;
+    }
+  }
+
+
+
+
+  /**
+   * @return the standard output of the command, for its messages
+   */
+  public PrintStream getConsole() {
+    return stream( console );
+  }
+
+
+
+
+  /**
+   * @return the directory against which relative file names of the command
+   *         are resolved, null for the working directory of the JVM
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+
+
+
+  /**
+   * Get the decrypted value of the encrypted property for the environment of
+   * this context.
+   * 
+   * @param key the property to retrieve
+   * 
+   * @return the value currently set in that property
+   */
+  public String getEncryptedProperty( final String key ) {
+    final String rawValue = SystemPropertyUtil.getString( environment + "." + key );
+    if ( rawValue != null ) {
+      try {
+        return CipherUtil.decrypt( rawValue );
+      } catch ( final Exception e ) {
+        error( "Problems getting encrypted property '" + key + "' = '" + rawValue + "' - " + e.toString() );
+        e.printStackTrace( stream( err ) );
+      }
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * @return the environment in which the command runs
+   */
+  public String getEnvironment() {
+    return environment;
+  }
+
+
+
+
+  /**
+   * @return the standard error of the command
+   */
+  public PrintStream getErr() {
+    return stream( err );
+  }
+
+
+
+
+  /**
+   * @return the standard input of the command
+   */
+  public InputStream getIn() {
+    return in;
+  }
+
+
+
+
+  /**
+   * @return when the buffered output of the command is written, null to 
+   *         choose by where the output goes
+   */
+  public OutputSink.Policy getFlushPolicy() {
+    return flushPolicy;
+  }
+
+
+
+
+  /**
+   * @return when the data written to an output file is forced to the disk, 
+   *         null for never
+   */
+  public FileSink.Sync getFileSync() {
+    return sync;
+  }
+
+
+
+
+  /**
+   * @return the noun of the command, or null if it has not been parsed
+   */
+  public String getNoun() {
+    return noun;
+  }
+
+
+
+
+  /**
+   * @return where the results of the command are written
+   */
+  public PrintStream getOut() {
+    return stream( out );
+  }
+
+
+
+
+  /**
+   * Receive the next record emitted by the previous stage of the pipeline
+   * this command runs in, waiting until there is one.
+   * 
+   * @return the next record, or null when the previous stage has ended or 
+   *         the command is not the later stage of a pipeline
+   */
+  public DataFrame nextRecord() {
+    return ( upstream != null ) ? upstream.take() : null;
+  }
+
+
+
+
+  /**
+   * Resolve a file name given to the command.
+   * 
+   * <p>A command forwarded to the daemon names files relative to the working
+   * directory of its client, not that of the daemon.</p>
+   * 
+   * @param name the name of the file, absolute or relative
+   * 
+   * @return the file, relative names resolved against the directory of the 
+   *         command
+   */
+  public File resolve( final String name ) {
+    final File retval = new File( name );
+    return ( retval.isAbsolute() || ( directory == null ) ) ? retval : new File( directory, name );
+  }
+
+
+
+
+  /**
+   * Retrieve the property appropriate for the environment of this context.
+   * 
+   * @param key the property to retrieve
+   * 
+   * @return the value currently set in that property
+   */
+  public String getProperty( final String key ) {
+    return SystemPropertyUtil.getString( environment + "." + key );
+  }
+
+
+
+
+  /**
+   * @return when the output file moves on to a new one, null to write a 
+   *         single file
+   */
+  public RotatingOutput.Limit getRotation() {
+    return rotation;
+  }
+
+
+
+
+  /**
+   * @return the symbols used to process templates (e.g. the output file name)
+   *         for this command
+   */
+  public SymbolTable getSymbolTable() {
+    return symbols;
+  }
+
+
+
+
+  /**
+   * @return the time spent in each phase of this command
+   */
+  public PhaseTimer getTimer() {
+    return timer;
+  }
+
+
+
+
+  /**
+   * Write an informational message to the console.
+   * 
+   * @param msg The message to write.
+   */
+  public void info( final Object msg ) {
+    if ( !quiet ) {
+      ConsoleWriter.post( this, console(), msg );
+    }
+  }
+
+
+
+
+  /**
+   * Write an informational message to the console, built only if it is 
+   * written.
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public void info( final Supplier<?> msg ) {
+    if ( !quiet ) {
+      ConsoleWriter.post( this, console(), msg.get() );
+    }
+  }
+
+
+
+
+  public boolean isDebug() {
+    return debug;
+  }
+
+
+
+
+  public boolean isQuiet() {
+    return quiet;
+  }
+
+
+
+
+  /**
+   * @return true if the JVM is kept alive after this command and calls to
+   *         exit should end the command and not the process
+   */
+  public boolean isResident() {
+    return resident;
+  }
+
+
+
+
+  /**
+   * @return true if the standard output of the command is a terminal, whose
+   *         output is written line by line unless told otherwise
+   */
+  public boolean isTerminal() {
+    return terminal;
+  }
+
+
+
+
+  public boolean isVerbose() {
+    return verbose;
+  }
+
+
+
+
+  /**
+   * @param cmd the parsed command line
+   */
+  public void setCommandLine( final CommandLine cmd ) {
+    commandLine = cmd;
+  }
+
+
+
+
+  /**
+   * @param format how output files are to be compressed
+   *        ({@link BlockCompressor#GZIP} or {@link BlockCompressor#DEFLATE}),
+   *        null to leave them as they are
+   */
+  public void setCompression( final String format ) {
+    compression = format;
+  }
+
+
+
+
+  public void setDebug( final boolean flag ) {
+    debug = flag;
+  }
+
+
+
+
+  /**
+   * @param directory the directory against which relative file names of the
+   *        command are resolved, null for the working directory of the JVM
+   */
+  public void setDirectory( final File directory ) {
+    this.directory = directory;
+  }
+
+
+
+
+  public void setEnvironment( final String env ) {
+    environment = env;
+  }
+
+
+
+
+  /**
+   * @param sync when the data written to an output file is to be forced to 
+   *        the disk, null for never
+   */
+  public void setFileSync( final FileSink.Sync sync ) {
+    this.sync = sync;
+  }
+
+
+
+
+  /**
+   * @param policy when the buffered output of the command is to be written, 
+   *        null to choose by where the output goes
+   */
+  public void setFlushPolicy( final OutputSink.Policy policy ) {
+    flushPolicy = policy;
+  }
+
+
+
+
+  /**
+   * @param noun the noun of the command
+   */
+  public void setNoun( final String noun ) {
+    this.noun = noun;
+  }
+
+
+
+
+  /**
+   * @param stream where the results of the command are to be written
+   */
+  public void setOut( final PrintStream stream ) {
+    out = stream;
+  }
+
+
+
+
+  public void setQuiet( final boolean flag ) {
+    quiet = flag;
+  }
+
+
+
+
+  /**
+   * @param flag true to have calls to exit end the command and not the JVM
+   */
+  public void setResident( final boolean flag ) {
+    resident = flag;
+  }
+
+
+
+
+  /**
+   * @param limit when the output file is to move on to a new one, null to 
+   *        write a single file
+   */
+  public void setRotation( final RotatingOutput.Limit limit ) {
+    rotation = limit;
+  }
+
+
+
+
+  /**
+   * @param flag true if the standard output of the command is a terminal
+   */
+  public void setTerminal( final boolean flag ) {
+    terminal = flag;
+  }
+
+
+
+
+  public void setVerbose( final boolean flag ) {
+    verbose = flag;
+  }
+
+
+
+
+  /**
+   * Write a detailed message relating to the command to the console.
+   * 
+   * @param msg The message to write.
+   */
+  public void trace( final Object msg ) {
+    if ( !quiet && verbose ) {
+      ConsoleWriter.post( this, console(), msg );
+    }
+  }
+
+
+
+
+  /**
+   * Write a detailed message to the console, built only if it is written.
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public void trace( final Supplier<?> msg ) {
+    if ( !quiet && verbose ) {
+      ConsoleWriter.post( this, console(), msg.get() );
+    }
+  }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import coyote.cli.actions.Action;
+import coyote.cli.actions.ExitException;
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Runs the requested action once for each of several environments at the
+ * same time.
+ * 
+ * <p>Each environment gets its own instance of the action and its own
+ * {@link ExecutionContext}, so it sees only its own environment through
+ * {@code getProperty} and {@code getEncryptedProperty}. What each run writes
+ * is collected separately and written in the order the environments were
+ * given, each line of text tagged with its environment. The records each run
+ * emits are merged into one result instead: they are written through a
+ * single formatter once all the runs are done, each with its environment as
+ * an extra first field, so CSV and TAB output have one header with an
+ * {@code env} column and JSON output stays valid.</p>
+ */
+public class FanOut {
+
+  /** The name of the field holding the environment of each merged record */
+  static final String ENVIRONMENT = "env";
+
+  /**
+   * One environment and the results of running the action in it.
+   */
+  private static class Run {
+    String environment;
+    Action action;
+    int code;
+    ByteArrayOutputStream console = new ByteArrayOutputStream();
+    ByteArrayOutputStream out;
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    List<DataFrame> records = new ArrayList<DataFrame>();
+    String format;
+  }
+
+  private final CLI cli;
+
+
+
+
+  /**
+   * @param cli the configured CLI whose action is to be run
+   */
+  public FanOut( final CLI cli ) {
+    this.cli = cli;
+  }
+
+
+
+
+  /**
+   * Run the action of the given command in each of its environments.
+   * 
+   * @param context the context of the command, with the action selected for
+   *        it and the environments in which to run it
+   * 
+   * @return 0 if the action succeeded in all the environments, otherwise the
+   *         highest exit code of the runs
+   */
+  public int run( final ExecutionContext context ) {
+    final PrintStream out = context.getOut();
+    final PrintStream console = context.getConsole();
+    final PrintStream err = context.getErr();
+
+    // what the runs write to the standard streams goes to their own buffers
+    ExecutionContext.installStreams();
+
+    final List<Run> runs = new ArrayList<Run>();
+    boolean shared = false;
+    for ( final String environment : context.environments ) {
+      final Run run = new Run();
+      run.environment = environment;
+      run.action = cli.newAction( context.getNoun() );
+      run.out = ( out == console ) ? run.console : new ByteArrayOutputStream();
+      shared |= ( run.action == null );
+      runs.add( run );
+    }
+
+    // an action which can not be created again must take its turns
+    final int workers = shared ? 1 : runs.size();
+    final ExecutorService pool = Executors.newFixedThreadPool( workers, new ThreadFactory() {
+      int count = 0;
+
+
+      @Override
+      public synchronized Thread newThread( final Runnable r ) {
+        final Thread thread = new Thread( r, "cliqs-env-" + ( ++count ) );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+
+    try {
+      final List<Future<?>> pending = new ArrayList<Future<?>>();
+      for ( final Run run : runs ) {
+        pending.add( pool.submit( new Runnable() {
+          @Override
+          public void run() {
+            // an action exiting in one environment must not end the others
+            final PrintStream messages = new PrintStream( run.console, true );
+            final PrintStream output = ( run.out == run.console ) ? messages : new PrintStream( run.out, true );
+            final ExecutionContext env = context.derive( run.environment, output, messages, new PrintStream( run.err, true ) );
+            env.records = run.records;
+
+            final ExecutionContext previous = env.bind();
+            try {
+              execute( run, ( run.action != null ) ? run.action : context.action, env );
+            }
+            finally {
+              run.format = env.recordFormat;
+              ExecutionContext.release( previous );
+            }
+          }
+        } ) );
+      }
+      for ( final Future<?> future : pending ) {
+        future.get();
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    } catch ( final ExecutionException e ) {
+      throw new IllegalStateException( "Environment run failed: " + e.getCause(), e.getCause() );
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    // write the results in the order the environments were given
+    final String format = ( context.getCommandLine() != null ) ? context.getCommandLine().getOptionValue( "fmt" ) : null;
+    int retval = 0;
+    try {
+      for ( final Run run : runs ) {
+        tag( run.console, "[" + run.environment + "] ", console );
+        if ( run.out != run.console ) {
+          tag( run.out, "[" + run.environment + "] ", out );
+        }
+        tag( run.err, "[" + run.environment + "] ", err );
+        if ( run.code != 0 ) {
+          err.println( "[" + run.environment + "] exited with " + run.code );
+        }
+        retval = Math.max( retval, run.code );
+      }
+    } catch ( final IOException e ) {
+      err.println( "Could not write the environment results: " + e.getMessage() );
+      retval = Math.max( retval, 1 );
+    }
+
+    // then the records of all of them as one result
+    for ( final Run run : runs ) {
+      for ( final DataFrame record : run.records ) {
+        context.emit( tag( record, run.environment ), ( run.format != null ) ? run.format : format );
+      }
+    }
+    context.finishRecords();
+
+    out.flush();
+    console.flush();
+    err.flush();
+
+    return retval;
+  }
+
+
+
+
+  /**
+   * Validate, execute and close the action in the context of its
+   * environment.
+   */
+  private static void execute( final Run run, final Action action, final ExecutionContext context ) {
+    try {
+      CLI.validateAction( action, context );
+      CLI.executeAction( action, context );
+    } catch ( final ExitException e ) {
+      run.code = e.getCode();
+    } catch ( final Exception e ) {
+      ConsoleWriter.post( context, context.getErr(), "Problems running action: " + e.getClass().getSimpleName() + " (" + e.getMessage() + ")" );
+      if ( context.isDebug() || context.isVerbose() ) {
+        e.printStackTrace( context.getErr() );
+      }
+      run.code = 1;
+    }
+    finally {
+      CLI.closeAction( action, context );
+      if ( run.action == null ) {
+        // the next environment runs the same instance, which may not have
+        // stopped yet if it ran out of time
+        CLI.awaitStopped( context );
+      }
+      ConsoleWriter.flush( context );
+      context.getOut().flush();
+      context.getConsole().flush();
+      context.getErr().flush();
+    }
+  }
+
+
+
+
+  /**
+   * @return a copy of the given record with the environment as its first 
+   *         field
+   */
+  private static DataFrame tag( final DataFrame record, final String environment ) {
+    final DataFrame retval = new DataFrame();
+    retval.add( ENVIRONMENT, environment );
+    for ( int x = 0; x < record.getFieldCount(); x++ ) {
+      final DataField field = record.getField( x );
+      retval.add( field.getName(), field.getObjectValue() );
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write the collected data to the target placing the tag before each line.
+   */
+  private static void tag( final ByteArrayOutputStream data, final String tag, final OutputStream target ) throws IOException {
+    final byte[] bytes = data.toByteArray();
+    final byte[] prefix = tag.getBytes( StringUtil.UTF_8 );
+    int start = 0;
+    while ( start < bytes.length ) {
+      int end = start;
+      while ( ( end < bytes.length ) && ( bytes[end] != '\n' ) ) {
+        end++;
+      }
+      if ( end < bytes.length ) {
+        end++; // include the line feed
+      }
+      target.write( prefix );
+      target.write( bytes, start, end - start );
+      start = end;
+    }
+  }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import coyote.commons.DateUtil;
+
+
+/**
+ * An output stream which writes a file through its channel.
+ * 
+ * <p>The bytes are collected in a direct buffer which is reused for the life
+ * of the stream, so each write to the channel is a large one and the channel
+ * does not copy them into a temporary direct buffer of its own. The buffer is
+ * only written when it is full, flushed or closed.</p>
+ * 
+ * <p>How often the data is forced to the disk is set by a {@link Sync}
+ * policy:</p>
+ * <ul>
+ * <li>{@code never} - leave it to the operating system, the default</li>
+ * <li>{@code close} - when the file is closed</li>
+ * <li>{@code interval[:time]} - whenever the buffer is written if the
+ * interval (every second unless an interval like {@code 5s} is given) has
+ * passed since the last time, and when the file is closed</li>
+ * </ul>
+ */
+public class FileSink extends OutputStream {
+
+  /** Never force the data to the disk */
+  public static final String NEVER = "never";
+
+  /** Force the data to the disk when the file is closed */
+  public static final String CLOSE = "close";
+
+  /** Force the data to the disk at most once an interval and when closed */
+  public static final String INTERVAL = "interval";
+
+  /** The size of the direct buffer */
+  public static final int BUFFER_SIZE = 256 * 1024;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+  private final Sync sync;
+  private long lastSync = System.currentTimeMillis();
+  private int syncs = 0;
+  private boolean closed = false;
+
+
+
+
+  /**
+   * When the data written to a file is forced to the disk.
+   */
+  public static class Sync {
+    private final String mode;
+    private final long interval;
+
+
+
+
+    /**
+     * @param mode one of {@link FileSink#NEVER}, {@link FileSink#CLOSE} or
+     *        {@link FileSink#INTERVAL}
+     * @param interval the least milliseconds between syncs of the interval
+     *        mode
+     */
+    public Sync( final String mode, final long interval ) {
+      this.mode = mode;
+      this.interval = interval;
+    }
+
+
+
+
+    /**
+     * Parse a policy like {@code never}, {@code close} or
+     * {@code interval:5s}.
+     * 
+     * @param text the policy and its optional interval separated by a colon
+     * 
+     * @return the policy
+     * 
+     * @throws IllegalArgumentException if the text is not a valid policy
+     */
+    public static Sync parse( final String text ) {
+      if ( text == null ) {
+        throw new IllegalArgumentException( "No fsync policy" );
+      }
+      final String value = text.trim().toLowerCase();
+      final int colon = value.indexOf( ':' );
+      final String mode = ( colon < 0 ) ? value : value.substring( 0, colon );
+      final String arg = ( colon < 0 ) ? null : value.substring( colon + 1 );
+
+      if ( NEVER.equals( mode ) && ( arg == null ) ) {
+        return new Sync( NEVER, 0 );
+      } else if ( CLOSE.equals( mode ) && ( arg == null ) ) {
+        return new Sync( CLOSE, 0 );
+      } else if ( INTERVAL.equals( mode ) ) {
+        return new Sync( INTERVAL, ( arg == null ) ? OutputSink.DEFAULT_INTERVAL : DateUtil.parseInterval( arg ) );
+      }
+      throw new IllegalArgumentException( "Invalid fsync policy '" + text + "' (use never, close or interval[:time])" );
+    }
+
+
+
+
+    /**
+     * @return the least milliseconds between syncs of the interval mode
+     */
+    public long getInterval() {
+      return interval;
+    }
+
+
+
+
+    /**
+     * @return one of {@link FileSink#NEVER}, {@link FileSink#CLOSE} or
+     *         {@link FileSink#INTERVAL}
+     */
+    public String getMode() {
+      return mode;
+    }
+
+
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return INTERVAL.equals( mode ) ? mode + ":" + interval + "ms" : mode;
+    }
+  }
+
+
+
+
+  /**
+   * Open the file for writing, replacing what it holds.
+   * 
+   * @param file the file to write
+   * @param sync when the data is forced to the disk, null for never
+   * 
+   * @throws IOException if the file could not be opened
+   */
+  public FileSink( final File file, final Sync sync ) throws IOException {
+    channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+    this.sync = ( sync != null ) ? sync : new Sync( NEVER, 0 );
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if ( !closed ) {
+      closed = true;
+      try {
+        drain();
+        if ( !NEVER.equals( sync.getMode() ) ) {
+          channel.force( true );
+        }
+      }
+      finally {
+        channel.close();
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Write the buffer to the channel.
+   */
+  private void drain() throws IOException {
+    buffer.flip();
+    while ( buffer.hasRemaining() ) {
+      channel.write( buffer );
+    }
+    buffer.clear();
+  }
+
+
+
+
+  /**
+   * Write what is buffered to the file, and force it to the disk if the
+   * interval of the sync policy has passed.
+   * 
+   * @see java.io.OutputStream#flush()
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    drain();
+    sync();
+  }
+
+
+
+
+  /**
+   * @return when the data is forced to the disk
+   */
+  public Sync getSync() {
+    return sync;
+  }
+
+
+
+
+  /**
+   * @return the number of times the data was forced to the disk before the
+   *         file was closed
+   */
+  int getSyncCount() {
+    return syncs;
+  }
+
+
+
+
+  /**
+   * Force what was written to the disk if the sync policy is an interval
+   * and it has passed since the last time.
+   */
+  private void sync() throws IOException {
+    if ( INTERVAL.equals( sync.getMode() ) ) {
+      final long now = System.currentTimeMillis();
+      if ( ( now - lastSync ) >= sync.getInterval() ) {
+        channel.force( false );
+        lastSync = now;
+        syncs++;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Copy everything the given channel holds to the file without going 
+   * through the heap.
+   * 
+   * <p>A file is transferred by the operating system; other channels are 
+   * read into the direct buffer of this stream, which is written to the 
+   * file whenever it is full.</p>
+   * 
+   * @param src the channel to copy, read to its end
+   * 
+   * @return the number of bytes copied
+   * 
+   * @throws IOException if the channel could not be read or the file written
+   */
+  public synchronized long transferFrom( final ReadableByteChannel src ) throws IOException {
+    if ( closed ) {
+      throw new IOException( "Output is closed" );
+    }
+    drain();
+    long retval = 0;
+    if ( src instanceof FileChannel ) {
+      final long size = ( (FileChannel)src ).size() - ( (FileChannel)src ).position();
+      while ( retval < size ) {
+        final long count = channel.transferFrom( src, channel.position(), size - retval );
+        if ( count <= 0 ) {
+          break;
+        }
+        channel.position( channel.position() + count );
+        retval += count;
+      }
+      sync();
+    } else {
+      for ( int count = src.read( buffer ); count >= 0; count = src.read( buffer ) ) {
+        retval += count;
+        if ( !buffer.hasRemaining() ) {
+          drain();
+          sync();
+        }
+      }
+      drain();
+      sync();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public synchronized void write( final byte[] b, int off, int len ) throws IOException {
+    if ( closed ) {
+      throw new IOException( "Output is closed" );
+    }
+    while ( len > 0 ) {
+      if ( !buffer.hasRemaining() ) {
+        // a long export is synced as it is written, not only when flushed
+        drain();
+        sync();
+      }
+      final int count = Math.min( len, buffer.remaining() );
+      buffer.put( b, off, count );
+      off += count;
+      len -= count;
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write( final int b ) throws IOException {
+    write( new byte[] { (byte)b }, 0, 1 );
+  }
+
+}
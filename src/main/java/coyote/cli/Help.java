@@ -40,14 +40,68 @@ public class Help {
     b.append( " -d toggles debug messages helpful in determining what is happening.\r\n" );
     b.append( " -q toggles quiet mode, only the result is displayed. This overrides debug and\r\n" );
     b.append( "    verbose output.\r\n" );
+    b.append( " -timings text|json writes the time spent in each phase (loading properties,\r\n" );
+    b.append( "    parsing, validating, executing, closing) to standard error. The phases are\r\n" );
+    b.append( "    also displayed with -d.\r\n" );
     b.append( "\r\n" );
     b.append( "All gets are executed against PROD unless another environment is\r\n" );
     b.append( "specified with the environment argument:\r\n" );
     b.append( " -env  The environment against which to run. Supported values are PROD, ST, UAT,\r\n" );
     b.append( "       and DEV (default).\r\n" );
+    b.append( "A list of environments (e.g. -env DEV,PROD) or ALL runs the noun in each of\r\n" );
+    b.append( " them at the same time. Each line of output is tagged with its environment, or\r\n" );
+    b.append( " with CSV and TAB formats, the environment is added as the first column.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use -fmt to choose the format of the records written by a noun: TXT (default),\r\n" );
+    b.append( " CSV, TAB, JSON or NDJSON (one JSON object per line). Records are written as\r\n" );
+    b.append( " they are produced.\r\n" );
     b.append( "\r\n" );
     b.append( "Use the -o option to send output to a file. If argument of 'default' is specified,\r\n" );
     b.append( " a name of current action and date ([#$Action#]_[#$nowDate#].txt) will be used.\r\n" );
+    b.append( " -flush  When buffered output is written: line, size[:bytes] (e.g. size:256k)\r\n" );
+    b.append( "         or time[:interval] (e.g. time:500ms). The default is line for a\r\n" );
+    b.append( "         terminal and size for files and pipes.\r\n" );
+    b.append( " -fsync  When the output file is forced to the disk: never (default), close or\r\n" );
+    b.append( "         interval[:time] (e.g. interval:5s).\r\n" );
+    b.append( " -compress  gzip or deflate, compresses the output file in blocks on all\r\n" );
+    b.append( "         processors. The result is read by gunzip and zlib as usual.\r\n" );
+    b.append( " -rotate  Start a new output file after a size (e.g. 256MB), an interval (e.g.\r\n" );
+    b.append( "         1h) or both (1GB,1h). The name is made from the -o template again for\r\n" );
+    b.append( "         each file (e.g. out_[#$nowHour#][#$nowMinute#].txt). Files are only\r\n" );
+    b.append( "         switched at the end of a line, so downloads can not be rotated.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use -cache to replay the result of the same command (noun, environment and\r\n" );
+    b.append( " arguments) for a while instead of running it again.\r\n" );
+    b.append( " -cache    How long a result may be replayed (e.g. 5m).\r\n" );
+    b.append( " -nocache  Always run the action, even if it caches its results by default.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use -timeout to cancel an action which runs too long (e.g. -timeout 30s). The\r\n" );
+    b.append( " action is interrupted and closed and the command exits with code 124.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use -every or -cron to keep running the command on a schedule in this JVM.\r\n" );
+    b.append( " -every  The interval between runs (e.g. 60s, 5m, 1h).\r\n" );
+    b.append( " -cron   A cron expression (minute hour day month weekday, e.g. \"*/5 * * * *\").\r\n" );
+    b.append( " Runs never overlap. Each run gets its own -o file when the name has templates\r\n" );
+    b.append( " like [#$nowHour#].\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use the DAEMON noun to keep cliqs resident and warm. Commands run with the\r\n" );
+    b.append( " cliqsc client are then forwarded to the daemon, avoiding the start-up cost.\r\n" );
+    b.append( " -port  The loopback port on which the daemon listens (default is any port).\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use the BATCH noun to run a file of command lines, one per line, in this JVM.\r\n" );
+    b.append( " -f        The file of command lines to run.\r\n" );
+    b.append( " -threads  How many commands to run at the same time (default is one per\r\n" );
+    b.append( "           processor). Output is written in the order of the file.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Use the STREAM noun to run each line read from standard input as soon as it\r\n" );
+    b.append( " arrives, writing the results as each command completes (e.g. find . | cliqs\r\n" );
+    b.append( " stream -cmd \"encrypt -token\").\r\n" );
+    b.append( " -cmd  A command to which each line is added as the last argument. Without it,\r\n" );
+    b.append( "       each line is a whole command line.\r\n" );
+    b.append( "\r\n" );
+    b.append( "Nouns can be chained in one JVM with a quoted | (e.g. cliqs geoip \\| enrich, or\r\n" );
+    b.append( " cliqs \"geoip | enrich\"). Each stage runs on its own thread and receives the\r\n" );
+    b.append( " records of the one before it; the last stage writes them in the -fmt format.\r\n" );
     b.append( "\r\n" );
     b.append( "The following nouns are supported:\r\n" );
     final Map<String, Action> map = cli.getActionMap();
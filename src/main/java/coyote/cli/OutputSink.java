@@ -0,0 +1,569 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import coyote.commons.DateUtil;
+
+
+/**
+ * A print stream which buffers the output of a command and writes it to its
+ * target according to a flush policy.
+ * 
+ * <p>Writing each record to a file or pipe as it is produced turns every
+ * record into a system call. This sink collects the output and only writes
+ * it when the policy says so:</p>
+ * <ul>
+ * <li>{@code line} - at the end of every line, for people watching a
+ * terminal</li>
+ * <li>{@code size[:bytes]} - when the buffer is full (64k unless a size like
+ * {@code 256k} or {@code 1m} is given)</li>
+ * <li>{@code time[:interval]} - at least this often (every second unless an
+ * interval like {@code 500ms} is given) and when the buffer is full</li>
+ * </ul>
+ * 
+ * <p>Everything still buffered is written when the sink is flushed, closed or
+ * when the JVM shuts down, even if it is ended by a signal or a call to
+ * exit. Targets owned by the sink (e.g. output files) are also closed at
+ * shutdown.</p>
+ */
+public class OutputSink extends PrintStream {
+
+  /** Write at the end of every line */
+  public static final String LINE = "line";
+
+  /** Write when the buffer is full */
+  public static final String SIZE = "size";
+
+  /** Write at least once every interval */
+  public static final String TIME = "time";
+
+  /** The size of the buffer unless another is given */
+  public static final int DEFAULT_SIZE = 64 * 1024;
+
+  /** How often the time policy writes unless another interval is given */
+  public static final long DEFAULT_INTERVAL = 1000;
+
+  /**
+   * System property telling whether standard output is a terminal, set by 
+   * the start scripts which can ask the shell
+   */
+  public static final String TERMINAL = "cliqs.terminal";
+
+  /** The sinks which have not been closed, written out at shutdown */
+  private static final Set<Buffer> OPEN = Collections.newSetFromMap( new IdentityHashMap<Buffer, Boolean>() );
+
+  /** Writes out the sinks with a time policy, created when first needed */
+  private static Timer flusher = null;
+
+  /** Whether the shutdown hook writing out the open sinks is registered */
+  private static boolean hooked = false;
+
+  private final Buffer buffer;
+
+
+
+
+  /**
+   * When the buffered output of a sink is written to its target.
+   */
+  public static class Policy {
+    private final String mode;
+    private final int size;
+    private final long interval;
+
+
+
+
+    /**
+     * @param mode one of {@link OutputSink#LINE}, {@link OutputSink#SIZE} or
+     *        {@link OutputSink#TIME}
+     * @param size the size of the buffer in bytes
+     * @param interval the milliseconds between writes of the time policy
+     */
+    public Policy( final String mode, final int size, final long interval ) {
+      this.mode = mode;
+      this.size = size;
+      this.interval = interval;
+    }
+
+
+
+
+    /**
+     * Choose the policy for the given target: by line for a terminal and by
+     * size for everything else (files, pipes and sockets).
+     * 
+     * <p>The target is a terminal if it is the standard output of the 
+     * current command and that is a terminal (see 
+     * {@link ExecutionContext#isTerminal()}).</p>
+     * 
+     * @param target where the output is to be written
+     * 
+     * @return the policy for the target
+     */
+    public static Policy detect( final OutputStream target ) {
+      final ExecutionContext context = ExecutionContext.current();
+      if ( ( target == context.getConsole() ) && context.isTerminal() ) {
+        return new Policy( LINE, DEFAULT_SIZE, 0 );
+      }
+      return new Policy( SIZE, DEFAULT_SIZE, 0 );
+    }
+
+
+
+
+    /**
+     * Parse a policy like {@code line}, {@code size:256k} or
+     * {@code time:500ms}.
+     * 
+     * @param text the policy and its optional value separated by a colon
+     * 
+     * @return the policy
+     * 
+     * @throws IllegalArgumentException if the text is not a valid policy
+     */
+    public static Policy parse( final String text ) {
+      if ( text == null ) {
+        throw new IllegalArgumentException( "No flush policy" );
+      }
+      final String value = text.trim().toLowerCase();
+      final int colon = value.indexOf( ':' );
+      final String mode = ( colon < 0 ) ? value : value.substring( 0, colon );
+      final String arg = ( colon < 0 ) ? null : value.substring( colon + 1 );
+
+      if ( LINE.equals( mode ) && ( arg == null ) ) {
+        return new Policy( LINE, DEFAULT_SIZE, 0 );
+      } else if ( SIZE.equals( mode ) ) {
+        return new Policy( SIZE, ( arg == null ) ? DEFAULT_SIZE : parseSize( arg, text ), 0 );
+      } else if ( TIME.equals( mode ) ) {
+        return new Policy( TIME, DEFAULT_SIZE, ( arg == null ) ? DEFAULT_INTERVAL : DateUtil.parseInterval( arg ) );
+      }
+      throw new IllegalArgumentException( "Invalid flush policy '" + text + "' (use line, size[:bytes] or time[:interval])" );
+    }
+
+
+
+
+    private static int parseSize( final String arg, final String text ) {
+      try {
+        final long retval = parseBytes( arg );
+        if ( retval <= Integer.MAX_VALUE ) {
+          return (int)retval;
+        }
+      } catch ( final IllegalArgumentException e ) {
+        // reported below
+      }
+      throw new IllegalArgumentException( "Invalid buffer size in flush policy '" + text + "'" );
+    }
+
+
+
+
+    /**
+     * @return the milliseconds between writes of the time policy
+     */
+    public long getInterval() {
+      return interval;
+    }
+
+
+
+
+    /**
+     * @return one of {@link OutputSink#LINE}, {@link OutputSink#SIZE} or
+     *         {@link OutputSink#TIME}
+     */
+    public String getMode() {
+      return mode;
+    }
+
+
+
+
+    /**
+     * @return the size of the buffer in bytes
+     */
+    public int getSize() {
+      return size;
+    }
+
+
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      if ( LINE.equals( mode ) ) {
+        return mode;
+      }
+      return mode + ":" + ( TIME.equals( mode ) ? interval + "ms" : Integer.toString( size ) );
+    }
+  }
+
+
+
+
+  /**
+   * The buffer between the print stream and its target.
+   */
+  private static class Buffer extends OutputStream {
+    private final OutputStream target;
+    private final boolean owner;
+    private final Policy policy;
+    private final byte[] data;
+    private int count = 0;
+    private boolean closed = false;
+    private TimerTask task = null;
+
+
+
+
+    Buffer( final OutputStream target, final boolean owner, final Policy policy ) {
+      this.target = target;
+      this.owner = owner;
+      this.policy = policy;
+      data = new byte[policy.getSize()];
+    }
+
+
+
+
+    @Override
+    public synchronized void close() throws IOException {
+      if ( !closed ) {
+        closed = true;
+        synchronized( OPEN ) {
+          OPEN.remove( this );
+        }
+        if ( task != null ) {
+          task.cancel();
+        }
+        try {
+          drain( true );
+        }
+        finally {
+          // the target belongs to whoever gave it to us
+          if ( owner ) {
+            target.close();
+          }
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Write what is buffered to the target, and flush the target unless the
+     * buffer is only being emptied to make room.
+     */
+    private void drain( final boolean flush ) throws IOException {
+      if ( count > 0 ) {
+        // messages logged before this output are written ahead of it
+        ConsoleWriter.await( target );
+        target.write( data, 0, count );
+        count = 0;
+      }
+      if ( flush ) {
+        target.flush();
+      }
+    }
+
+
+
+
+    @Override
+    public synchronized void flush() throws IOException {
+      if ( !closed ) {
+        drain( true );
+      }
+    }
+
+
+
+
+    @Override
+    public synchronized void write( final byte[] b, final int off, final int len ) throws IOException {
+      if ( closed ) {
+        throw new IOException( "Output is closed" );
+      }
+
+      if ( len > ( data.length - count ) ) {
+        // a full buffer is passed on without flushing, the target (e.g. a
+        // file) decides itself when its own buffer is written
+        drain( false );
+        if ( len >= data.length ) {
+          // too big to buffer, write it as it is
+          ConsoleWriter.await( target );
+          target.write( b, off, len );
+          return;
+        }
+      }
+      System.arraycopy( b, off, data, count, len );
+      count += len;
+
+      if ( LINE.equals( policy.getMode() ) ) {
+        for ( int x = off + len - 1; x >= off; x-- ) {
+          if ( b[x] == '\n' ) {
+            drain( true );
+            break;
+          }
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Copy the stream to the target, passing the buffer by.
+     */
+    synchronized long transferFrom( final InputStream in ) throws IOException {
+      if ( closed ) {
+        throw new IOException( "Output is closed" );
+      }
+      drain( false );
+      ConsoleWriter.await( target );
+      long retval = 0;
+      if ( target instanceof FileSink ) {
+        retval = ( (FileSink)target ).transferFrom( Channels.newChannel( in ) );
+      } else {
+        for ( int count = in.read( data ); count >= 0; count = in.read( data ) ) {
+          target.write( data, 0, count );
+          retval += count;
+        }
+      }
+      target.flush();
+      return retval;
+    }
+
+
+
+
+    @Override
+    public void write( final int b ) throws IOException {
+      write( new byte[] { (byte)b }, 0, 1 );
+    }
+  }
+
+
+
+
+  /**
+   * Create a sink which writes to the given target.
+   * 
+   * @param target where the output is written
+   * @param owner true if closing the sink is to close the target, false if
+   *        the target belongs to someone else and is only flushed
+   * @param policy when the output is written, null to choose one for the
+   *        target
+   */
+  public OutputSink( final OutputStream target, final boolean owner, final Policy policy ) {
+    this( new Buffer( target, owner, ( policy != null ) ? policy : Policy.detect( target ) ) );
+  }
+
+
+
+
+  private OutputSink( final Buffer buffer ) {
+    super( buffer, false );
+    this.buffer = buffer;
+    open( buffer );
+  }
+
+
+
+
+  /**
+   * Track the open buffer so it is written out at shutdown, and schedule its
+   * writes if it has a time policy.
+   */
+  private static void open( final Buffer buffer ) {
+    synchronized( OPEN ) {
+      if ( !hooked ) {
+        hooked = true;
+        Runtime.getRuntime().addShutdownHook( new Thread( "cliqs-flush-shutdown" ) {
+          @Override
+          public void run() {
+            final Buffer[] buffers;
+            synchronized( OPEN ) {
+              buffers = OPEN.toArray( new Buffer[OPEN.size()] );
+            }
+            for ( final Buffer open : buffers ) {
+              try {
+                // files are closed so they are synced and trimmed
+                if ( open.owner ) {
+                  open.close();
+                } else {
+                  open.flush();
+                }
+              } catch ( final IOException ignore ) {}
+            }
+          }
+        } );
+      }
+      OPEN.add( buffer );
+
+      if ( TIME.equals( buffer.policy.getMode() ) ) {
+        if ( flusher == null ) {
+          flusher = new Timer( "cliqs-flush", true );
+        }
+        buffer.task = new TimerTask() {
+          @Override
+          public void run() {
+            try {
+              buffer.flush();
+            } catch ( final IOException e ) {
+              cancel();
+            }
+          }
+        };
+        flusher.schedule( buffer.task, buffer.policy.getInterval(), buffer.policy.getInterval() );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Tell whether the standard output of this JVM is a terminal.
+   * 
+   * <p>{@link System#console()} is only there if both standard input and 
+   * output are terminals, so it is wrong for {@code producer | cliqs ...}. 
+   * The {@value #TERMINAL} system property set by the start scripts is used 
+   * if it is there, then where the output descriptor leads on Linux, and 
+   * only then the console.</p>
+   * 
+   * @return true if standard output is a terminal
+   */
+  public static boolean isTerminal() {
+    final String property = System.getProperty( TERMINAL );
+    if ( ( property != null ) && ( property.trim().length() > 0 ) ) {
+      return Boolean.parseBoolean( property.trim() );
+    }
+
+    final File descriptor = new File( "/proc/self/fd/1" );
+    if ( descriptor.exists() ) {
+      try {
+        final String path = descriptor.toPath().toRealPath().toString();
+        return path.startsWith( "/dev/pts/" ) || path.startsWith( "/dev/tty" );
+      } catch ( final IOException e ) {
+        // fall back to the console
+      }
+    }
+    return System.console() != null;
+  }
+
+
+
+
+  /**
+   * Parse a number of bytes like {@code 4096}, {@code 256k}, {@code 10MB} or
+   * {@code 2g}.
+   * 
+   * @param text the number of bytes with an optional unit
+   * 
+   * @return the number of bytes
+   * 
+   * @throws IllegalArgumentException if the text is not a positive size
+   */
+  static long parseBytes( final String text ) {
+    if ( text == null ) {
+      throw new IllegalArgumentException( "No size" );
+    }
+    long multiplier = 1;
+    String number = text.trim().toLowerCase();
+    if ( number.endsWith( "b" ) ) {
+      number = number.substring( 0, number.length() - 1 );
+    }
+    if ( number.endsWith( "k" ) ) {
+      multiplier = 1024;
+    } else if ( number.endsWith( "m" ) ) {
+      multiplier = 1024 * 1024;
+    } else if ( number.endsWith( "g" ) ) {
+      multiplier = 1024 * 1024 * 1024;
+    }
+    if ( multiplier > 1 ) {
+      number = number.substring( 0, number.length() - 1 );
+    }
+    try {
+      final long retval = Long.parseLong( number.trim() ) * multiplier;
+      if ( retval > 0 ) {
+        return retval;
+      }
+    } catch ( final NumberFormatException e ) {
+      // reported below
+    }
+    throw new IllegalArgumentException( "Invalid size '" + text + "'" );
+  }
+
+
+
+
+  /**
+   * @return the policy deciding when the output is written
+   */
+  public Policy getPolicy() {
+    return buffer.policy;
+  }
+
+
+
+
+  /**
+   * Copy everything the given stream holds to the target as it is, without 
+   * buffering it or encoding it again.
+   * 
+   * <p>What was written before is written out first. A file opened by the 
+   * CLI is written from the input through its own direct buffer; anything 
+   * else (e.g. a compressed or rotating file) is written through the buffer 
+   * of this sink as the transfer buffer.</p>
+   * 
+   * @param in the stream to copy, read to its end but not closed
+   * 
+   * @return the number of bytes copied
+   * 
+   * @throws IOException if the stream could not be read or the target written
+   */
+  public long transferFrom( final InputStream in ) throws IOException {
+    flush();
+    return buffer.transferFrom( in );
+  }
+
+
+
+
+  /**
+   * @param stream a stream to compare to the target
+   * 
+   * @return true if this sink writes to the given stream
+   */
+  public boolean writesTo( final OutputStream stream ) {
+    return buffer.target == stream;
+  }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Records how long each phase of a run takes.
+ * 
+ * <p>Phases are measured back to back: ending a phase records the time since
+ * the previous phase ended (or the timer was reset) and starts the next one.
+ * Ending a phase more than once adds to its time, so work which is split
+ * across several places can be recorded under one name. Phases are reported
+ * in the order they were first recorded.</p>
+ */
+public class PhaseTimer {
+
+  /** Report the timings as a line of text */
+  public static final String TEXT = "text";
+
+  /** Report the timings as a JSON object */
+  public static final String JSON = "json";
+
+  private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+  private long origin;
+  private long mark;
+  private String format = null;
+  private String noun = null;
+
+
+
+
+  public PhaseTimer() {
+    reset();
+  }
+
+
+
+
+  /**
+   * Record the time since the last mark as the given phase.
+   * 
+   * @param phase the name of the phase which just ended
+   */
+  public synchronized void end( final String phase ) {
+    final long now = System.nanoTime();
+    final Long elapsed = phases.get( phase );
+    phases.put( phase, ( elapsed == null ) ? now - mark : elapsed + ( now - mark ) );
+    mark = now;
+  }
+
+
+
+
+  /**
+   * @return the format in which the timings were requested to be reported,
+   *         or null if they were not requested
+   */
+  public String getFormat() {
+    return format;
+  }
+
+
+
+
+  /**
+   * @return the noun of the command being timed
+   */
+  public String getNoun() {
+    return noun;
+  }
+
+
+
+
+  /**
+   * Return the time recorded for the given phase.
+   * 
+   * @param phase the name of the phase
+   * 
+   * @return the nanoseconds spent in the phase, 0 if it was never recorded
+   */
+  public synchronized long getNanos( final String phase ) {
+    final Long retval = phases.get( phase );
+    return ( retval == null ) ? 0 : retval;
+  }
+
+
+
+
+  /**
+   * @return the nanoseconds from the reset of the timer to the end of the
+   *         last phase, including any time not recorded in a phase
+   */
+  public synchronized long getTotalNanos() {
+    return mark - origin;
+  }
+
+
+
+
+  /**
+   * Discard all the recorded phases and start timing again.
+   */
+  public synchronized void reset() {
+    phases.clear();
+    origin = mark = System.nanoTime();
+  }
+
+
+
+
+  /**
+   * @param format the format in which to report the timings, TEXT or JSON
+   */
+  public void setFormat( final String format ) {
+    this.format = format;
+  }
+
+
+
+
+  /**
+   * @param noun the noun of the command being timed
+   */
+  public void setNoun( final String noun ) {
+    this.noun = noun;
+  }
+
+
+
+
+  /**
+   * Render the timings as a JSON object suitable for charting.
+   * 
+   * <p>All times are in milliseconds, for example:<pre>
+   * {"noun":"encrypt","version":"0.1","phases":{"properties":12.5,"parse":1.25},"total":13.75}</pre>
+   * </p>
+   * 
+   * @param version the version of the CLI
+   * 
+   * @return the timings as a single line of JSON
+   */
+  public synchronized String toJson( final String version ) {
+    final StringBuilder b = new StringBuilder( "{\"noun\":" );
+    quote( b, noun );
+    b.append( ",\"version\":" );
+    quote( b, version );
+    b.append( ",\"phases\":{" );
+    String separator = "";
+    for ( final Map.Entry<String, Long> entry : phases.entrySet() ) {
+      b.append( separator );
+      quote( b, entry.getKey() );
+      b.append( ':' );
+      b.append( millis( entry.getValue() ) );
+      separator = ",";
+    }
+    b.append( "},\"total\":" );
+    b.append( millis( getTotalNanos() ) );
+    b.append( '}' );
+    return b.toString();
+  }
+
+
+
+
+  /**
+   * @return the timings on a single line, e.g. "properties 12.500ms,
+   *         parse 1.250ms, total 13.750ms"
+   */
+  @Override
+  public synchronized String toString() {
+    final StringBuilder b = new StringBuilder();
+    for ( final Map.Entry<String, Long> entry : phases.entrySet() ) {
+      b.append( entry.getKey() );
+      b.append( ' ' );
+      b.append( millis( entry.getValue() ) );
+      b.append( "ms, " );
+    }
+    b.append( "total " );
+    b.append( millis( getTotalNanos() ) );
+    b.append( "ms" );
+    return b.toString();
+  }
+
+
+
+
+  private static String millis( final long nanos ) {
+    return String.format( Locale.US, "%.3f", nanos / 1000000d );
+  }
+
+
+
+
+  private static void quote( final StringBuilder b, final String text ) {
+    if ( text == null ) {
+      b.append( "null" );
+      return;
+    }
+    b.append( '"' );
+    for ( int x = 0; x < text.length(); x++ ) {
+      final char c = text.charAt( x );
+      if ( ( c == '"' ) || ( c == '\\' ) ) {
+        b.append( '\\' ).append( c );
+      } else if ( c < ' ' ) {
+        b.append( String.format( "\\u%04x", (int)c ) );
+      } else {
+        b.append( c );
+      }
+    }
+    b.append( '"' );
+  }
+
+}
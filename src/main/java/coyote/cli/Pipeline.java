@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import coyote.commons.StringUtil;
+
+
+/**
+ * Runs several nouns in one JVM, passing the records emitted by each to the
+ * next.
+ * 
+ * <p>The stages of a pipeline are separated by a {@code |} argument, which 
+ * has to be quoted or escaped so the shell does not take it (e.g. 
+ * {@code cliqs geoip \| enrich \| filter}), or the whole pipeline can be 
+ * given as one argument ({@code cliqs "geoip | enrich | filter"}).</p>
+ * 
+ * <p>Each stage runs on its own thread in its own {@link ExecutionContext}, 
+ * so the stages overlap. The records an action emits are handed to the next 
+ * stage as they are, through a bounded {@link RecordPipe}, and are read 
+ * there with {@code nextRecord()}; nothing is formatted or parsed between 
+ * stages. Only the records of the last stage are written to the output in 
+ * the requested format, and what the other stages write as text goes to the 
+ * console.</p>
+ */
+public class Pipeline {
+
+  /** The argument separating the stages */
+  public static final String SEPARATOR = "|";
+
+  private final CLI cli;
+
+
+
+
+  /**
+   * @param cli the configured CLI used to run each stage
+   */
+  public Pipeline( final CLI cli ) {
+    this.cli = cli;
+  }
+
+
+
+
+  /**
+   * Split a command line into the command lines of the stages of a pipeline.
+   * 
+   * @param args the command line
+   * 
+   * @return the command line of each stage, only one if the command line is 
+   *         not a pipeline
+   */
+  public static List<String[]> split( String[] args ) {
+    final List<String[]> retval = new ArrayList<String[]>();
+    if ( args == null ) {
+      return retval;
+    }
+
+    // the whole pipeline may have been given as one argument
+    if ( ( args.length == 1 ) && ( args[0].indexOf( SEPARATOR ) > 0 ) ) {
+      args = StringUtil.splitArguments( args[0] );
+    }
+
+    int start = 0;
+    for ( int x = 0; x <= args.length; x++ ) {
+      if ( ( x == args.length ) || SEPARATOR.equals( args[x] ) ) {
+        retval.add( Arrays.copyOfRange( args, start, x ) );
+        start = x + 1;
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Run the stages of a pipeline until they have all ended.
+   * 
+   * @param stages the command line of each stage
+   * 
+   * @return the highest exit code of the stages
+   */
+  public int run( final List<String[]> stages ) {
+    // the pipeline's streams are shared by its stages
+    final ExecutionContext context = ExecutionContext.current();
+    final InputStream in = context.getIn();
+    final PrintStream out = context.getOut();
+    final PrintStream console = context.getConsole();
+    final PrintStream err = context.getErr();
+    final File directory = context.getDirectory();
+
+    final RecordPipe[] pipes = new RecordPipe[stages.size() - 1];
+    for ( int x = 0; x < pipes.length; x++ ) {
+      pipes[x] = new RecordPipe( RecordPipe.DEFAULT_CAPACITY );
+    }
+
+    final ExecutorService pool = Executors.newFixedThreadPool( stages.size(), new ThreadFactory() {
+      int count = 0;
+
+
+      @Override
+      public synchronized Thread newThread( final Runnable r ) {
+        final Thread thread = new Thread( r, "cliqs-pipe-" + ( ++count ) );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+
+    int retval = 0;
+    try {
+      final List<Future<Integer>> codes = new ArrayList<Future<Integer>>();
+      for ( int x = 0; x < stages.size(); x++ ) {
+        final String[] args = stages.get( x );
+        final RecordPipe upstream = ( x > 0 ) ? pipes[x - 1] : null;
+        final RecordPipe downstream = ( x < pipes.length ) ? pipes[x] : null;
+        final InputStream input = ( x == 0 ) ? in : new ByteArrayInputStream( new byte[0] );
+        final PrintStream output = ( downstream == null ) ? out : console;
+
+        codes.add( pool.submit( new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            try {
+              final ExecutionContext stage = new ExecutionContext( input, output, err );
+              stage.setDirectory( directory );
+              stage.upstream = upstream;
+              stage.downstream = downstream;
+              return cli.run( args, stage );
+            }
+            finally {
+              // let the next stage finish, and stop this one's producer
+              if ( downstream != null ) {
+                downstream.close();
+              }
+              if ( upstream != null ) {
+                upstream.cancel();
+              }
+            }
+          }
+        } ) );
+      }
+
+      for ( int x = 0; x < codes.size(); x++ ) {
+        final int code = codes.get( x ).get();
+        if ( ( code != 0 ) && !context.isQuiet() ) {
+          err.println( "stage " + ( x + 1 ) + " (" + stages.get( x )[0] + ") exited with " + code );
+        }
+        retval = Math.max( retval, code );
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      retval = Math.max( retval, 1 );
+    } catch ( final ExecutionException e ) {
+      throw new IllegalStateException( "Pipeline stage failed: " + e.getCause(), e.getCause() );
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    out.flush();
+    err.flush();
+    return retval;
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * A bounded queue of records between two stages of a pipeline.
+ * 
+ * <p>The producing stage waits when the consumer falls behind, so no more
+ * than the capacity of the pipe is held in memory. When the consumer ends
+ * early the pipe is cancelled and what the producer still sends is
+ * discarded, so the producer is never left waiting.</p>
+ */
+class RecordPipe {
+
+  /** How many records may wait in a pipe unless another capacity is given */
+  static final int DEFAULT_CAPACITY = 1024;
+
+  /** Marks the end of the records */
+  private static final DataFrame END = new DataFrame();
+
+  /** How often a waiting producer checks if the pipe was cancelled */
+  private static final long POLL = 100;
+
+  private final BlockingQueue<DataFrame> queue;
+  private volatile boolean cancelled = false;
+  private volatile boolean closed = false;
+  private boolean ended = false;
+
+
+
+
+  /**
+   * @param capacity the most records which may wait in the pipe
+   */
+  RecordPipe( final int capacity ) {
+    queue = new ArrayBlockingQueue<DataFrame>( capacity );
+  }
+
+
+
+
+  /**
+   * Stop accepting records, discarding those waiting, as the consumer has
+   * ended.
+   */
+  void cancel() {
+    cancelled = true;
+    queue.clear();
+  }
+
+
+
+
+  /**
+   * Mark the end of the records, once all have been sent.
+   */
+  void close() {
+    if ( !closed ) {
+      send( END );
+      closed = true;
+    }
+  }
+
+
+
+
+  /**
+   * Send a record to the consumer, waiting while the pipe is full.
+   * 
+   * @param record the record to send
+   */
+  void put( final DataFrame record ) {
+    if ( !closed ) {
+      send( record );
+    }
+  }
+
+
+
+
+  private void send( final DataFrame record ) {
+    try {
+      while ( !cancelled && !queue.offer( record, POLL, TimeUnit.MILLISECONDS ) ) {
+        // waiting for the consumer to catch up
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+
+  /**
+   * Receive the next record, waiting until one is sent.
+   * 
+   * @return the next record, or null when all have been received
+   */
+  synchronized DataFrame take() {
+    if ( ended ) {
+      return null;
+    }
+    try {
+      final DataFrame retval = queue.take();
+      if ( retval == END ) {
+        ended = true;
+        return null;
+      }
+      return retval;
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import coyote.commons.PrivateFiles;
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Keeps the results of commands on disk so the same command run again within
+ * a while replays them instead of running its action.
+ * 
+ * <p>An entry is keyed by whatever decides the result of a command (its noun,
+ * environment and arguments) and holds either the bytes the command wrote
+ * to its output or, for a stage of a pipeline, the records it emitted. Each
+ * entry expires after the time to live given when it was stored. The total
+ * size of the cache is bounded; when it is exceeded the entries used least
+ * recently are removed.</p>
+ * 
+ * <p>Entries are written to a temporary file and renamed into place, so 
+ * several JVMs can share a cache without reading a partial entry. The cache 
+ * is kept in a private directory of the user in the local temporary 
+ * directory unless the {@code cliqs.cache.dir} system property names 
+ * another, and holds at most 256MB unless {@code cliqs.cache.size} gives 
+ * another size (e.g. 1g).</p>
+ * 
+ * <p>A replayed entry is written to the output as it is, so the directory 
+ * and its entries have to belong to the user and be closed to everyone else 
+ * (see {@link PrivateFiles}); the directory is created that way, and a cache 
+ * which is not is neither read nor written.</p>
+ */
+public class ResultCache {
+
+  /** System property which overrides the location of the cache */
+  public static final String DIRECTORY = "cliqs.cache.dir";
+
+  /** System property which overrides the size of the cache */
+  public static final String SIZE = "cliqs.cache.size";
+
+  /** The size of the cache unless another is given */
+  public static final long DEFAULT_SIZE = 256L * 1024 * 1024;
+
+  private static final int MAGIC = 0x636c7172;
+  private static final String SUFFIX = ".entry";
+
+  private static final byte BYTES = 0;
+  private static final byte RECORDS = 1;
+
+  // value types of the fields of stored records
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte INTEGER = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte FLOAT = 5;
+  private static final byte BOOLEAN = 6;
+  private static final byte SHORT = 7;
+  private static final byte BINARY = 8;
+  private static final byte FRAME = 9;
+
+  private static ResultCache instance = null;
+
+  private final File directory;
+  private final long limit;
+
+
+
+
+  /**
+   * Stores the result of one run of a command as it is produced.
+   */
+  public class Recorder {
+    private final ExecutionContext context;
+    private final String key;
+    private final File file;
+    private final DataOutputStream data;
+    private final PrintStream original;
+    private boolean done = false;
+
+
+
+
+    Recorder( final ExecutionContext context, final String key, final long ttl ) throws IOException {
+      this.context = context;
+      this.key = key;
+      // created so only the user may read it, which the entry keeps
+      file = Files.createTempFile( directory.toPath(), "result", ".tmp" ).toFile();
+      data = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file.toPath() ) ) );
+      data.writeInt( MAGIC );
+      data.writeUTF( key );
+      data.writeLong( System.currentTimeMillis() + ttl );
+
+      if ( context.downstream != null ) {
+        // a stage of a pipeline produces records
+        data.writeByte( RECORDS );
+        original = null;
+        context.recorder = this;
+      } else {
+        // everything else produces what it writes to its output
+        data.writeByte( BYTES );
+        original = context.getOut();
+        context.setOut( new PrintStream( new OutputStream() {
+          @Override
+          public void flush() {
+            original.flush();
+          }
+
+
+
+
+          @Override
+          public void write( final byte[] b, final int off, final int len ) throws IOException {
+            original.write( b, off, len );
+            synchronized( Recorder.this ) {
+              if ( !done ) {
+                data.write( b, off, len );
+              }
+            }
+          }
+
+
+
+
+          @Override
+          public void write( final int b ) throws IOException {
+            write( new byte[] { (byte)b }, 0, 1 );
+          }
+        }, false ) );
+      }
+    }
+
+
+
+
+    /**
+     * Discard what was recorded.
+     */
+    private void abandon() {
+      done = true;
+      try {
+        data.close();
+      } catch ( final IOException ignore ) {}
+      file.delete();
+    }
+
+
+
+
+    /**
+     * Store a record emitted by the command.
+     * 
+     * @param record the record to store
+     */
+    synchronized void add( final DataFrame record ) {
+      if ( !done ) {
+        try {
+          data.writeBoolean( true );
+          writeFrame( data, record );
+        } catch ( final IOException e ) {
+          abandon();
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Stop recording the command and store its result if it succeeded.
+     * 
+     * @param success true to keep the result, false to discard it
+     */
+    public void finish( final boolean success ) {
+      if ( original != null ) {
+        context.getOut().flush();
+        context.setOut( original );
+      } else {
+        context.recorder = null;
+      }
+
+      synchronized( this ) {
+        if ( done ) {
+          return;
+        }
+        if ( !success ) {
+          abandon();
+          return;
+        }
+        done = true;
+        try {
+          if ( original == null ) {
+            data.writeBoolean( false );
+          }
+          data.close();
+          Files.move( file.toPath(), getFile( key ).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( final IOException e ) {
+          file.delete();
+          context.debug( "Could not cache the result: " + e.getMessage() );
+          return;
+        }
+      }
+      evict();
+    }
+  }
+
+
+
+
+  /**
+   * Create a cache in the given directory.
+   * 
+   * @param directory where the entries are kept, created if needed so only
+   *        the current user may use it
+   * @param limit the most bytes the entries may take together
+   */
+  public ResultCache( final File directory, final long limit ) {
+    this.directory = directory;
+    this.limit = limit;
+  }
+
+
+
+
+  /**
+   * @return the cache shared by the commands of this JVM, as configured by
+   *         the system properties
+   */
+  public static synchronized ResultCache getDefault() {
+    if ( instance == null ) {
+      final String dir = System.getProperty( DIRECTORY );
+      final File directory = ( ( dir != null ) && ( dir.trim().length() > 0 ) ) ? new File( dir.trim() ) : PrivateFiles.getTempDirectory( "cliqs-cache" );
+
+      long limit = DEFAULT_SIZE;
+      final String size = System.getProperty( SIZE );
+      if ( size != null ) {
+        try {
+          limit = OutputSink.parseBytes( size );
+        } catch ( final IllegalArgumentException e ) {
+          // keep the default
+        }
+      }
+      instance = new ResultCache( directory, limit );
+    }
+    return instance;
+  }
+
+
+
+
+  /**
+   * Remove the entries used least recently until the cache is within its
+   * limit.
+   */
+  private void evict() {
+    final File[] entries = directory.listFiles();
+    if ( entries == null ) {
+      return;
+    }
+    long total = 0;
+    for ( final File entry : entries ) {
+      if ( entry.getName().endsWith( SUFFIX ) ) {
+        total += entry.length();
+      }
+    }
+    if ( total <= limit ) {
+      return;
+    }
+
+    Arrays.sort( entries, new Comparator<File>() {
+      @Override
+      public int compare( final File a, final File b ) {
+        return Long.compare( a.lastModified(), b.lastModified() );
+      }
+    } );
+    for ( int x = 0; ( x < entries.length ) && ( total > limit ); x++ ) {
+      if ( entries[x].getName().endsWith( SUFFIX ) ) {
+        final long length = entries[x].length();
+        if ( entries[x].delete() ) {
+          total -= length;
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @return the file holding the entry with the given key
+   */
+  private File getFile( final String key ) {
+    try {
+      final byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( StringUtil.getBytesUtf8( key ) );
+      final StringBuilder b = new StringBuilder();
+      for ( final byte octet : digest ) {
+        b.append( Character.forDigit( ( octet >> 4 ) & 0xF, 16 ) );
+        b.append( Character.forDigit( octet & 0xF, 16 ) );
+      }
+      b.append( SUFFIX );
+      return new File( directory, b.toString() );
+    } catch ( final NoSuchAlgorithmException e ) {
+      // every JVM has SHA-256
+      throw new IllegalStateException( e );
+    }
+  }
+
+
+
+
+  /**
+   * Read a record stored by {@link #writeFrame(DataOutputStream, DataFrame)}.
+   */
+  private static DataFrame readFrame( final DataInputStream in ) throws IOException {
+    final DataFrame retval = new DataFrame();
+    final int count = in.readInt();
+    for ( int x = 0; x < count; x++ ) {
+      final String name = in.readBoolean() ? in.readUTF() : null;
+      final Object value;
+      final byte type = in.readByte();
+      switch ( type ) {
+        case NULL:
+          value = null;
+          break;
+        case STRING:
+          final byte[] text = new byte[in.readInt()];
+          in.readFully( text );
+          value = StringUtil.newStringUtf8( text );
+          break;
+        case LONG:
+          value = in.readLong();
+          break;
+        case INTEGER:
+          value = in.readInt();
+          break;
+        case DOUBLE:
+          value = in.readDouble();
+          break;
+        case FLOAT:
+          value = in.readFloat();
+          break;
+        case BOOLEAN:
+          value = in.readBoolean();
+          break;
+        case SHORT:
+          value = in.readShort();
+          break;
+        case BINARY:
+          final byte[] bytes = new byte[in.readInt()];
+          in.readFully( bytes );
+          value = bytes;
+          break;
+        case FRAME:
+          value = readFrame( in );
+          break;
+        default:
+          throw new IOException( "Unknown field type " + type );
+      }
+      retval.add( name, value );
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Start recording the result of the command of the given context.
+   * 
+   * <p>What the command writes to its output (or emits to the next stage of 
+   * its pipeline) from now on is recorded until 
+   * {@link Recorder#finish(boolean)} is called.</p>
+   * 
+   * @param context the context of the command
+   * @param key what decides the result of the command
+   * @param ttl the milliseconds for which the result may be replayed
+   * 
+   * @return the recorder, or null if the cache can not be written
+   */
+  public Recorder record( final ExecutionContext context, final String key, final long ttl ) {
+    try {
+      PrivateFiles.createDirectory( directory );
+      return new Recorder( context, key, ttl );
+    } catch ( final IOException e ) {
+      context.debug( "Not caching the result: " + e.getMessage() );
+      return null;
+    }
+  }
+
+
+
+
+  /**
+   * Replay the stored result for the given key to the command of the given 
+   * context, if there is one which has not expired.
+   * 
+   * @param context the context of the command
+   * @param key what decides the result of the command
+   * 
+   * @return true if the result was replayed, false if the command has to run
+   */
+  public boolean replay( final ExecutionContext context, final String key ) {
+    final File file = getFile( key );
+    if ( !file.isFile() ) {
+      return false;
+    }
+
+    try {
+      // someone else could have placed or changed the entry
+      PrivateFiles.check( directory );
+      PrivateFiles.check( file );
+    } catch ( final IOException e ) {
+      context.debug( "Not trusting cache entry " + file + ": " + e.getMessage() );
+      return false;
+    }
+
+    boolean expired = false;
+    try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) )) {
+      if ( ( in.readInt() != MAGIC ) || !key.equals( in.readUTF() ) ) {
+        return false;
+      }
+      expired = ( in.readLong() < System.currentTimeMillis() );
+      if ( !expired ) {
+        final byte kind = in.readByte();
+        if ( kind == RECORDS ) {
+          if ( context.downstream == null ) {
+            return false;
+          }
+          while ( in.readBoolean() ) {
+            context.downstream.put( readFrame( in ) );
+          }
+        } else {
+          final PrintStream out = context.getOut();
+          final byte[] buffer = new byte[8192];
+          for ( int count = in.read( buffer ); count >= 0; count = in.read( buffer ) ) {
+            out.write( buffer, 0, count );
+          }
+        }
+      }
+    } catch ( final EOFException e ) {
+      context.debug( "Ignoring incomplete cache entry " + file );
+      return false;
+    } catch ( final IOException e ) {
+      context.debug( "Could not read cache entry " + file + ": " + e.getMessage() );
+      return false;
+    }
+
+    if ( expired ) {
+      file.delete();
+      return false;
+    }
+
+    // the entry was used, so it is the last to be evicted
+    file.setLastModified( System.currentTimeMillis() );
+    return true;
+  }
+
+
+
+
+  /**
+   * Store a record so it can be read back with its field names and value 
+   * types.
+   */
+  private static void writeFrame( final DataOutputStream out, final DataFrame frame ) throws IOException {
+    out.writeInt( frame.getFieldCount() );
+    for ( int x = 0; x < frame.getFieldCount(); x++ ) {
+      final DataField field = frame.getField( x );
+      out.writeBoolean( field.getName() != null );
+      if ( field.getName() != null ) {
+        out.writeUTF( field.getName() );
+      }
+
+      final Object value = field.getObjectValue();
+      if ( value == null ) {
+        out.writeByte( NULL );
+      } else if ( value instanceof Long ) {
+        out.writeByte( LONG );
+        out.writeLong( (Long)value );
+      } else if ( value instanceof Integer ) {
+        out.writeByte( INTEGER );
+        out.writeInt( (Integer)value );
+      } else if ( value instanceof Double ) {
+        out.writeByte( DOUBLE );
+        out.writeDouble( (Double)value );
+      } else if ( value instanceof Float ) {
+        out.writeByte( FLOAT );
+        out.writeFloat( (Float)value );
+      } else if ( value instanceof Boolean ) {
+        out.writeByte( BOOLEAN );
+        out.writeBoolean( (Boolean)value );
+      } else if ( value instanceof Short ) {
+        out.writeByte( SHORT );
+        out.writeShort( (Short)value );
+      } else if ( value instanceof byte[] ) {
+        out.writeByte( BINARY );
+        out.writeInt( ( (byte[])value ).length );
+        out.write( (byte[])value );
+      } else if ( value instanceof DataFrame ) {
+        out.writeByte( FRAME );
+        writeFrame( out, (DataFrame)value );
+      } else {
+        // anything else is kept as its text
+        final byte[] text = StringUtil.getBytesUtf8( value.toString() );
+        out.writeByte( STRING );
+        out.writeInt( text.length );
+        out.write( text );
+      }
+    }
+  }
+
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import coyote.commons.DateUtil;
+
+
+/**
+ * An output stream which moves on to a new segment (file) when the current
+ * one has reached a size or age.
+ * 
+ * <p>Segments are only switched at the end of a line, so no record is split
+ * across two files. The next segment is opened before the switch and the
+ * current one is closed (written out, compressed, synced) on a background
+ * thread, so the producer does not wait for it. Closing this stream waits
+ * for every segment to be closed. A segment opened as a {@link Segment} is
+ * written under a temporary name and only given its own name once it has
+ * been closed, so whoever picks up the files never sees one half written.</p>
+ * 
+ * <p>The size of a segment is counted in the bytes written to it, before any
+ * compression, and is exceeded by at most the rest of the line which reaches
+ * it. This is meant for text: binary data is only split where it happens to
+ * hold a line feed, if ever.</p>
+ */
+public class RotatingOutput extends OutputStream {
+
+  /** Closes the finished segments, created when first needed */
+  private static ExecutorService closer = null;
+
+  private final Segments segments;
+  private final Limit limit;
+  private final List<Future<Void>> closing = new ArrayList<Future<Void>>();
+  private OutputStream current;
+  private long size = 0;
+  private long opened;
+  private boolean atLineStart = true;
+  private boolean closed = false;
+
+
+
+
+  /**
+   * Opens the segments of the output.
+   */
+  public interface Segments {
+
+    /**
+     * Open the next segment.
+     * 
+     * @return the stream of the new segment, closed when the segment is done
+     * 
+     * @throws IOException if the segment could not be opened
+     */
+    public OutputStream open() throws IOException;
+  }
+
+
+
+
+  /**
+   * A segment written to a temporary file which is renamed to the file of
+   * the segment once it has been closed.
+   * 
+   * <p>A segment which could not be closed keeps its temporary name.</p>
+   */
+  public static class Segment extends FilterOutputStream {
+    private final File temporary;
+    private final File file;
+    private boolean closed = false;
+
+
+
+
+    /**
+     * @param out the stream writing the temporary file
+     * @param temporary the file being written
+     * @param file the name the file is given when it is closed, replacing
+     *        any file of that name
+     */
+    public Segment( final OutputStream out, final File temporary, final File file ) {
+      super( out );
+      this.temporary = temporary;
+      this.file = file;
+    }
+
+
+
+
+    /**
+     * Close the stream, then give the file its own name.
+     * 
+     * @see java.io.FilterOutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      if ( !closed ) {
+        closed = true;
+        out.close();
+        Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      }
+    }
+
+
+
+
+    /**
+     * @see java.io.FilterOutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+      out.write( b, off, len );
+    }
+  }
+
+
+
+
+  /**
+   * When the output moves on to a new segment: after a number of bytes, an
+   * interval or whichever comes first.
+   */
+  public static class Limit {
+    private final long size;
+    private final long interval;
+
+
+
+
+    /**
+     * @param size the bytes after which a new segment is started, 0 for no
+     *        limit
+     * @param interval the milliseconds after which a new segment is started,
+     *        0 for no limit
+     */
+    public Limit( final long size, final long interval ) {
+      this.size = size;
+      this.interval = interval;
+    }
+
+
+
+
+    /**
+     * Parse a limit like {@code 256MB}, {@code 1h} or both separated by a
+     * comma ({@code 1GB,1h}).
+     * 
+     * <p>Sizes end with a {@code B} ({@code B}, {@code KB}, {@code MB} or
+     * {@code GB}), everything else is an interval.</p>
+     * 
+     * @param text the size, the interval or both
+     * 
+     * @return the limit
+     * 
+     * @throws IllegalArgumentException if the text is not a valid limit
+     */
+    public static Limit parse( final String text ) {
+      if ( text == null ) {
+        throw new IllegalArgumentException( "No rotation limit" );
+      }
+      long size = 0;
+      long interval = 0;
+      for ( final String token : text.split( "," ) ) {
+        final String value = token.trim().toLowerCase();
+        try {
+          if ( value.endsWith( "b" ) ) {
+            size = OutputSink.parseBytes( value );
+          } else {
+            interval = DateUtil.parseInterval( value );
+          }
+        } catch ( final IllegalArgumentException e ) {
+          throw new IllegalArgumentException( "Invalid rotation limit '" + text + "' (use a size like 256MB, an interval like 1h, or both)" );
+        }
+      }
+      return new Limit( size, interval );
+    }
+
+
+
+
+    /**
+     * @return the milliseconds after which a new segment is started, 0 for
+     *         no limit
+     */
+    public long getInterval() {
+      return interval;
+    }
+
+
+
+
+    /**
+     * @return the bytes after which a new segment is started, 0 for no limit
+     */
+    public long getSize() {
+      return size;
+    }
+
+
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      final StringBuilder b = new StringBuilder();
+      if ( size > 0 ) {
+        b.append( size );
+        b.append( 'B' );
+      }
+      if ( interval > 0 ) {
+        if ( b.length() > 0 ) {
+          b.append( ',' );
+        }
+        b.append( interval );
+        b.append( "ms" );
+      }
+      return b.toString();
+    }
+  }
+
+
+
+
+  /**
+   * Open the first segment of the output.
+   * 
+   * @param segments opens each segment
+   * @param limit when a new segment is started
+   * 
+   * @throws IOException if the first segment could not be opened
+   */
+  public RotatingOutput( final Segments segments, final Limit limit ) throws IOException {
+    this.segments = segments;
+    this.limit = limit;
+    current = segments.open();
+    opened = System.currentTimeMillis();
+  }
+
+
+
+
+  /**
+   * @return the thread closing the finished segments
+   */
+  private static synchronized ExecutorService getCloser() {
+    if ( closer == null ) {
+      closer = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( final Runnable r ) {
+          final Thread thread = new Thread( r, "cliqs-rotate" );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+    return closer;
+  }
+
+
+
+
+  /**
+   * Close the current segment and wait for the earlier ones to be closed.
+   * 
+   * @see java.io.OutputStream#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    IOException error = null;
+    try {
+      current.close();
+    } catch ( final IOException e ) {
+      error = e;
+    }
+    for ( final Future<Void> future : closing ) {
+      try {
+        future.get();
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException( "Interrupted while closing output" );
+      } catch ( final ExecutionException e ) {
+        if ( error == null ) {
+          error = new IOException( "Could not close output segment: " + e.getCause(), e.getCause() );
+        }
+      }
+    }
+    closing.clear();
+    if ( error != null ) {
+      throw error;
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#flush()
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    if ( !closed ) {
+      current.flush();
+    }
+  }
+
+
+
+
+  /**
+   * @return true if the current segment has reached its size or age
+   */
+  private boolean isDue() {
+    return ( ( limit.getSize() > 0 ) && ( size >= limit.getSize() ) ) || ( ( limit.getInterval() > 0 ) && ( ( System.currentTimeMillis() - opened ) >= limit.getInterval() ) );
+  }
+
+
+
+
+  /**
+   * Open the next segment, switch to it and close the current one in the
+   * background.
+   */
+  private void rotate() throws IOException {
+    final OutputStream next = segments.open();
+    final OutputStream done = current;
+    current = next;
+    size = 0;
+    opened = System.currentTimeMillis();
+
+    // forget the segments which have been closed
+    for ( int x = closing.size() - 1; x >= 0; x-- ) {
+      if ( closing.get( x ).isDone() ) {
+        try {
+          closing.remove( x ).get();
+        } catch ( final InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        } catch ( final ExecutionException e ) {
+          throw new IOException( "Could not close output segment: " + e.getCause(), e.getCause() );
+        }
+      }
+    }
+    closing.add( getCloser().submit( new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        done.close();
+        return null;
+      }
+    } ) );
+  }
+
+
+
+
+  /**
+   * @return the number of bytes up to and including the first line feed, or
+   *         all of them if there is none
+   */
+  private static int toLineEnd( final byte[] b, final int off, final int len ) {
+    for ( int x = off; x < off + len; x++ ) {
+      if ( b[x] == '\n' ) {
+        return x - off + 1;
+      }
+    }
+    return len;
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public synchronized void write( final byte[] b, int off, int len ) throws IOException {
+    if ( closed ) {
+      throw new IOException( "Output is closed" );
+    }
+    while ( len > 0 ) {
+      int count = len;
+      if ( isDue() ) {
+        if ( atLineStart ) {
+          rotate();
+        } else {
+          // finish the line in this segment
+          count = toLineEnd( b, off, len );
+        }
+      } else if ( ( limit.getSize() > 0 ) && ( ( size + len ) > limit.getSize() ) ) {
+        // write up to the end of the line which reaches the size, the rest
+        // goes to the next segment
+        final int reach = (int)( limit.getSize() - size );
+        count = ( reach - 1 ) + toLineEnd( b, off + reach - 1, len - reach + 1 );
+      }
+      current.write( b, off, count );
+      size += count;
+      atLineStart = ( b[off + count - 1] == '\n' );
+      off += count;
+      len -= count;
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write( final int b ) throws IOException {
+    write( new byte[] { (byte)b }, 0, 1 );
+  }
+
+}
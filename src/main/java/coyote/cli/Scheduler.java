@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintStream;
+import java.util.Date;
+
+import coyote.commons.CronExpression;
+import coyote.commons.DateUtil;
+
+
+/**
+ * Keeps the process alive and runs a command line on a schedule.
+ * 
+ * <p>This replaces starting a new JVM from cron for each run. Every run is
+ * a complete command, so it gets a fresh symbol table with the current
+ * {@code now*} values and its own output file when the file name is a
+ * template (e.g. {@code -o poll_[#$nowHour#][#$nowMinute#].txt}).</p>
+ * 
+ * <p>Runs never overlap. A run which takes longer than the interval makes
+ * the scheduler skip the times it missed and wait for the next one.</p>
+ */
+public class Scheduler {
+
+  private final CLI cli;
+
+
+
+
+  /**
+   * @param cli the configured CLI used to run the command
+   */
+  public Scheduler( final CLI cli ) {
+    this.cli = cli;
+  }
+
+
+
+
+  /**
+   * Run the command every interval, starting now, until the process is
+   * stopped.
+   * 
+   * @param args the command line to run, noun first
+   * @param interval the milliseconds from the start of one run to the start
+   *        of the next
+   * 
+   * @return the exit code of the last run, if the scheduler is interrupted
+   */
+  public int every( final String[] args, final long interval ) {
+    return run( args, interval, null );
+  }
+
+
+
+
+  /**
+   * Run the command at each time matching the cron expression until the
+   * process is stopped.
+   * 
+   * @param args the command line to run, noun first
+   * @param cron the times at which to run the command
+   * 
+   * @return the exit code of the last run, if the scheduler is interrupted
+   */
+  public int cron( final String[] args, final CronExpression cron ) {
+    return run( args, 0, cron );
+  }
+
+
+
+
+  private int run( final String[] args, final long interval, final CronExpression cron ) {
+    // each run has a context of its own, this is the scheduler's
+    final ExecutionContext context = ExecutionContext.current();
+    final PrintStream out = context.getOut();
+    final PrintStream console = context.getConsole();
+    final PrintStream err = context.getErr();
+    final boolean quiet = context.isQuiet();
+    final boolean debug = context.isDebug();
+
+    int code = 0;
+    try {
+      long next = ( cron == null ) ? System.currentTimeMillis() : nextTime( cron, System.currentTimeMillis(), err );
+      while ( next > 0 ) {
+        if ( debug && !quiet ) {
+          console.println( "Next run at " + DateUtil.formatDateTime( new Date( next ) ) );
+          console.flush();
+        }
+        for ( long wait = next - System.currentTimeMillis(); wait > 0; wait = next - System.currentTimeMillis() ) {
+          Thread.sleep( wait );
+        }
+
+        final long start = System.currentTimeMillis();
+        code = cli.run( args, new ByteArrayInputStream( new byte[0] ), out, err );
+        final long end = System.currentTimeMillis();
+        if ( ( code != 0 ) && !quiet ) {
+          err.println( "Run started " + DateUtil.formatDateTime( new Date( start ) ) + " exited with " + code );
+          err.flush();
+        }
+
+        // the next run starts after this one ends, skipping any times missed
+        if ( cron == null ) {
+          next += interval;
+          if ( next <= end ) {
+            final long missed = ( ( end - next ) / interval ) + 1;
+            if ( !quiet ) {
+              err.println( "Run started " + DateUtil.formatDateTime( new Date( start ) ) + " took " + ( end - start ) + "ms, skipping " + missed + " run(s)" );
+              err.flush();
+            }
+            next += missed * interval;
+          }
+        } else {
+          next = nextTime( cron, end, err );
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+
+    return code;
+  }
+
+
+
+
+  /**
+   * @return the next time the cron expression matches after the given time,
+   *         or 0 if it never will
+   */
+  private static long nextTime( final CronExpression cron, final long after, final PrintStream err ) {
+    final Date retval = cron.next( new Date( after ) );
+    if ( retval == null ) {
+      err.println( "The schedule '" + cron + "' never runs" );
+      return 0;
+    }
+    return retval.getTime();
+  }
+
+}
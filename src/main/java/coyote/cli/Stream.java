@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import coyote.commons.StringUtil;
+
+
+/**
+ * Runs command lines as they are read from an input stream, writing the
+ * results of each as soon as it completes.
+ * 
+ * <p>This lets a producer like {@code find} or {@code tail -f} be piped into
+ * one JVM instead of starting one for each line. Each line is either a whole
+ * command line, or the last argument of a fixed command. Commands are run
+ * one after the other in the order they are read, while the next lines are
+ * read and split into arguments on another thread.</p>
+ */
+public class Stream {
+
+  /** How many lines may be read ahead of the running command */
+  private static final int READ_AHEAD = 64;
+
+  /**
+   * One line of input ready to run.
+   */
+  private static class Command {
+    int line;
+    String text;
+    String[] args;
+    IOException error;
+  }
+
+  /** Marks the end of the input */
+  private static final Command END = new Command();
+
+  private final CLI cli;
+
+
+
+
+  /**
+   * @param cli the configured CLI used to run each command
+   */
+  public Stream( final CLI cli ) {
+    this.cli = cli;
+  }
+
+
+
+
+  /**
+   * Run the commands read from the given stream until it ends.
+   * 
+   * @param input the stream of lines to read
+   * @param command the command to which each line is added as the last
+   *        argument, or null if each line is a whole command line
+   * 
+   * @return 0 if all the commands succeeded, 1 otherwise
+   * 
+   * @throws IOException if the input could not be read
+   */
+  public int run( final InputStream input, final String command ) throws IOException {
+    final String[] prefix = ( command == null ) ? null : StringUtil.splitArguments( command );
+    final BlockingQueue<Command> queue = new ArrayBlockingQueue<Command>( READ_AHEAD );
+
+    // each command runs in a context of its own, this is the stream's
+    final ExecutionContext context = ExecutionContext.current();
+    final boolean quiet = context.isQuiet();
+    final PrintStream out = context.getOut();
+    final PrintStream err = context.getErr();
+
+    // read and split the next lines while the current command runs
+    final Thread reader = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        read( input, prefix, queue );
+      }
+    }, "cliqs-stream-reader" );
+    reader.setDaemon( true );
+    reader.start();
+
+    int failures = 0;
+    try {
+      for ( Command next = queue.take(); next != END; next = queue.take() ) {
+        if ( next.error != null ) {
+          throw next.error;
+        }
+
+        final int code = cli.run( next.args, new ByteArrayInputStream( new byte[0] ), out, err );
+        if ( code != 0 ) {
+          failures++;
+          if ( !quiet ) {
+            err.println( "line " + next.line + " exited with " + code + ": " + next.text );
+            err.flush();
+          }
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      reader.interrupt();
+    }
+
+    return ( failures == 0 ) ? 0 : 1;
+  }
+
+
+
+
+  /**
+   * Read the lines of input into commands until the input ends.
+   */
+  private static void read( final InputStream input, final String[] prefix, final BlockingQueue<Command> queue ) {
+    try {
+      try (BufferedReader reader = new BufferedReader( new InputStreamReader( input ) )) {
+        int count = 0;
+        String line;
+        while ( ( line = reader.readLine() ) != null ) {
+          count++;
+          final String text = line.trim();
+          if ( ( text.length() == 0 ) || ( ( prefix == null ) && text.startsWith( "#" ) ) ) {
+            continue;
+          }
+
+          final Command command = new Command();
+          command.line = count;
+          command.text = text;
+          if ( prefix == null ) {
+            command.args = StringUtil.splitArguments( text );
+          } else {
+            command.args = Arrays.copyOf( prefix, prefix.length + 1 );
+            command.args[prefix.length] = line;
+          }
+          queue.put( command );
+        }
+      } catch ( final IOException e ) {
+        final Command failure = new Command();
+        failure.error = e;
+        queue.put( failure );
+      }
+      queue.put( END );
+    } catch ( final InterruptedException e ) {
+      // the stream was abandoned
+    }
+  }
+
+}
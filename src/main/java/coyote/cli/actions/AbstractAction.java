@@ -12,33 +12,54 @@
 package coyote.cli.actions;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
 import org.apache.commons.cli.Options;
-import org.apache.commons.cli.ParseException;
 
+import coyote.cli.BlockCompressor;
 import coyote.cli.CLI;
+import coyote.cli.ConsoleWriter;
+import coyote.cli.ExecutionContext;
+import coyote.cli.FileSink;
+import coyote.cli.OutputSink;
+import coyote.cli.RotatingOutput;
 import coyote.cli.template.SymbolTable;
 import coyote.cli.template.Template;
-import coyote.commons.CipherUtil;
 import coyote.commons.StringUtil;
-import coyote.commons.SystemPropertyUtil;
+import coyote.dataframe.DataFrame;
 
 
-public abstract class AbstractAction implements Action {
+/**
+ * The base of all actions.
+ * 
+ * <p>The static methods of this class (environment, properties, messages and
+ * output) act on the {@link ExecutionContext} of the command running on the 
+ * current thread. This keeps actions written before the context existed 
+ * working when several commands run at the same time. New actions can 
+ * override {@link #validate(ExecutionContext)} and 
+ * {@link #execute(ExecutionContext)} and use the context directly.</p>
+ */
+public abstract class AbstractAction implements ContextAction {
   private static final String OPT_FMT = "fmt";
   private static final String FMT_TXT = "txt";
-  /** The database environment to use */
-  private static String _env = "DEV";
-
-  /** Flag indicating all output should be suppressed */
-  private static boolean QUIET = false;
-  /** Flag indicating all messages should be sent to the console */
-  private static boolean VERBOSE = false;
-  /** Flag indicating debugging messages should be sent to the console */
-  private static boolean DEBUG = false;
+  /** The environment used when none is specified on the command line */
+  protected static final String DEFAULT_ENV = ExecutionContext.DEFAULT_ENVIRONMENT;
 
   /** The format in which our output should be displayed. Text is the default.*/
   protected String _displayFormat = null;
@@ -50,10 +71,17 @@ public abstract class AbstractAction implements Action {
   public static final String SAAS_USER = "saas.user";
   public static final String SAAS_PASS = "saas.pass";
 
-  /** This is what is used for or main output, not logging, but user data. */
-  protected static PrintStream OUT = System.out;
+  /** 
+   * This is what is used for or main output, not logging, but user data. It 
+   * writes to the output of the command running on the current thread.
+   */
+  protected static PrintStream OUT = ExecutionContext.getRoutedOutput();
 
-  protected static final SymbolTable _symbolTable = new SymbolTable();
+  /** 
+   * The symbol table of commands run outside of a context of their own; use 
+   * {@link #getSymbolTable()} for that of the current command.
+   */
+  protected static final SymbolTable _symbolTable = ExecutionContext.getDefault().getSymbolTable();
 
 
 
@@ -82,9 +110,20 @@ public abstract class AbstractAction implements Action {
    * @param msg The message to write.
    */
   public static void debug( final Object msg ) {
-    if ( !QUIET && DEBUG ) {
-      System.out.println( msg );
-    }
+    ExecutionContext.current().debug( msg );
+  }
+
+
+
+
+  /**
+   * Write a debug message to the console, built only if it is written (e.g. 
+   * {@code debug( () -> "Read " + record )}).
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public static void debug( final Supplier<?> msg ) {
+    ExecutionContext.current().debug( msg );
   }
 
 
@@ -96,9 +135,20 @@ public abstract class AbstractAction implements Action {
    * @param msg The message to write.
    */
   public static void error( final Object msg ) {
-    if ( !QUIET ) {
-      System.err.println( msg );
-    }
+    ExecutionContext.current().error( msg );
+  }
+
+
+
+
+  /**
+   * Write an error message to the console, built only if it is written (e.g. 
+   * {@code error( () -> "Read " + record )}).
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public static void error( final Supplier<?> msg ) {
+    ExecutionContext.current().error( msg );
   }
 
 
@@ -125,8 +175,10 @@ public abstract class AbstractAction implements Action {
    * @param code The exit code.
    */
   public static void exit( final String msg, final int code ) {
-    System.err.println( msg );
-    System.exit( code );
+    // after the messages logged before it, even when quiet
+    final ExecutionContext context = ExecutionContext.current();
+    ConsoleWriter.post( context, context.getErr(), msg );
+    terminate( code );
   }
 
 
@@ -154,23 +206,17 @@ public abstract class AbstractAction implements Action {
    * @return the value currently set in that property
    */
   public static String getEncryptedProperty( final String key ) {
-    final String rawValue = SystemPropertyUtil.getString( _env + "." + key );
-    if ( rawValue != null ) {
-      try {
-        return CipherUtil.decrypt( rawValue );
-      } catch ( final Exception e ) {
-        error( "Problems getting encrypted property '" + key + "' = '" + rawValue + "' - " + e.toString() );
-        e.printStackTrace();
-      }
-    }
-    return null;
+    return ExecutionContext.current().getEncryptedProperty( key );
   }
 
 
 
 
+  /**
+   * @return the environment of the command running on this thread
+   */
   public static String getEnvironment() {
-    return _env;
+    return ExecutionContext.current().getEnvironment();
   }
 
 
@@ -184,7 +230,7 @@ public abstract class AbstractAction implements Action {
     * @return the value currently set in that property
     */
   public static String getProperty( final String key ) {
-    return SystemPropertyUtil.getString( _env + "." + key );
+    return ExecutionContext.current().getProperty( key );
   }
 
 
@@ -196,58 +242,118 @@ public abstract class AbstractAction implements Action {
    * @param msg The message to write.
    */
   public static void info( final Object msg ) {
-    if ( !QUIET ) {
-      System.out.println( msg );
-    }
+    ExecutionContext.current().info( msg );
+  }
+
+
+
+
+  /**
+   * Write an informational message to the console, built only if it is 
+   * written (e.g. {@code info( () -> "Read " + record )}).
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public static void info( final Supplier<?> msg ) {
+    ExecutionContext.current().info( msg );
   }
 
 
 
 
   public static boolean isDebug() {
-    return DEBUG;
+    return ExecutionContext.current().isDebug();
   }
 
 
 
 
   public static boolean isQuiet() {
-    return QUIET;
+    return ExecutionContext.current().isQuiet();
   }
 
 
 
 
   public static boolean isVerbose() {
-    return VERBOSE;
+    return ExecutionContext.current().isVerbose();
+  }
+
+
+
+
+  /**
+   * @return true if the JVM is kept alive after the current command and calls 
+   *         to exit should end the command and not the process
+   */
+  public static boolean isResident() {
+    return ExecutionContext.current().isResident();
   }
 
 
 
 
   public static void setDebug( final boolean debug ) {
-    DEBUG = debug;
+    ExecutionContext.current().setDebug( debug );
   }
 
 
 
 
   public static void setEnvironment( final String env ) {
-    _env = env;
+    ExecutionContext.current().setEnvironment( env );
   }
 
 
 
 
   public static void setQuiet( final boolean quiet ) {
-    QUIET = quiet;
+    ExecutionContext.current().setQuiet( quiet );
+  }
+
+
+
+
+  /**
+   * Set the JVM as resident; it will be re-used for several commands.
+   * 
+   * <p>When resident, calls to {@link #exit(String, int)} throw an 
+   * {@link ExitException} which ends the current command instead of 
+   * terminating the JVM. Commands run through 
+   * {@link CLI#run(String[], java.io.InputStream, PrintStream, PrintStream)} 
+   * are always resident.</p>
+   * 
+   * @param resident true to keep the JVM alive when a command exits
+   */
+  public static void setResident( final boolean resident ) {
+    ExecutionContext.current().setResident( resident );
   }
 
 
 
 
   public static void setVerbose( final boolean verbose ) {
-    VERBOSE = verbose;
+    ExecutionContext.current().setVerbose( verbose );
+  }
+
+
+
+
+  /**
+   * End the current command with the given exit code.
+   * 
+   * <p>Normally this terminates the JVM, but if the JVM is resident, an 
+   * {@link ExitException} is thrown so the caller can report the exit code 
+   * and continue with the next command.</p>
+   * 
+   * @param code The exit code.
+   */
+  protected static void terminate( final int code ) {
+    if ( isResident() ) {
+      throw new ExitException( code );
+    } else {
+      System.exit( code );
+    }
   }
 
 
@@ -260,10 +366,20 @@ public abstract class AbstractAction implements Action {
    * @param msg The message to write.
    */
   public static void trace( final Object msg ) {
+    ExecutionContext.current().trace( msg );
+  }
 
-    if ( !QUIET && VERBOSE ) {
-      System.out.println( msg );
-    }
+
+
+
+  /**
+   * Write a detailed message to the console, built only if it is written 
+   * (e.g. {@code trace( () -> "Read " + record )}).
+   * 
+   * @param msg Supplies the message to write.
+   */
+  public static void trace( final Supplier<?> msg ) {
+    ExecutionContext.current().trace( msg );
   }
 
 
@@ -310,6 +426,155 @@ public abstract class AbstractAction implements Action {
 
 
 
+  /**
+   * Write a record to the output in the display format of the command.
+   * 
+   * <p>Records are written one at a time as they are emitted, so an action 
+   * can produce any number of them without collecting them first. Formats 
+   * with a header (CSV and TAB) take the column names from the first record 
+   * and the JSON format writes the records as the elements of one array.</p>
+   * 
+   * @param record the record to write
+   * 
+   * @see coyote.cli.format.RecordFormatter
+   */
+  public void emit( final DataFrame record ) {
+    ExecutionContext.current().emit( record, getDisplayFormat() );
+  }
+
+
+
+
+  /**
+   * Most actions implement {@link #execute(ExecutionContext)} or this method.
+   * 
+   * @see coyote.cli.actions.Action#execute()
+   */
+  @Override
+  public void execute() throws ActionException {
+    throw new ActionException( getClass().getName() + " does not implement execute" );
+  }
+
+
+
+
+  /**
+   * Execute the action using the static methods of this class, which act on 
+   * the given context as it is bound to the current thread.
+   * 
+   * @see coyote.cli.actions.ContextAction#execute(coyote.cli.ExecutionContext)
+   */
+  @Override
+  public void execute( final ExecutionContext context ) throws ActionException {
+    execute();
+  }
+
+
+
+
+  /**
+   * Process each of the given items with the given task on several threads 
+   * at once.
+   * 
+   * <p>No more than the given number of items are processed at the same 
+   * time; when all the workers are busy the iteration waits for one to 
+   * finish, so items are never read faster than they can be processed and 
+   * an iterable of any size can be given. The context of the command is 
+   * bound to each worker so the task can use the static methods of this 
+   * class. When debugging, the time taken by each item is written to the 
+   * console.</p>
+   * 
+   * <p>The first task to fail stops the iteration; the tasks still running 
+   * are interrupted and the failure is thrown once they have ended.</p>
+   * 
+   * @param items the items to process
+   * @param maxConcurrency the number of items processed at the same time
+   * @param task what is done with each item
+   * 
+   * @throws ActionException if the task threw a checked exception or the 
+   *         iteration was interrupted
+   */
+  protected <T> void forEachParallel( final Iterable<T> items, final int maxConcurrency, final Consumer<? super T> task ) throws ActionException {
+    if ( maxConcurrency < 1 ) {
+      throw new IllegalArgumentException( "Concurrency must be at least 1" );
+    }
+    final ExecutionContext context = ExecutionContext.current();
+    final String name = getClass().getSimpleName();
+    final AtomicInteger threads = new AtomicInteger();
+    final ExecutorService workers = Executors.newFixedThreadPool( maxConcurrency, new ThreadFactory() {
+      @Override
+      public Thread newThread( final Runnable r ) {
+        final Thread retval = new Thread( r, "cliqs-" + name + "-" + threads.incrementAndGet() );
+        retval.setDaemon( true );
+        return retval;
+      }
+    } );
+    final Semaphore slots = new Semaphore( maxConcurrency );
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final long start = System.nanoTime();
+    long count = 0;
+
+    try {
+      for ( final T item : items ) {
+        slots.acquire();
+        if ( failure.get() != null ) {
+          slots.release();
+          break;
+        }
+        final long index = count++;
+        workers.execute( () -> {
+          final ExecutionContext previous = context.bind();
+          final long begin = System.nanoTime();
+          try {
+            task.accept( item );
+            if ( context.isDebug() ) {
+              context.debug( name + " item " + index + " took " + ( ( System.nanoTime() - begin ) / 1000000 ) + "ms" );
+            }
+          } catch ( final Throwable t ) {
+            if ( failure.compareAndSet( null, t ) ) {
+              context.debug( name + " item " + index + " failed after " + ( ( System.nanoTime() - begin ) / 1000000 ) + "ms: " + t );
+            }
+          }
+          finally {
+            ExecutionContext.release( previous );
+            slots.release();
+          }
+        } );
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet( null, new ActionException( "Interrupted after " + count + " items" ) );
+    }
+    finally {
+      if ( failure.get() != null ) {
+        workers.shutdownNow();
+      } else {
+        workers.shutdown();
+      }
+      try {
+        workers.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+      } catch ( final InterruptedException e ) {
+        workers.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    final Throwable cause = failure.get();
+    if ( cause instanceof ActionException ) {
+      throw (ActionException)cause;
+    } else if ( cause instanceof RuntimeException ) {
+      throw (RuntimeException)cause;
+    } else if ( cause instanceof Error ) {
+      throw (Error)cause;
+    } else if ( cause != null ) {
+      throw new ActionException( cause.getMessage(), cause );
+    }
+    context.debug( name + " processed " + count + " items in " + ( ( System.nanoTime() - start ) / 1000000 ) + "ms" );
+  }
+
+
+
+
   /**
    * Formats the given number of milliseconds into hours, minutes and seconds 
    * and if requested the remaining milliseconds.
@@ -340,6 +605,23 @@ public abstract class AbstractAction implements Action {
 
 
 
+  /**
+   * How long the result of this action may be replayed from the cache 
+   * instead of running it again, unless the command line says otherwise 
+   * with {@code -cache} or {@code -nocache}.
+   * 
+   * <p>Actions returning the same data for a while (e.g. reference data) can 
+   * override this to have their results cached by default.</p>
+   * 
+   * @return the milliseconds a result may be replayed, 0 to not cache it
+   */
+  public long getCacheTtl() {
+    return 0;
+  }
+
+
+
+
   /**
    * Get a named value from the command line.
    * 
@@ -351,24 +633,7 @@ public abstract class AbstractAction implements Action {
    * @return The value or null if there were problems or the value does not exist.
    */
   protected String getCommandLineValue( final String name ) {
-    try {
-      if ( CLI.getCommandLine() != null ) {
-        final Object obj = CLI.getCommandLine().getParsedOptionValue( name );
-        if ( obj != null ) {
-          return obj.toString();
-        } else {
-          return null;
-        }
-      } else {
-        // We were not called from the command line and no argument
-        // parsing was performed
-        return null;
-      }
-    } catch ( final ParseException e ) {
-      debug( "Error retrieving Command Line value '" + name + "' - " + e.getMessage() );
-      return null;
-    }
-
+    return ExecutionContext.current().getCommandLineValue( name );
   }
 
 
@@ -376,20 +641,23 @@ public abstract class AbstractAction implements Action {
 
   /**
    * Retrieve the output format from the command line (defaults to 'TXT').
+   * 
+   * <p>The format is read from the command line of the current command each 
+   * time unless one was set with {@link #setDisplayFormat(String)}.</p>
    *  
    * @return the output format from the command line 
    */
   public String getDisplayFormat() {
-    if ( _displayFormat == null ) {
-      _displayFormat = getCommandLineValue( OPT_FMT );
-
-      // Default to TXT if no format was given
-      if ( ( _displayFormat == null ) || ( _displayFormat.trim().length() < 1 ) ) {
-        _displayFormat = FMT_TXT;
-      }
+    if ( _displayFormat != null ) {
+      return _displayFormat;
     }
+    final String retval = getCommandLineValue( OPT_FMT );
 
-    return _displayFormat;
+    // Default to TXT if no format was given
+    if ( ( retval == null ) || ( retval.trim().length() < 1 ) ) {
+      return FMT_TXT;
+    }
+    return retval;
   }
 
 
@@ -411,6 +679,21 @@ public abstract class AbstractAction implements Action {
 
 
 
+  /**
+   * Receive the next record from the previous stage of the pipeline this 
+   * action runs in (e.g. {@code cliqs geoip \| enrich}), waiting until 
+   * there is one.
+   * 
+   * @return the next record, or null when there are no more or the action 
+   *         is not the later stage of a pipeline
+   */
+  protected DataFrame nextRecord() {
+    return ExecutionContext.current().nextRecord();
+  }
+
+
+
+
   /**
    * This sends data to the chosen (or default) output stream.
    * 
@@ -423,13 +706,14 @@ public abstract class AbstractAction implements Action {
    * used directly. It is a {@link PrintWriter} connected to the desired output
    * stream.</p>
    * 
-   * <p>The output flushes which each call to this method.</p> 
+   * <p>The output is buffered and written according to the flush policy of 
+   * the command (see {@link OutputSink}), at the latest when the command 
+   * ends.</p> 
    * 
    * @param data the data to send to the previously selected output stream.
    */
   public void output( final Object data ) {
-    OUT.print( data );
-    OUT.flush();
+    getOutStream().print( data );
   }
 
 
@@ -442,9 +726,9 @@ public abstract class AbstractAction implements Action {
    * @param data the data to send to the previously selected output stream.
    */
   public void outputLine( final Object data ) {
-    OUT.print( data );
-    OUT.print( StringUtil.LINE_FEED );
-    OUT.flush();
+    final PrintStream out = getOutStream();
+    out.print( data );
+    out.print( StringUtil.LINE_FEED );
   }
 
 
@@ -474,46 +758,109 @@ public abstract class AbstractAction implements Action {
    * expected most output will be sent to the console (STDOUT) and not a 
    * file.</p>
    * 
+   * <p>The file is written through its channel (see {@link FileSink}) and 
+   * is synced as given by the {@code -fsync} option, and compressed on all
+   * processors when {@code -compress} is given (see 
+   * {@link BlockCompressor}).</p>
+   * 
+   * <p>With {@code -rotate}, the output moves on to a new file when the 
+   * current one reaches the given size or age. The template is evaluated 
+   * again for each file, so symbols like {@code [#$nowHour#]} give each its
+   * own name (see {@link RotatingOutput}). Each file is written under a 
+   * hidden temporary name and renamed when it has been closed.</p>
+   * 
    * @param filename The name of the file to sent output.
    */
   public void setOutput( final String filename ) {
     debug( "Setting output to " + filename );
     if ( ( filename != null ) && ( filename.trim().length() > 0 ) ) {
+      final ExecutionContext context = ExecutionContext.current();
 
-      // Create a template using our current symbol table
-      final Template tmplt = new Template( filename, _symbolTable );
+      try {
+        if ( context.getRotation() == null ) {
+          setOutStream( new OutputSink( openFile( filename, context, null ), true, context.getFlushPolicy() ) );
+        } else {
+          // each segment is named by the template at the time it is opened
+          final RotatingOutput.Segments segments = new RotatingOutput.Segments() {
+            private final Set<String> names = new HashSet<String>();
+
+
+            @Override
+            public OutputStream open() throws IOException {
+              context.getSymbolTable().putNow( new Date() );
+              return openFile( filename, context, names );
+            }
+          };
+          setOutStream( new OutputSink( new RotatingOutput( segments, context.getRotation() ), true, context.getFlushPolicy() ) );
+        }
+      } catch ( final IOException e ) {
+        exit( e.getMessage(), 2 );
+      }
 
-      // parse and replace
-      final String fname = tmplt.toString();
+    } // filename not blank
 
-      final File file = new File( fname );
+  }
 
-      if ( file.exists() ) {
-        if ( file.isDirectory() ) {
-          exit( "File '" + file + "' exists but is a directory", 2 );
-        }
-        if ( file.canWrite() == false ) {
-          exit( "File '" + file + "' exists but cannot be written", 2 );
-        }
-        debug( "Over-writing existing file '" + file + "'" );
-      } else {
-        final File parent = file.getParentFile();
-        if ( ( parent != null ) && ( parent.exists() == false ) ) {
-          if ( parent.mkdirs() == false ) {
-            exit( "File '" + file + "' could not be created", 2 );
-          }
+
+
+
+  /**
+   * Open the file named by the given template for writing.
+   * 
+   * @param filename the template of the name of the file
+   * @param context the context whose symbols fill the template
+   * @param names the files already opened for a rotated output, to which a
+   *        number is added if the template gives the same name again, null
+   *        if the output is not rotated; the segments of a rotated output are
+   *        written under a temporary name until they are closed
+   * 
+   * @return the stream writing the file
+   * 
+   * @throws IOException if the file cannot be written
+   */
+  private static OutputStream openFile( final String filename, final ExecutionContext context, final Set<String> names ) throws IOException {
+    // Create a template using our current symbol table, parse and replace
+    final String fname = new Template( filename, context.getSymbolTable() ).toString();
+
+    File file = context.resolve( fname );
+    if ( names != null ) {
+      for ( int seq = 1; !names.add( file.getAbsolutePath() ); seq++ ) {
+        final int dot = fname.lastIndexOf( '.' );
+        if ( dot > fname.lastIndexOf( File.separatorChar ) ) {
+          file = context.resolve( fname.substring( 0, dot ) + "-" + seq + fname.substring( dot ) );
+        } else {
+          file = context.resolve( fname + "-" + seq );
         }
       }
+    }
 
-      try {
-        OUT = new PrintStream( file );
-      } catch ( final FileNotFoundException e ) {
-        // Should not happen since we performed checks above
-        exit( "Could not send output to file '" + file.getName() + "' (" + file.getAbsolutePath() + ") reason:" + e.getMessage(), 2 );
+    if ( file.exists() ) {
+      if ( file.isDirectory() ) {
+        throw new IOException( "File '" + file + "' exists but is a directory" );
       }
+      if ( file.canWrite() == false ) {
+        throw new IOException( "File '" + file + "' exists but cannot be written" );
+      }
+      context.debug( "Over-writing existing file '" + file + "'" );
+    } else {
+      final File parent = file.getParentFile();
+      if ( ( parent != null ) && ( parent.exists() == false ) ) {
+        if ( parent.mkdirs() == false ) {
+          throw new IOException( "File '" + file + "' could not be created" );
+        }
+      }
+    }
 
-    } // filename not blank
-
+    try {
+      final File temporary = ( names != null ) ? new File( file.getParentFile(), "." + file.getName() + ".part" ) : file;
+      OutputStream retval = new FileSink( temporary, context.getFileSync() );
+      if ( context.getCompression() != null ) {
+        retval = new BlockCompressor( retval, context.getCompression(), Deflater.DEFAULT_COMPRESSION );
+      }
+      return ( temporary != file ) ? new RotatingOutput.Segment( retval, temporary, file ) : retval;
+    } catch ( final IOException e ) {
+      throw new IOException( "Could not send output to file '" + file.getName() + "' (" + file.getAbsolutePath() + ") reason:" + e.getMessage(), e );
+    }
   }
 
 
@@ -528,21 +875,48 @@ public abstract class AbstractAction implements Action {
   public void validate() throws ActionException {
 
   }
-  
+
+
+
+
   /**
-   * @return the output print stream
+   * Validate the action using the static methods of this class, which act on 
+   * the given context as it is bound to the current thread.
+   * 
+   * @see coyote.cli.actions.ContextAction#validate(coyote.cli.ExecutionContext)
+   */
+  @Override
+  public void validate( final ExecutionContext context ) throws ActionException {
+    validate();
+  }
+
+
+
+
+  /**
+   * @return the output print stream of the current command
    */
   protected static PrintStream getOutStream() {
-    return OUT;
+    return ExecutionContext.current().getOut();
+  }
+
+
+
+
+  /**
+   * @return the symbol table of the current command
+   */
+  protected static SymbolTable getSymbolTable() {
+    return ExecutionContext.current().getSymbolTable();
   }
 
 
 
 
   /**
-   * @param out the output print stream to use
+   * @param out the output print stream to use for the current command
    */
   protected static void setOutStream( PrintStream out ) {
-    OUT = out;
+    ExecutionContext.current().setOut( out );
   }
 }
@@ -11,8 +11,12 @@
  */
 package coyote.cli.actions;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.commons.cli.Options;
 
+import coyote.cli.ExecutionContext;
+
 
 public interface Action {
 
@@ -60,6 +64,28 @@ public interface Action {
 
 
 
+  /**
+   * Start executing the action requested by the user without waiting for it
+   * to finish.
+   * 
+   * <p>Blocking actions need not implement this; by default they are run on
+   * a thread of their own with the given context bound to it, and
+   * cancelling the returned future interrupts that thread. Actions which are
+   * asynchronous by nature can return their own future instead.</p>
+   * 
+   * @param context the command line, environment and output of the command
+   * 
+   * @return the future completed when the action is done, exceptionally with
+   *         the {@link ActionException} if the execution encountered an
+   *         error
+   */
+  public default CompletableFuture<Void> executeAsync( final ExecutionContext context ) {
+    return ActionExecutor.submit( this, context );
+  }
+
+
+
+
   /**
    * Called to display detailed help for this particular action.
    * 
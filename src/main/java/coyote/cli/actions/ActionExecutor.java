@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.actions;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import coyote.cli.ExecutionContext;
+
+
+/**
+ * Runs blocking actions on a thread of their own so they can be waited on, 
+ * timed out and cancelled like asynchronous ones.
+ * 
+ * <p>The threads are daemons so an action which ignores being interrupted 
+ * does not keep the JVM alive after its command has ended. Such an action is
+ * still running after its future was cancelled;
+ * {@link #whenStopped(CompletableFuture)} tells when it has really 
+ * returned.</p>
+ */
+public final class ActionExecutor {
+
+  private static final AtomicInteger COUNT = new AtomicInteger();
+
+  /** Runs the actions, a thread is created when none is idle */
+  private static final ExecutorService POOL = Executors.newCachedThreadPool( new ThreadFactory() {
+    @Override
+    public Thread newThread( final Runnable r ) {
+      final Thread retval = new Thread( r, "cliqs-action-" + COUNT.incrementAndGet() );
+      retval.setDaemon( true );
+      return retval;
+    }
+  } );
+
+
+
+
+  /**
+   * The future of an action run on a thread of the pool, which knows when
+   * that thread has left the action.
+   */
+  private static class Execution extends CompletableFuture<Void> {
+    final CompletableFuture<Void> stopped = new CompletableFuture<Void>();
+
+    /**
+     * Set by whichever comes first, the thread starting the action or the
+     * cancellation of an action which never started
+     */
+    final AtomicBoolean started = new AtomicBoolean();
+  }
+
+
+
+
+  private ActionExecutor() {}
+
+
+
+
+  /**
+   * Execute the given action in the given context on a thread of the pool.
+   * 
+   * <p>Cancelling the returned future interrupts the thread running the 
+   * action.</p>
+   * 
+   * @param action the action to execute
+   * @param context the context bound to the thread while the action runs
+   * 
+   * @return the future completed when the action returns or throws
+   */
+  static CompletableFuture<Void> submit( final Action action, final ExecutionContext context ) {
+    final Execution retval = new Execution();
+    final Future<?> task = POOL.submit( () -> {
+      if ( !retval.started.compareAndSet( false, true ) ) {
+        return; // cancelled before it started
+      }
+      final ExecutionContext previous = context.bind();
+      try {
+        if ( action instanceof ContextAction ) {
+          ( (ContextAction)action ).execute( context );
+        } else {
+          action.execute();
+        }
+        retval.complete( null );
+      } catch ( final Throwable t ) {
+        retval.completeExceptionally( t );
+      }
+      finally {
+        ExecutionContext.release( previous );
+        retval.stopped.complete( null );
+      }
+    } );
+    retval.whenComplete( ( result, error ) -> {
+      if ( retval.isCancelled() ) {
+        task.cancel( true );
+
+        // an action which never started has stopped, no thread will say so
+        if ( retval.started.compareAndSet( false, true ) ) {
+          retval.stopped.complete( null );
+        }
+      }
+    } );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Return a future completed when the action whose execution is given has
+   * really stopped.
+   * 
+   * <p>A cancelled future is done at once, while the action may go on until
+   * it notices being interrupted, if it ever does. For an action run by this
+   * executor the returned future is completed when its thread returns from
+   * the action; an action returning its own future is taken to have stopped
+   * when that future is done.</p>
+   * 
+   * @param future the future returned by
+   *        {@link Action#executeAsync(ExecutionContext)}
+   * 
+   * @return the future completed (never exceptionally) when the action has
+   *         stopped
+   */
+  public static CompletableFuture<Void> whenStopped( final CompletableFuture<Void> future ) {
+    if ( future instanceof Execution ) {
+      return ( (Execution)future ).stopped;
+    }
+    return future.handle( ( result, error ) -> null );
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.actions;
+
+import coyote.cli.ExecutionContext;
+
+
+/**
+ * An action which is given the context of the command it runs in.
+ * 
+ * <p>Actions which take everything they need from the context (and not from
+ * the static methods of {@link AbstractAction}) can be run by several
+ * commands in the same JVM at the same time. The CLI calls these methods
+ * instead of those of {@link Action} when an action implements this
+ * interface.</p>
+ */
+public interface ContextAction extends Action {
+
+  /**
+   * This method is called by the CLI to execute the action requested by the
+   * user.
+   * 
+   * @param context the command line, environment and output of the command
+   * 
+   * @throws ActionException of the execution encountered an error in execution.
+   */
+  public void execute( ExecutionContext context ) throws ActionException;
+
+
+
+
+  /**
+   * This method is called by the CLI to validate arguments and prepare the
+   * action for execution.
+   * 
+   * @param context the command line, environment and output of the command
+   * 
+   * @throws ActionException of the execution encountered an error in processing.
+   */
+  public void validate( ExecutionContext context ) throws ActionException;
+
+}
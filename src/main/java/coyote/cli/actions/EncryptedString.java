@@ -23,6 +23,7 @@ import coyote.commons.StringUtil;
  * 
  * Use this action to generate encrypted values for the property files.
  */
+@Noun("encrypt")
 public class EncryptedString extends AbstractAction {
 
   private static final String OPT_TOKEN = "token";
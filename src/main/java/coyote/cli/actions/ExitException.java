@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.actions;
+
+/**
+ * Thrown in place of {@code System.exit()} when the JVM is resident and must 
+ * survive the end of a command.
+ * 
+ * <p>This is a runtime exception so it can pass through actions unchanged. 
+ * Code catching {@code Exception} in the CLI must re-throw it.</p>
+ */
+public class ExitException extends RuntimeException {
+
+  private static final long serialVersionUID = 4270861931530329212L;
+
+  private final int code;
+
+
+
+
+  public ExitException( final int code ) {
+    super( "exit " + code );
+    this.code = code;
+  }
+
+
+
+
+  /**
+   * @return the exit code of the command
+   */
+  public int getCode() {
+    return code;
+  }
+
+}
@@ -22,6 +22,7 @@ import coyote.dataframe.marshal.JSONMarshaler;
 /**
  * This is an example of how to call a REST service in the action. 
  */
+@Noun("geoip")
 public class GeoIp extends RestAction {
 
   /**
@@ -100,8 +101,13 @@ public class GeoIp extends RestAction {
       // get the results of processing the request
       retval = response.getResult();
 
-      // Printout the formatted JSON data received
-      info( JSONMarshaler.toFormattedString( retval ) );
+      if ( argumentExists( "fmt" ) ) {
+        // write the location as a record in the requested format
+        emit( retval );
+      } else {
+        // Printout the formatted JSON data received
+        info( JSONMarshaler.toFormattedString( retval ) );
+      }
 
     } catch ( final Exception e ) {
       throw new ActionException( "Could not get geolocation", e );
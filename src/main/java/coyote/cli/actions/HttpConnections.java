@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.actions;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+
+import coyote.cli.ExecutionContext;
+import coyote.commons.DateUtil;
+import coyote.commons.SystemPropertyUtil;
+
+
+/**
+ * The HTTP connections shared by all the REST actions of an environment.
+ * 
+ * <p>Each environment has one connection pool, created when it is first
+ * used, so connections opened by one action are reused by the next and
+ * parallel requests are not limited by a pool of their own. The pool is
+ * configured by these properties of the environment (e.g.
+ * {@code DEV.http.maxPerRoute}), or of all environments when given without
+ * one (e.g. {@code http.maxPerRoute}):</p>
+ * <ul>
+ * <li>{@code http.maxTotal} - the connections open at once (100)</li>
+ * <li>{@code http.maxPerRoute} - the connections open to one host (20)</li>
+ * <li>{@code http.keepAlive} - how long an idle connection is kept when the
+ * server does not say (30s)</li>
+ * <li>{@code http.idleTimeout} - idle connections are closed after this
+ * (60s)</li>
+ * <li>{@code http.ioThreads} - the threads doing the I/O of the
+ * asynchronous requests (2)</li>
+ * <li>{@code http.maxInFlight} - the asynchronous requests sent and not yet
+ * answered (64)</li>
+ * </ul>
+ * 
+ * <p>Asynchronous requests have a non-blocking client and pool of their
+ * own, created with the first of them, so many requests can wait on their
+ * responses without a thread each.</p>
+ * 
+ * <p>The clients returned here are shared; closing one would shut down the
+ * pool of its environment, so they must not be closed.</p>
+ */
+public final class HttpConnections {
+
+  /** The number of connections open at once in each environment */
+  public static final String MAX_TOTAL = "http.maxTotal";
+
+  /** The number of connections open to each host */
+  public static final String MAX_PER_ROUTE = "http.maxPerRoute";
+
+  /** How long an idle connection is kept when the server does not say */
+  public static final String KEEP_ALIVE = "http.keepAlive";
+
+  /** How long a connection may stay idle in the pool before it is closed */
+  public static final String IDLE_TIMEOUT = "http.idleTimeout";
+
+  /** The number of threads doing the I/O of asynchronous requests */
+  public static final String IO_THREADS = "http.ioThreads";
+
+  /** The number of asynchronous requests waiting on their response at once */
+  public static final String MAX_IN_FLIGHT = "http.maxInFlight";
+
+  private static final int DEFAULT_MAX_TOTAL = 100;
+  private static final int DEFAULT_MAX_PER_ROUTE = 20;
+  private static final long DEFAULT_KEEP_ALIVE = 30000;
+  private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+  private static final int DEFAULT_IO_THREADS = 2;
+  private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  /** The pool of each environment, by the name of the environment */
+  private static final Map<String, Pool> POOLS = new HashMap<String, Pool>();
+
+  /** Closes the idle and expired connections of the pools */
+  private static Timer evictor = null;
+
+
+
+
+  /**
+   * The connection pools of an environment and the clients using them.
+   */
+  private static class Pool {
+    final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+    ConnectionKeepAliveStrategy keepAlive;
+    CloseableHttpClient client;
+    String environment;
+    volatile PoolingNHttpClientConnectionManager asyncManager;
+    CloseableHttpAsyncClient asyncClient;
+    Semaphore inFlight;
+  }
+
+
+
+
+  private HttpConnections() {}
+
+
+
+
+  /**
+   * Create a client builder using the connection pool and keep-alive
+   * settings of the environment of the current context.
+   * 
+   * <p>Actions needing a client of their own (e.g. with other defaults)
+   * start with this builder so they still share the pool.</p>
+   * 
+   * @return a builder for a client which must not be closed
+   */
+  public static HttpClientBuilder builder() {
+    final Pool pool = getPool( ExecutionContext.current().getEnvironment() );
+    return HttpClientBuilder.create().setConnectionManager( pool.manager ).setKeepAliveStrategy( pool.keepAlive );
+  }
+
+
+
+
+  /**
+   * Send a request without waiting for its response, through the 
+   * non-blocking client of the environment of the current context.
+   * 
+   * <p>When the most requests allowed are already waiting on their response 
+   * this waits for one of them to be answered before sending, so a caller 
+   * sending many requests never has more than that number in flight. The 
+   * returned future is completed by an I/O thread, which must not be kept 
+   * busy; dependent work should be done with the asynchronous methods of 
+   * the future.</p>
+   * 
+   * @param target the host to which the request is sent
+   * @param request the request to send
+   * @param context the context of the request (e.g. its credentials)
+   * 
+   * @return the future completed with the response, or exceptionally if the 
+   *         request failed or the caller was interrupted waiting to send it
+   */
+  public static CompletableFuture<HttpResponse> executeAsync( final HttpHost target, final HttpRequest request, final HttpContext context ) {
+    final CompletableFuture<HttpResponse> retval = new CompletableFuture<HttpResponse>();
+    final Pool pool;
+    try {
+      pool = getPool( ExecutionContext.current().getEnvironment() );
+      startAsync( pool );
+      pool.inFlight.acquire();
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      retval.completeExceptionally( e );
+      return retval;
+    } catch ( final IOException e ) {
+      retval.completeExceptionally( e );
+      return retval;
+    }
+
+    final Future<HttpResponse> exchange = pool.asyncClient.execute( target, request, context, new FutureCallback<HttpResponse>() {
+      @Override
+      public void cancelled() {
+        pool.inFlight.release();
+        retval.cancel( false );
+      }
+
+
+      @Override
+      public void completed( final HttpResponse response ) {
+        pool.inFlight.release();
+        retval.complete( response );
+      }
+
+
+      @Override
+      public void failed( final Exception e ) {
+        pool.inFlight.release();
+        retval.completeExceptionally( e );
+      }
+    } );
+
+    // cancelling the future aborts the exchange
+    retval.whenComplete( ( response, error ) -> {
+      if ( retval.isCancelled() ) {
+        exchange.cancel( true );
+      }
+    } );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Return the client shared by the actions of the environment of the
+   * current context.
+   * 
+   * @return the shared client, which must not be closed
+   */
+  public static CloseableHttpClient getClient() {
+    final Pool pool = getPool( ExecutionContext.current().getEnvironment() );
+    synchronized( pool ) {
+      if ( pool.client == null ) {
+        pool.client = HttpClientBuilder.create().setConnectionManager( pool.manager ).setKeepAliveStrategy( pool.keepAlive ).build();
+      }
+      return pool.client;
+    }
+  }
+
+
+
+
+  /**
+   * Return the connection pool of the given environment, creating it from
+   * the properties of the environment when first used.
+   * 
+   * @param environment the name of the environment, may be null
+   * 
+   * @return the connection pool shared by the actions of the environment
+   */
+  public static PoolingHttpClientConnectionManager getManager( final String environment ) {
+    return getPool( environment ).manager;
+  }
+
+
+
+
+  private static Pool getPool( final String environment ) {
+    final String name = ( environment != null ) ? environment : "";
+    synchronized( POOLS ) {
+      Pool retval = POOLS.get( name );
+      if ( retval == null ) {
+        retval = newPool( environment );
+        POOLS.put( name, retval );
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  /**
+   * Read a setting of the given environment, falling back to the one for
+   * all environments.
+   */
+  private static String getSetting( final String environment, final String key ) {
+    String retval = null;
+    if ( environment != null ) {
+      retval = SystemPropertyUtil.getString( environment + "." + key );
+    }
+    if ( retval == null ) {
+      retval = SystemPropertyUtil.getString( key );
+    }
+    return ( retval != null ) ? retval.trim() : null;
+  }
+
+
+
+
+  private static long getInterval( final String environment, final String key, final long defaultValue ) {
+    final String value = getSetting( environment, key );
+    if ( value != null ) {
+      try {
+        return DateUtil.parseInterval( value );
+      } catch ( final IllegalArgumentException e ) {
+        AbstractAction.error( "Ignoring " + key + " of '" + value + "': " + e.getMessage() );
+      }
+    }
+    return defaultValue;
+  }
+
+
+
+
+  private static int getNumber( final String environment, final String key, final int defaultValue ) {
+    final String value = getSetting( environment, key );
+    if ( value != null ) {
+      try {
+        final int retval = Integer.parseInt( value );
+        if ( retval > 0 ) {
+          return retval;
+        }
+      } catch ( final NumberFormatException e ) {
+        // reported below
+      }
+      AbstractAction.error( "Ignoring " + key + " of '" + value + "', it is not a positive number" );
+    }
+    return defaultValue;
+  }
+
+
+
+
+  /**
+   * Create the connection pool of the given environment from its settings
+   * and have its idle connections closed in the background.
+   */
+  private static Pool newPool( final String environment ) {
+    final Pool retval = new Pool();
+    retval.environment = environment;
+    retval.manager.setMaxTotal( getNumber( environment, MAX_TOTAL, DEFAULT_MAX_TOTAL ) );
+    retval.manager.setDefaultMaxPerRoute( getNumber( environment, MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE ) );
+
+    // the server knows best how long it keeps a connection open
+    final long keepAlive = getInterval( environment, KEEP_ALIVE, DEFAULT_KEEP_ALIVE );
+    retval.keepAlive = new ConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration( final HttpResponse response, final HttpContext context ) {
+        final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+        return ( duration > 0 ) ? duration : keepAlive;
+      }
+    };
+
+    final long idle = getInterval( environment, IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT );
+    if ( evictor == null ) {
+      evictor = new Timer( "cliqs-http-evictor", true );
+    }
+    final long period = Math.max( 1000, Math.min( idle / 2, 30000 ) );
+    evictor.schedule( new TimerTask() {
+      @Override
+      public void run() {
+        retval.manager.closeExpiredConnections();
+        retval.manager.closeIdleConnections( idle, TimeUnit.MILLISECONDS );
+        final PoolingNHttpClientConnectionManager async = retval.asyncManager;
+        if ( async != null ) {
+          async.closeExpiredConnections();
+          async.closeIdleConnections( idle, TimeUnit.MILLISECONDS );
+        }
+      }
+    }, period, period );
+
+    AbstractAction.debug( () -> "HTTP connection pool for " + ( ( environment != null ) ? environment : "all environments" ) + ": " + retval.manager.getMaxTotal() + " connections, " + retval.manager.getDefaultMaxPerRoute() + " per host, keep-alive " + keepAlive + "ms, idle timeout " + idle + "ms" );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Create and start the non-blocking client of the given pool unless it 
+   * already runs.
+   * 
+   * <p>Its threads are daemons so they do not keep the JVM alive.</p>
+   */
+  private static void startAsync( final Pool pool ) throws IOException {
+    synchronized( pool ) {
+      if ( pool.asyncClient != null ) {
+        return;
+      }
+      final ThreadFactory threads = new ThreadFactory() {
+        @Override
+        public Thread newThread( final Runnable r ) {
+          final Thread retval = new Thread( r, "cliqs-http-io-" + THREADS.incrementAndGet() );
+          retval.setDaemon( true );
+          return retval;
+        }
+      };
+      final int ioThreads = getNumber( pool.environment, IO_THREADS, DEFAULT_IO_THREADS );
+      final int maxInFlight = getNumber( pool.environment, MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT );
+
+      final PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager( new DefaultConnectingIOReactor( IOReactorConfig.custom().setIoThreadCount( ioThreads ).build(), threads ) );
+      manager.setMaxTotal( pool.manager.getMaxTotal() );
+      manager.setDefaultMaxPerRoute( pool.manager.getDefaultMaxPerRoute() );
+
+      pool.inFlight = new Semaphore( maxInFlight );
+      pool.asyncClient = HttpAsyncClients.custom().setConnectionManager( manager ).setKeepAliveStrategy( pool.keepAlive ).setThreadFactory( threads ).build();
+      pool.asyncClient.start();
+      pool.asyncManager = manager;
+
+      AbstractAction.debug( () -> "Asynchronous HTTP client for " + ( ( pool.environment != null ) ? pool.environment : "all environments" ) + ": " + ioThreads + " I/O threads, " + maxInFlight + " requests in flight" );
+    }
+  }
+
+}
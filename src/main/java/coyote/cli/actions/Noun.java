@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.actions;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Registers an action with the CLI under the given noun.
+ * 
+ * <p>The annotation is read at build time by an annotation processor which 
+ * generates the registry the CLI uses to find and create actions, so no 
+ * reflection or XML parsing is needed at run time. The annotated class must 
+ * implement {@link Action}, must not be abstract and must have a public 
+ * no-argument constructor.</p>
+ * 
+ * <pre>
+ * &#64;Noun("geoip")
+ * public class GeoIp extends RestAction { ... }</pre>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Noun {
+
+  /**
+   * @return the noun (case insensitive) used on the command line to select 
+   *         the action
+   */
+  String value();
+
+}
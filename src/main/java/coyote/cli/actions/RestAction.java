@@ -12,10 +12,19 @@
 package coyote.cli.actions;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -23,11 +32,14 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 
+import coyote.cli.ExecutionContext;
+import coyote.cli.OutputSink;
+import coyote.cli.format.JsonFrameReader;
 import coyote.commons.StringUtil;
 import coyote.dataframe.DataFrame;
 import coyote.dataframe.marshal.JSONMarshaler;
@@ -50,9 +62,6 @@ public abstract class RestAction extends AbstractAction {
   /** System property which specifies the NTLM domain for proxy user auth */
   public static final String PROXY_DOMAIN = "http.proxyDomain";
 
-  /** This is the persistent http client we will use to send all our requests */
-  private final CloseableHttpClient httpClient = HttpClientBuilder.create().build();
-
   /** Create a context in which we will execute our request */
   private final HttpClientContext localContext = HttpClientContext.create();
 
@@ -101,6 +110,70 @@ public abstract class RestAction extends AbstractAction {
 
 
 
+  /**
+   * Execute the request and copy the body of a successful response to the 
+   * output of the command (e.g. the -o file) as it is.
+   * 
+   * <p>This is for nouns which save an export: the body is neither parsed 
+   * nor held in memory, but copied through a fixed buffer straight into the 
+   * file. The body of an unsuccessful response is not written.</p>
+   * 
+   * <p>A download can not be rotated ({@code -rotate}): the output is only
+   * split at the end of a line, which a binary body may never have.</p>
+   * 
+   * @param target the host to which the request is sent
+   * @param request the request to send
+   * 
+   * @return the status of the response
+   * 
+   * @throws IOException if the request failed, the output could not be 
+   *         written or is rotated
+   */
+  protected Response download( final HttpHost target, final HttpRequest request ) throws IOException {
+    if ( ExecutionContext.current().getRotation() != null ) {
+      throw new IOException( "A download can not be written with -rotate, which only splits the output at the end of a line" );
+    }
+    try (CloseableHttpResponse httpResponse = getHttpClient().execute( target, request, localContext )) {
+      final Response response = newResponse( request, httpResponse );
+
+      final HttpEntity entity = httpResponse.getEntity();
+      final int status = response.getHttpStatusCode();
+      if ( ( entity != null ) && ( status >= 200 ) && ( status < 300 ) ) {
+        final PrintStream out = getOutStream();
+        final long count;
+        try (InputStream content = entity.getContent()) {
+          if ( out instanceof OutputSink ) {
+            count = ( (OutputSink)out ).transferFrom( content );
+          } else {
+            count = copy( content, out );
+          }
+        }
+        debug( () -> "Copied " + count + " bytes of the response to the output" );
+      }
+      return response;
+    }
+  }
+
+
+
+
+  /**
+   * Copy the stream to the output through a fixed buffer.
+   */
+  private static long copy( final InputStream in, final PrintStream out ) throws IOException {
+    final byte[] chunk = new byte[64 * 1024];
+    long retval = 0;
+    for ( int count = in.read( chunk ); count >= 0; count = in.read( chunk ) ) {
+      out.write( chunk, 0, count );
+      retval += count;
+    }
+    out.flush();
+    return retval;
+  }
+
+
+
+
   /**
    * Execute the request over the current connection and return the results.
    * 
@@ -114,48 +187,120 @@ public abstract class RestAction extends AbstractAction {
    * @throws IOException 
    */
   protected Response execute( final HttpHost target, final HttpRequest request ) throws IOException {
-    final Response response = new Response( request );
-
-    // Set the content type to JSON
-    request.setHeader( "content-type", "application/json" );
-    request.setHeader( "accept", "application/json" );
+    setHeaders( request );
 
     // Execute the request
-    try (CloseableHttpResponse httpResponse = httpClient.execute( target, request, localContext )) {
+    try (CloseableHttpResponse httpResponse = getHttpClient().execute( target, request, localContext )) {
+      return toResponse( request, httpResponse );
+    } // try block
+  }
+
 
-      final int status = httpResponse.getStatusLine().getStatusCode();
-      response.setStatusCode( status );
-      response.setStatusPhrase( httpResponse.getStatusLine().getReasonPhrase() );
-      debug( String.format( "Request:\r\n    %s\r\nResponse:\r\n    %s", request.toString(), httpResponse.getStatusLine().toString() ) );
 
-      // Status of a 301 or a 302, look for a Location: header in the response and use that URL
-      if ( status >= 300 && status < 400 ) {
-        response.setLink( httpResponse.getFirstHeader( "Location" ).getValue() );
+
+  /**
+   * Execute the request and pass each record of the response to the given 
+   * handler as soon as it is read.
+   * 
+   * <p>The body is parsed as it arrives rather than read into memory first, 
+   * so the memory used does not grow with the size of the response. Each 
+   * object of the body is a record, as is each element of an array, and 
+   * all of them are passed on:</p>
+   * <pre>
+   * execute( target, new HttpGet( "/records" ), record -&gt; emit( record ) );
+   * </pre>
+   * 
+   * <p>The result of the returned response is not set.</p>
+   * 
+   * @param target the host to which the request is sent
+   * @param request the request to send
+   * @param handler what is done with each record
+   * 
+   * @return the status of the response
+   * 
+   * @throws IOException if the request failed or the body is not valid JSON
+   */
+  protected Response execute( final HttpHost target, final HttpRequest request, final Consumer<? super DataFrame> handler ) throws IOException {
+    setHeaders( request );
+
+    try (CloseableHttpResponse httpResponse = getHttpClient().execute( target, request, localContext )) {
+      final Response response = newResponse( request, httpResponse );
+
+      final HttpEntity entity = httpResponse.getEntity();
+      if ( entity != null ) {
+        final Charset charset = ContentType.getOrDefault( entity ).getCharset();
+        try (JsonFrameReader reader = new JsonFrameReader( entity.getContent(), ( charset != null ) ? charset : Consts.UTF_8 )) {
+          final long count = reader.forEach( handler );
+          debug( () -> "Read " + count + " records from the response" );
+        }
       }
+      return response;
+    }
+  }
 
-      // Check for a body
-      if ( httpResponse.getEntity() != null ) {
 
-        // get the body as a string
-        final String body = EntityUtils.toString( httpResponse.getEntity(), "UTF-8" );
 
-        // Parse the body into frames
-        final List<DataFrame> frames = JSONMarshaler.marshal( body );
 
-        // Retrieve the first frame
-        if ( frames.size() > 0 ) {
-          if ( frames.size() > 1 ) {
-            error( "The response contained more than one object - only using first response object" );
-          }
-          response.setResult( frames.get( 0 ) );
+  /**
+   * Send the request without waiting for the results.
+   * 
+   * <p>Requests are sent by a few I/O threads shared by all the actions of 
+   * the environment, so thousands of them can be sent from one thread:</p>
+   * <pre>
+   * final List&lt;CompletableFuture&lt;Response&gt;&gt; responses = new ArrayList&lt;&gt;();
+   * for ( final String id : ids ) {
+   *   responses.add( executeAsync( target, new HttpGet( "/records/" + id ) ) );
+   * }
+   * </pre>
+   * 
+   * <p>When the most requests allowed (see {@link HttpConnections}) are 
+   * waiting on their response, this waits for one to be answered before 
+   * sending another. The response is parsed on a thread of the common pool 
+   * with the context of the caller bound to it.</p>
+   * 
+   * @param target the host to which the request is sent
+   * @param request the request to send
+   * 
+   * @return the future completed with the response, or exceptionally if the 
+   *         request failed
+   */
+  protected CompletableFuture<Response> executeAsync( final HttpHost target, final HttpRequest request ) {
+    setHeaders( request );
+
+    // each request has its own context as several are in flight at once
+    final HttpClientContext requestContext = HttpClientContext.create();
+    requestContext.setCredentialsProvider( credentialsProvider );
+
+    final ExecutionContext context = ExecutionContext.current();
+    return HttpConnections.executeAsync( target, request, requestContext ).thenApplyAsync( httpResponse -> {
+      final ExecutionContext previous = context.bind();
+      try {
+        return toResponse( request, httpResponse );
+      } catch ( final IOException e ) {
+        throw new CompletionException( e );
+      }
+      finally {
+        ExecutionContext.release( previous );
+      }
+    } );
+  }
 
-        } // if there are frames parsed from the body
 
-      } // if there is a response entity
 
-    } // try block
 
-    return response;
+  /**
+   * Return the http client used to send our requests.
+   * 
+   * <p>The client and its connection pool are shared by all the actions of 
+   * the environment and configured by its properties (see 
+   * {@link HttpConnections}). They are not built until the first request so 
+   * actions which are created but never executed do not pay for them. The 
+   * client must not be closed.</p>
+   * 
+   * @return the persistent http client for this action
+   */
+  protected CloseableHttpClient getHttpClient() {
+    return HttpConnections.getClient();
   }
 
 
@@ -172,4 +317,70 @@ public abstract class RestAction extends AbstractAction {
     credentialsProvider.setCredentials( new AuthScope( target.getHostName(), target.getPort() ), new UsernamePasswordCredentials( username, password ) );
   }
 
+
+
+
+  /**
+   * Create the response to the request from the status of the HTTP response.
+   */
+  private Response newResponse( final HttpRequest request, final HttpResponse httpResponse ) {
+    final Response response = new Response( request );
+
+    final int status = httpResponse.getStatusLine().getStatusCode();
+    response.setStatusCode( status );
+    response.setStatusPhrase( httpResponse.getStatusLine().getReasonPhrase() );
+    debug( () -> String.format( "Request:\r\n    %s\r\nResponse:\r\n    %s", request.toString(), httpResponse.getStatusLine().toString() ) );
+
+    // Status of a 301 or a 302, look for a Location: header in the response and use that URL
+    if ( status >= 300 && status < 400 ) {
+      response.setLink( httpResponse.getFirstHeader( "Location" ).getValue() );
+    }
+    return response;
+  }
+
+
+
+
+  /**
+   * Set the content type of the request to JSON.
+   */
+  private static void setHeaders( final HttpRequest request ) {
+    request.setHeader( "content-type", "application/json" );
+    request.setHeader( "accept", "application/json" );
+  }
+
+
+
+
+  /**
+   * Read the status and the body of the HTTP response into a response.
+   * 
+   * <p>Only one record is expected to be returned.</p>
+   */
+  private Response toResponse( final HttpRequest request, final HttpResponse httpResponse ) throws IOException {
+    final Response response = newResponse( request, httpResponse );
+
+    // Check for a body
+    if ( httpResponse.getEntity() != null ) {
+
+      // get the body as a string
+      final String body = EntityUtils.toString( httpResponse.getEntity(), "UTF-8" );
+
+      // Parse the body into frames
+      final List<DataFrame> frames = JSONMarshaler.marshal( body );
+
+      // Retrieve the first frame
+      if ( frames.size() > 0 ) {
+        if ( frames.size() > 1 ) {
+          error( "The response contained more than one object - only using first response object" );
+        }
+        response.setResult( frames.get( 0 ) );
+
+      } // if there are frames parsed from the body
+
+    } // if there is a response entity
+
+    return response;
+  }
+
 }
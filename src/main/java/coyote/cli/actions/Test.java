@@ -15,6 +15,7 @@ package coyote.cli.actions;
  * This is a simple action which will change over time in the source repository 
  * as it contains logic currently under test.
  */
+@Noun("test")
 public class Test extends AbstractAction {
 
   @Override
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes records as comma separated values.
+ * 
+ * <p>The names of the fields of the first record are written as the header.
+ * The fields of every record are written under the column of the same name,
+ * leaving the columns a record has no field for empty; a record with a field
+ * the header does not have is rejected.
+ * Values containing commas, quotes, line breaks or surrounding spaces are
+ * quoted, with their quotes doubled. Nested frames are written as JSON.</p>
+ */
+public class CsvFormatter extends RecordFormatter {
+
+  /** The name of this format */
+  public static final String NAME = "CSV";
+
+
+
+
+  /**
+   * Append the value, quoting it in place if it needs to be.
+   */
+  private static void appendEscaped( final StringBuilder b, final Object value ) {
+    final int start = b.length();
+    appendText( b, value );
+
+    boolean quote = false;
+    int quotes = 0;
+    for ( int x = start; x < b.length(); x++ ) {
+      final char c = b.charAt( x );
+      if ( c == '"' ) {
+        quotes++;
+      } else if ( ( c == ',' ) || ( c == '\r' ) || ( c == '\n' ) ) {
+        quote = true;
+      }
+    }
+    if ( b.length() > start ) {
+      quote |= ( b.charAt( start ) == ' ' ) || ( b.charAt( b.length() - 1 ) == ' ' );
+    }
+
+    if ( quote || ( quotes > 0 ) ) {
+      for ( int x = b.length() - 1; ( x >= start ) && ( quotes > 0 ); x-- ) {
+        if ( b.charAt( x ) == '"' ) {
+          b.insert( x, '"' );
+          quotes--;
+        }
+      }
+      b.insert( start, '"' );
+      b.append( '"' );
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#header(coyote.dataframe.DataFrame)
+   */
+  @Override
+  protected void header( final DataFrame first ) {
+    final String[] columns = setColumns( first );
+    for ( int x = 0; x < columns.length; x++ ) {
+      if ( x > 0 ) {
+        buffer.append( ',' );
+      }
+      appendEscaped( buffer, columns[x] );
+    }
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#row(coyote.dataframe.DataFrame, long)
+   */
+  @Override
+  protected void row( final DataFrame record, final long index ) {
+    final Object[] values = toColumns( record );
+    for ( int x = 0; x < values.length; x++ ) {
+      if ( x > 0 ) {
+        buffer.append( ',' );
+      }
+      appendEscaped( buffer, values[x] );
+    }
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+}
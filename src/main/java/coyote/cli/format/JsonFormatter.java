@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes records as the elements of a JSON array.
+ * 
+ * <p>The opening bracket is written with the first record and the closing
+ * bracket when the output is finished, so the records are written as they
+ * are emitted. Frames whose fields have no names are written as arrays.</p>
+ */
+public class JsonFormatter extends RecordFormatter {
+
+  /** The name of this format */
+  public static final String NAME = "JSON";
+
+
+
+
+  /**
+   * Append the given frame as a JSON object, or an array if none of its
+   * fields have names.
+   * 
+   * @param b where the JSON is appended
+   * @param frame the frame to append
+   */
+  public static void appendFrame( final StringBuilder b, final DataFrame frame ) {
+    boolean array = ( frame.getFieldCount() > 0 );
+    for ( int x = 0; array && ( x < frame.getFieldCount() ); x++ ) {
+      array = ( frame.getField( x ).getName() == null );
+    }
+
+    b.append( array ? '[' : '{' );
+    for ( int x = 0; x < frame.getFieldCount(); x++ ) {
+      final DataField field = frame.getField( x );
+      if ( x > 0 ) {
+        b.append( ',' );
+      }
+      if ( !array ) {
+        appendString( b, getName( field, x ) );
+        b.append( ':' );
+      }
+      appendValue( b, field.getObjectValue() );
+    }
+    b.append( array ? ']' : '}' );
+  }
+
+
+
+
+  /**
+   * Append the given text as a quoted JSON string.
+   */
+  private static void appendString( final StringBuilder b, final String text ) {
+    b.append( '"' );
+    for ( int x = 0; x < text.length(); x++ ) {
+      final char c = text.charAt( x );
+      switch ( c ) {
+        case '"':
+          b.append( "\\\"" );
+          break;
+        case '\\':
+          b.append( "\\\\" );
+          break;
+        case '\n':
+          b.append( "\\n" );
+          break;
+        case '\r':
+          b.append( "\\r" );
+          break;
+        case '\t':
+          b.append( "\\t" );
+          break;
+        case '\b':
+          b.append( "\\b" );
+          break;
+        case '\f':
+          b.append( "\\f" );
+          break;
+        default:
+          if ( c < 0x20 ) {
+            b.append( "\\u00" );
+            b.append( Character.forDigit( c >> 4, 16 ) );
+            b.append( Character.forDigit( c & 0xF, 16 ) );
+          } else {
+            b.append( c );
+          }
+      }
+    }
+    b.append( '"' );
+  }
+
+
+
+
+  /**
+   * Append the given value as JSON.
+   */
+  private static void appendValue( final StringBuilder b, final Object value ) {
+    if ( value == null ) {
+      b.append( "null" );
+    } else if ( value instanceof DataFrame ) {
+      appendFrame( b, (DataFrame)value );
+    } else if ( ( value instanceof Double ) || ( value instanceof Float ) ) {
+      final double number = ( (Number)value ).doubleValue();
+      if ( Double.isNaN( number ) || Double.isInfinite( number ) ) {
+        b.append( "null" );
+      } else {
+        b.append( value );
+      }
+    } else if ( ( value instanceof Number ) || ( value instanceof Boolean ) ) {
+      b.append( value );
+    } else {
+      appendString( b, value.toString() );
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#footer(long)
+   */
+  @Override
+  protected void footer( final long records ) {
+    buffer.append( ( records == 0 ) ? "[]" : StringUtil.LINE_FEED + "]" );
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#row(coyote.dataframe.DataFrame, long)
+   */
+  @Override
+  protected void row( final DataFrame record, final long index ) {
+    buffer.append( ( index == 0 ) ? "[" : "," );
+    buffer.append( StringUtil.LINE_FEED );
+    appendFrame( buffer, record );
+  }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Reads records from a stream of JSON one at a time as they are decoded.
+ * 
+ * <p>Each object at the top of the stream is a record, as is each element
+ * of an array at the top of the stream, so a response of any size can be
+ * read while only the record being decoded is held in memory. Several
+ * values may follow each other (e.g. NDJSON).</p>
+ * 
+ * <p>Objects become frames with named fields and arrays frames with unnamed
+ * fields, as they are written by {@link JsonFormatter}. Numbers without a
+ * fraction or exponent which fit are read as {@code Long}, others as
+ * {@code Double}. A record which is not an object (e.g. a number in an
+ * array) is a frame with the value as its only, unnamed field.</p>
+ */
+public class JsonFrameReader implements Closeable {
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int position = 0;
+  private int limit = 0;
+  private long line = 1;
+  private long column = 0;
+
+  /** Reused for every string and number */
+  private final StringBuilder text = new StringBuilder( 64 );
+
+  /** True while reading the elements of an array at the top of the stream */
+  private boolean inArray = false;
+
+
+
+
+  /**
+   * @param in the stream of JSON text
+   * @param charset the encoding of the stream
+   */
+  public JsonFrameReader( final InputStream in, final Charset charset ) {
+    this( new InputStreamReader( in, charset ) );
+  }
+
+
+
+
+  /**
+   * @param reader the JSON text
+   */
+  public JsonFrameReader( final Reader reader ) {
+    this.reader = reader;
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+
+
+
+  /**
+   * Read all the records of the stream, passing each to the given handler as
+   * soon as it is decoded.
+   * 
+   * @param handler what is done with each record
+   * 
+   * @return the number of records read
+   * 
+   * @throws IOException if the stream could not be read or is not valid JSON
+   */
+  public long forEach( final Consumer<? super DataFrame> handler ) throws IOException {
+    long retval = 0;
+    for ( DataFrame frame = next(); frame != null; frame = next() ) {
+      handler.accept( frame );
+      retval++;
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Read the next record.
+   * 
+   * @return the next record, or null at the end of the stream
+   * 
+   * @throws IOException if the stream could not be read or is not valid JSON
+   */
+  public DataFrame next() throws IOException {
+    int c = skipSpace();
+    if ( inArray ) {
+      if ( c == ']' ) {
+        inArray = false;
+        return next();
+      } else if ( c != ',' ) {
+        throw error( ( c == -1 ) ? "Unterminated array" : "Expected ',' or ']'" );
+      }
+      c = skipSpace();
+    } else if ( c == '[' ) {
+      c = skipSpace();
+      if ( c == ']' ) {
+        return next();
+      }
+      inArray = true;
+    }
+    if ( c == -1 ) {
+      if ( inArray ) {
+        throw error( "Unexpected end of the stream" );
+      }
+      return null;
+    }
+
+    final Object value = readValue( c );
+    if ( value instanceof DataFrame ) {
+      return (DataFrame)value;
+    }
+    final DataFrame retval = new DataFrame();
+    retval.add( value );
+    return retval;
+  }
+
+
+
+
+  private IOException error( final String message ) {
+    return new IOException( message + " at line " + line + " column " + column );
+  }
+
+
+
+
+  /**
+   * Have the given character read again (only the last one read can be).
+   */
+  private void pushBack( final int c ) {
+    if ( c == '\n' ) {
+      line--;
+    }
+    if ( c != -1 ) {
+      position--;
+      column--;
+    }
+  }
+
+
+
+
+  /**
+   * @return the next character, or -1 at the end of the stream
+   */
+  private int read() throws IOException {
+    if ( position == limit ) {
+      limit = reader.read( buffer, 0, buffer.length );
+      position = 0;
+      if ( limit <= 0 ) {
+        limit = 0;
+        return -1;
+      }
+    }
+    final char c = buffer[position++];
+    if ( c == '\n' ) {
+      line++;
+      column = 0;
+    } else {
+      column++;
+    }
+    return c;
+  }
+
+
+
+
+  /**
+   * Read the fields of an object or the elements of an array into a frame.
+   */
+  private DataFrame readFrame( final boolean object ) throws IOException {
+    final DataFrame retval = new DataFrame();
+    final char end = object ? '}' : ']';
+
+    int c = skipSpace();
+    if ( c == end ) {
+      return retval;
+    }
+    while ( true ) {
+      if ( object ) {
+        if ( c != '"' ) {
+          throw error( "Expected a field name" );
+        }
+        final String name = readString();
+        if ( skipSpace() != ':' ) {
+          throw error( "Expected ':'" );
+        }
+        retval.add( name, readValue( skipSpace() ) );
+      } else {
+        retval.add( readValue( c ) );
+      }
+
+      c = skipSpace();
+      if ( c == end ) {
+        return retval;
+      } else if ( c != ',' ) {
+        throw error( "Expected ',' or '" + end + "'" );
+      }
+      c = skipSpace();
+    }
+  }
+
+
+
+
+  /**
+   * Read the remaining characters of a keyword (true, false or null).
+   */
+  private void readKeyword( final String keyword ) throws IOException {
+    for ( int x = 1; x < keyword.length(); x++ ) {
+      if ( read() != keyword.charAt( x ) ) {
+        throw error( "Expected '" + keyword + "'" );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Read a number starting with the given character.
+   */
+  private Object readNumber( final int first ) throws IOException {
+    text.setLength( 0 );
+    boolean integral = true;
+    int c = first;
+    while ( ( ( c >= '0' ) && ( c <= '9' ) ) || ( c == '-' ) || ( c == '+' ) || ( c == '.' ) || ( c == 'e' ) || ( c == 'E' ) ) {
+      integral &= ( c != '.' ) && ( c != 'e' ) && ( c != 'E' );
+      text.append( (char)c );
+      c = read();
+    }
+    pushBack( c );
+
+    final String number = text.toString();
+    try {
+      if ( integral ) {
+        try {
+          return Long.valueOf( number );
+        } catch ( final NumberFormatException e ) {
+          // too big, read below
+        }
+      }
+      return Double.valueOf( number );
+    } catch ( final NumberFormatException e ) {
+      throw error( "Invalid number '" + number + "'" );
+    }
+  }
+
+
+
+
+  /**
+   * Read a string whose opening quote was read.
+   */
+  private String readString() throws IOException {
+    text.setLength( 0 );
+    while ( true ) {
+      int c = read();
+      if ( c == '"' ) {
+        return text.toString();
+      } else if ( c == -1 ) {
+        throw error( "Unterminated string" );
+      } else if ( c == '\\' ) {
+        c = read();
+        switch ( c ) {
+          case 'b':
+            text.append( '\b' );
+            break;
+          case 'f':
+            text.append( '\f' );
+            break;
+          case 'n':
+            text.append( '\n' );
+            break;
+          case 'r':
+            text.append( '\r' );
+            break;
+          case 't':
+            text.append( '\t' );
+            break;
+          case 'u':
+            int code = 0;
+            for ( int x = 0; x < 4; x++ ) {
+              final int digit = Character.digit( read(), 16 );
+              if ( digit < 0 ) {
+                throw error( "Invalid unicode escape" );
+              }
+              code = ( code << 4 ) | digit;
+            }
+            text.append( (char)code );
+            break;
+          case '"':
+          case '\\':
+          case '/':
+            text.append( (char)c );
+            break;
+          default:
+            throw error( "Invalid escape" );
+        }
+      } else {
+        text.append( (char)c );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Read the value starting with the given character.
+   */
+  private Object readValue( final int c ) throws IOException {
+    switch ( c ) {
+      case '{':
+        return readFrame( true );
+      case '[':
+        return readFrame( false );
+      case '"':
+        return readString();
+      case 't':
+        readKeyword( "true" );
+        return Boolean.TRUE;
+      case 'f':
+        readKeyword( "false" );
+        return Boolean.FALSE;
+      case 'n':
+        readKeyword( "null" );
+        return null;
+      case -1:
+        throw error( "Unexpected end of the stream" );
+      default:
+        if ( ( c == '-' ) || ( ( c >= '0' ) && ( c <= '9' ) ) ) {
+          return readNumber( c );
+        }
+        throw error( "Unexpected character '" + (char)c + "'" );
+    }
+  }
+
+
+
+
+  /**
+   * @return the next character which is not white space, or -1 at the end
+   *         of the stream
+   */
+  private int skipSpace() throws IOException {
+    int c;
+    do {
+      c = read();
+    }
+    while ( ( c == ' ' ) || ( c == '\t' ) || ( c == '\n' ) || ( c == '\r' ) );
+    return c;
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes each record as a JSON object on a line of its own (newline
+ * delimited JSON), which other tools can read one record at a time.
+ */
+public class NdjsonFormatter extends RecordFormatter {
+
+  /** The name of this format */
+  public static final String NAME = "NDJSON";
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#row(coyote.dataframe.DataFrame, long)
+   */
+  @Override
+  protected void row( final DataFrame record, final long index ) {
+    JsonFormatter.appendFrame( buffer, record );
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes records to an output stream in a particular format, one record at a
+ * time as they are emitted.
+ * 
+ * <p>Nothing is held between records except what the format needs (e.g.
+ * whether the header was written), so a result set of any size can be
+ * written. Each record is formatted into a single {@code StringBuilder} which
+ * is reused for every record, then encoded through reused buffers straight
+ * into the output stream.</p>
+ * 
+ * <p>Formatters are found by the name of their format (the value of the
+ * {@code -fmt} option). Others can be added with
+ * {@link #register(String, Class)}.</p>
+ */
+public abstract class RecordFormatter {
+
+  /** The formatters for each format name, in upper case */
+  private static final Map<String, Class<? extends RecordFormatter>> FORMATS = new HashMap<String, Class<? extends RecordFormatter>>();
+
+  static {
+    register( TextFormatter.NAME, TextFormatter.class );
+    register( CsvFormatter.NAME, CsvFormatter.class );
+    register( TabFormatter.NAME, TabFormatter.class );
+    register( JsonFormatter.NAME, JsonFormatter.class );
+    register( NdjsonFormatter.NAME, NdjsonFormatter.class );
+  }
+
+  /** Where each record is formatted before it is written */
+  protected final StringBuilder buffer = new StringBuilder( 256 );
+
+  private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder().onMalformedInput( CodingErrorAction.REPLACE ).onUnmappableCharacter( CodingErrorAction.REPLACE );
+  private char[] chars = new char[256];
+  private CharBuffer charBuffer = CharBuffer.wrap( chars );
+  private final ByteBuffer bytes = ByteBuffer.allocate( 8192 );
+  private long count = 0;
+
+  /** The names of the columns of formats with a header, and a row of them */
+  private String[] columns = null;
+  private Object[] values = null;
+
+
+
+
+  /**
+   * Create the formatter for the given format.
+   * 
+   * @param format the name of the format (case insensitive)
+   * 
+   * @return a new formatter for the format
+   * 
+   * @throws IllegalArgumentException if there is no formatter for the format
+   */
+  public static RecordFormatter newInstance( final String format ) {
+    final Class<? extends RecordFormatter> type;
+    synchronized( FORMATS ) {
+      type = ( format == null ) ? null : FORMATS.get( format.trim().toUpperCase() );
+    }
+    if ( type == null ) {
+      throw new IllegalArgumentException( "Unsupported format '" + format + "'" );
+    }
+    try {
+      return type.newInstance();
+    } catch ( final Exception e ) {
+      throw new IllegalArgumentException( "Could not create formatter for '" + format + "': " + e.getMessage(), e );
+    }
+  }
+
+
+
+
+  /**
+   * Register the formatter for a format.
+   * 
+   * @param format the name of the format (case insensitive)
+   * @param type the formatter, which must have a public no-argument
+   *        constructor
+   */
+  public static void register( final String format, final Class<? extends RecordFormatter> type ) {
+    synchronized( FORMATS ) {
+      FORMATS.put( format.toUpperCase(), type );
+    }
+  }
+
+
+
+
+  /**
+   * Append the value of a field as text.
+   * 
+   * <p>Nested frames are written as JSON.</p>
+   */
+  protected static void appendText( final StringBuilder b, final Object value ) {
+    if ( value instanceof DataFrame ) {
+      JsonFormatter.appendFrame( b, (DataFrame)value );
+    } else if ( value != null ) {
+      b.append( value );
+    }
+  }
+
+
+
+
+  /**
+   * Format the end of the output into the buffer, called after the last
+   * record.
+   * 
+   * @param records the number of records which were written
+   */
+  protected void footer( final long records ) {}
+
+
+
+
+  /**
+   * Write what remains of the format (e.g. the closing bracket of a JSON
+   * array) after the last record.
+   * 
+   * @param out the stream to which the records were written
+   */
+  public void finish( final PrintStream out ) {
+    buffer.setLength( 0 );
+    footer( count );
+    send( out );
+  }
+
+
+
+
+  /**
+   * @return the name of the given field, or its position if it has none
+   */
+  protected static String getName( final DataField field, final int index ) {
+    return ( field.getName() != null ) ? field.getName() : Integer.toString( index );
+  }
+
+
+
+
+  /**
+   * Take the names of the fields of the given record as the columns of the
+   * output, for formats which write them as a header.
+   * 
+   * @param first the first record
+   * 
+   * @return the names of the columns
+   */
+  protected String[] setColumns( final DataFrame first ) {
+    columns = new String[first.getFieldCount()];
+    for ( int x = 0; x < columns.length; x++ ) {
+      columns[x] = getName( first.getField( x ), x );
+    }
+    values = new Object[columns.length];
+    return columns;
+  }
+
+
+
+
+  /**
+   * Place the values of the given record under the columns set by
+   * {@link #setColumns(DataFrame)}, matching the fields by name so records
+   * with their fields in another order line up with the header.
+   * 
+   * <p>A column the record has no field for is left null. The returned array
+   * is reused for the next record.</p>
+   * 
+   * @param record the record to place
+   * 
+   * @return the values of the record, one for each column
+   * 
+   * @throws IllegalArgumentException if the record has a field which is not
+   *         one of the columns
+   */
+  protected Object[] toColumns( final DataFrame record ) {
+    Arrays.fill( values, null );
+    for ( int x = 0; x < record.getFieldCount(); x++ ) {
+      final DataField field = record.getField( x );
+      final String name = getName( field, x );
+      int column = ( ( x < columns.length ) && columns[x].equals( name ) ) ? x : -1;
+      for ( int y = 0; ( column < 0 ) && ( y < columns.length ); y++ ) {
+        if ( columns[y].equals( name ) ) {
+          column = y;
+        }
+      }
+      if ( column < 0 ) {
+        throw new IllegalArgumentException( "Field '" + name + "' of record " + ( count + 1 ) + " is not one of the columns " + Arrays.toString( columns ) );
+      }
+      values[column] = field.getObjectValue();
+    }
+    return values;
+  }
+
+
+
+
+  /**
+   * Format the start of the output into the buffer, called before the first
+   * record (e.g. the column names).
+   * 
+   * @param first the first record
+   */
+  protected void header( final DataFrame first ) {}
+
+
+
+
+  /**
+   * Format the given record into the buffer.
+   * 
+   * @param record the record to format
+   * @param index the position of the record in the output, starting at 0
+   */
+  protected abstract void row( DataFrame record, long index );
+
+
+
+
+  /**
+   * Encode the buffer into the output stream.
+   */
+  private void send( final PrintStream out ) {
+    final int length = buffer.length();
+    if ( length == 0 ) {
+      return;
+    }
+    if ( chars.length < length ) {
+      chars = new char[Math.max( length, chars.length * 2 )];
+      charBuffer = CharBuffer.wrap( chars );
+    }
+    buffer.getChars( 0, length, chars, 0 );
+    charBuffer.clear();
+    charBuffer.limit( length );
+
+    encoder.reset();
+    CoderResult result;
+    do {
+      result = encoder.encode( charBuffer, bytes, true );
+      drain( out );
+    }
+    while ( result.isOverflow() );
+    do {
+      result = encoder.flush( bytes );
+      drain( out );
+    }
+    while ( result.isOverflow() );
+  }
+
+
+
+
+  /**
+   * Write the encoded bytes to the stream and empty the byte buffer.
+   */
+  private void drain( final PrintStream out ) {
+    if ( bytes.position() > 0 ) {
+      out.write( bytes.array(), 0, bytes.position() );
+      bytes.clear();
+    }
+  }
+
+
+
+
+  /**
+   * Format the given record and write it to the stream.
+   * 
+   * <p>The header is written before the first record.</p>
+   * 
+   * @param record the record to write
+   * @param out the stream to which it is written
+   */
+  public void write( final DataFrame record, final PrintStream out ) {
+    buffer.setLength( 0 );
+    if ( count == 0 ) {
+      header( record );
+    }
+    row( record, count++ );
+    send( out );
+  }
+
+}
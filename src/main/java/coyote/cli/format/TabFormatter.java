@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes records as tab separated values.
+ * 
+ * <p>The names of the fields of the first record are written as the header.
+ * The fields of every record are written under the column of the same name,
+ * leaving the columns a record has no field for empty; a record with a field
+ * the header does not have is rejected.
+ * Tabs, line breaks and backslashes in values are escaped as {@code \t},
+ * {@code \n}, {@code \r} and {@code \\} so each record stays on one line.
+ * Nested frames are written as JSON.</p>
+ */
+public class TabFormatter extends RecordFormatter {
+
+  /** The name of this format */
+  public static final String NAME = "TAB";
+
+
+
+
+  /**
+   * Append the value, escaping it in place.
+   */
+  private static void appendEscaped( final StringBuilder b, final Object value ) {
+    final int start = b.length();
+    appendText( b, value );
+
+    for ( int x = b.length() - 1; x >= start; x-- ) {
+      final char c = b.charAt( x );
+      if ( c == '\t' ) {
+        b.setCharAt( x, 't' );
+        b.insert( x, '\\' );
+      } else if ( c == '\n' ) {
+        b.setCharAt( x, 'n' );
+        b.insert( x, '\\' );
+      } else if ( c == '\r' ) {
+        b.setCharAt( x, 'r' );
+        b.insert( x, '\\' );
+      } else if ( c == '\\' ) {
+        b.insert( x, '\\' );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#header(coyote.dataframe.DataFrame)
+   */
+  @Override
+  protected void header( final DataFrame first ) {
+    final String[] columns = setColumns( first );
+    for ( int x = 0; x < columns.length; x++ ) {
+      if ( x > 0 ) {
+        buffer.append( '\t' );
+      }
+      appendEscaped( buffer, columns[x] );
+    }
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#row(coyote.dataframe.DataFrame, long)
+   */
+  @Override
+  protected void row( final DataFrame record, final long index ) {
+    final Object[] values = toColumns( record );
+    for ( int x = 0; x < values.length; x++ ) {
+      if ( x > 0 ) {
+        buffer.append( '\t' );
+      }
+      appendEscaped( buffer, values[x] );
+    }
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+}
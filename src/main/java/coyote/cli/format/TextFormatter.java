@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.format;
+
+import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Writes each record on a line of its own as {@code name=value} pairs, the
+ * default format.
+ */
+public class TextFormatter extends RecordFormatter {
+
+  /** The name of this format */
+  public static final String NAME = "TXT";
+
+
+
+
+  /**
+   * @see coyote.cli.format.RecordFormatter#row(coyote.dataframe.DataFrame, long)
+   */
+  @Override
+  protected void row( final DataFrame record, final long index ) {
+    for ( int x = 0; x < record.getFieldCount(); x++ ) {
+      final DataField field = record.getField( x );
+      if ( x > 0 ) {
+        buffer.append( ", " );
+      }
+      buffer.append( getName( field, x ) );
+      buffer.append( '=' );
+      appendText( buffer, field.getObjectValue() );
+    }
+    buffer.append( StringUtil.LINE_FEED );
+  }
+
+}
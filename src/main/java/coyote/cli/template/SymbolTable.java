@@ -11,10 +11,14 @@
  */
 package coyote.cli.template;
 
+import java.util.Calendar;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 
+import coyote.commons.DateUtil;
+
 
 /**
  * Simply a table of named string values.
@@ -106,6 +110,31 @@ public class SymbolTable extends HashMap {
 
 
 
+  /**
+   * Place the 'now' date and time symbols (e.g. {@code nowDate}, 
+   * {@code nowHour}) for the given time in the table.
+   * 
+   * @param date the time the symbols are to represent
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void putNow( final Date date ) {
+    final Calendar cal = Calendar.getInstance();
+    cal.setTime( date );
+    put( "nowDate", DateUtil.formatDate( date ) );
+    put( "nowTime", DateUtil.formatTime( date ) );
+    put( "nowDateTime", DateUtil.formatDateTime( date ) );
+    put( "nowMonth", String.valueOf( cal.get( Calendar.MONTH ) + 1 ) );
+    put( "nowDay", String.valueOf( cal.get( Calendar.DAY_OF_MONTH ) ) );
+    put( "nowYear", String.valueOf( cal.get( Calendar.YEAR ) ) );
+    put( "nowHour", String.valueOf( cal.get( Calendar.HOUR ) ) );
+    put( "nowMinute", String.valueOf( cal.get( Calendar.MINUTE ) ) );
+    put( "nowSecond", String.valueOf( cal.get( Calendar.SECOND ) ) );
+    put( "nowMillisecond", String.valueOf( cal.get( Calendar.MILLISECOND ) ) );
+  }
+
+
+
+
   /**
    * Read all the System properties into the SymbolTable.
    */
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+
+
+/**
+ * A standard five field cron expression.
+ * 
+ * <p>The fields are minute (0-59), hour (0-23), day of month (1-31), month
+ * (1-12 or JAN-DEC) and day of week (0-7 or SUN-SAT, both 0 and 7 are
+ * Sunday). Each field is a comma separated list of values, ranges
+ * ({@code 1-5}) or {@code *}, each optionally followed by a step
+ * ({@code *}{@code /15}, {@code 0-30/10}). As with cron, when both the day of
+ * month and the day of week are restricted, a day matching either one
+ * matches.</p>
+ * 
+ * <p>Times are calculated in the default time zone.</p>
+ */
+public class CronExpression {
+
+  private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+  private static final String[] DAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+  /** Never look further ahead than this for a matching time */
+  private static final int MAX_YEARS = 5;
+
+  private final String expression;
+  private final BitSet minutes;
+  private final BitSet hours;
+  private final BitSet days;
+  private final BitSet months;
+  private final BitSet weekdays;
+  private final boolean anyDay;
+  private final boolean anyWeekday;
+
+
+
+
+  /**
+   * Parse the given cron expression.
+   * 
+   * @param expression the five fields of the expression separated by spaces
+   * 
+   * @throws IllegalArgumentException if the expression is not valid
+   */
+  public CronExpression( final String expression ) {
+    if ( expression == null ) {
+      throw new IllegalArgumentException( "No cron expression" );
+    }
+    final String[] fields = expression.trim().split( "\\s+" );
+    if ( fields.length != 5 ) {
+      throw new IllegalArgumentException( "Cron expression '" + expression + "' must have 5 fields: minute hour day month weekday" );
+    }
+
+    this.expression = expression.trim();
+    minutes = parse( fields[0], 0, 59, null, 0 );
+    hours = parse( fields[1], 0, 23, null, 0 );
+    days = parse( fields[2], 1, 31, null, 0 );
+    months = parse( fields[3], 1, 12, MONTHS, 1 );
+    weekdays = parse( fields[4], 0, 7, DAYS, 0 );
+    anyDay = fields[2].startsWith( "*" );
+    anyWeekday = fields[4].startsWith( "*" );
+
+    // 7 is also Sunday
+    if ( weekdays.get( 7 ) ) {
+      weekdays.set( 0 );
+    }
+  }
+
+
+
+
+  /**
+   * Return the first time after the given time which matches this
+   * expression.
+   * 
+   * @param after the time after which to look
+   * 
+   * @return the next matching time (on a minute boundary) or null if the
+   *         expression never matches (e.g. the 30th of February)
+   */
+  public Date next( final Date after ) {
+    final Calendar cal = Calendar.getInstance();
+    cal.setTime( after );
+    cal.set( Calendar.SECOND, 0 );
+    cal.set( Calendar.MILLISECOND, 0 );
+    cal.add( Calendar.MINUTE, 1 );
+
+    final int limit = cal.get( Calendar.YEAR ) + MAX_YEARS;
+    while ( cal.get( Calendar.YEAR ) <= limit ) {
+      if ( !months.get( cal.get( Calendar.MONTH ) + 1 ) ) {
+        cal.add( Calendar.MONTH, 1 );
+        cal.set( Calendar.DAY_OF_MONTH, 1 );
+        cal.set( Calendar.HOUR_OF_DAY, 0 );
+        cal.set( Calendar.MINUTE, 0 );
+      } else if ( !matchesDay( cal ) ) {
+        cal.add( Calendar.DAY_OF_MONTH, 1 );
+        cal.set( Calendar.HOUR_OF_DAY, 0 );
+        cal.set( Calendar.MINUTE, 0 );
+      } else if ( !hours.get( cal.get( Calendar.HOUR_OF_DAY ) ) ) {
+        cal.add( Calendar.HOUR_OF_DAY, 1 );
+        cal.set( Calendar.MINUTE, 0 );
+      } else if ( !minutes.get( cal.get( Calendar.MINUTE ) ) ) {
+        cal.add( Calendar.MINUTE, 1 );
+      } else {
+        return cal.getTime();
+      }
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * @return the expression as it was given
+   */
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+
+
+
+  private boolean matchesDay( final Calendar cal ) {
+    final boolean day = days.get( cal.get( Calendar.DAY_OF_MONTH ) );
+    final boolean weekday = weekdays.get( cal.get( Calendar.DAY_OF_WEEK ) - 1 );
+    if ( anyDay || anyWeekday ) {
+      return day && weekday;
+    }
+    return day || weekday;
+  }
+
+
+
+
+  /**
+   * Parse one field into the set of values it matches.
+   * 
+   * @param field the text of the field
+   * @param min the lowest value of the field
+   * @param max the highest value of the field
+   * @param names the names of the values, or null if they have none
+   * @param base the value of the first name
+   */
+  private static BitSet parse( final String field, final int min, final int max, final String[] names, final int base ) {
+    final BitSet retval = new BitSet( max + 1 );
+    for ( final String part : field.split( "," ) ) {
+      String range = part;
+      int step = 1;
+      final int slash = part.indexOf( '/' );
+      if ( slash >= 0 ) {
+        range = part.substring( 0, slash );
+        step = value( part.substring( slash + 1 ), 1, max, null, 0, field );
+      }
+
+      int first;
+      int last;
+      if ( "*".equals( range ) ) {
+        first = min;
+        last = max;
+      } else {
+        final int dash = range.indexOf( '-' );
+        if ( dash >= 0 ) {
+          first = value( range.substring( 0, dash ), min, max, names, base, field );
+          last = value( range.substring( dash + 1 ), min, max, names, base, field );
+        } else {
+          first = value( range, min, max, names, base, field );
+          last = ( slash >= 0 ) ? max : first;
+        }
+      }
+      if ( first > last ) {
+        throw new IllegalArgumentException( "Invalid range '" + range + "' in cron field '" + field + "'" );
+      }
+
+      for ( int x = first; x <= last; x += step ) {
+        retval.set( x );
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  private static int value( final String text, final int min, final int max, final String[] names, final int base, final String field ) {
+    if ( names != null ) {
+      for ( int x = 0; x < names.length; x++ ) {
+        if ( names[x].equalsIgnoreCase( text ) ) {
+          return x + base;
+        }
+      }
+    }
+    try {
+      final int retval = Integer.parseInt( text );
+      if ( ( retval >= min ) && ( retval <= max ) ) {
+        return retval;
+      }
+    } catch ( final NumberFormatException e ) {
+      // reported below
+    }
+    throw new IllegalArgumentException( "Invalid value '" + text + "' in cron field '" + field + "' (" + min + "-" + max + ")" );
+  }
+
+}
@@ -174,6 +174,65 @@ public class DateUtil {
 
 
 
+  /**
+   * Parse a time interval like those given on the command line.
+   * 
+   * <p>The interval is a number followed by a unit: {@code ms}, {@code s}, 
+   * {@code m}, {@code h} or {@code d} (e.g. 60s, 5m, 1h). A number without a 
+   * unit is in seconds.</p>
+   * 
+   * @param text the interval to parse
+   * 
+   * @return the number of milliseconds in the interval
+   * 
+   * @throws IllegalArgumentException if the text is not a positive interval
+   */
+  public static long parseInterval( final String text ) {
+    if ( text == null ) {
+      throw new IllegalArgumentException( "No interval" );
+    }
+    final String value = text.trim().toLowerCase();
+
+    int split = 0;
+    while ( ( split < value.length() ) && Character.isDigit( value.charAt( split ) ) ) {
+      split++;
+    }
+    if ( split == 0 ) {
+      throw new IllegalArgumentException( "Invalid interval '" + text + "'" );
+    }
+
+    final long number;
+    try {
+      number = Long.parseLong( value.substring( 0, split ) );
+    } catch ( final NumberFormatException e ) {
+      throw new IllegalArgumentException( "Invalid interval '" + text + "'" );
+    }
+
+    final String unit = value.substring( split ).trim();
+    final long retval;
+    if ( "ms".equals( unit ) ) {
+      retval = number;
+    } else if ( "".equals( unit ) || "s".equals( unit ) ) {
+      retval = number * 1000;
+    } else if ( "m".equals( unit ) ) {
+      retval = number * 60000;
+    } else if ( "h".equals( unit ) ) {
+      retval = number * 3600000;
+    } else if ( "d".equals( unit ) ) {
+      retval = number * 86400000;
+    } else {
+      throw new IllegalArgumentException( "Invalid interval unit '" + unit + "' in '" + text + "' (use ms, s, m, h or d)" );
+    }
+
+    if ( retval <= 0 ) {
+      throw new IllegalArgumentException( "The interval '" + text + "' must be greater than zero" );
+    }
+    return retval;
+  }
+
+
+
+
   /**
    * Format the date returning only the time portion of the date (i.e. no month, day or year).
    * 
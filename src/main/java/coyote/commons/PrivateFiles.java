@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * Files and directories which only the current user may read or write.
+ * 
+ * <p>Some state (e.g. the port and secret of the daemon) is kept in the local
+ * temporary directory, where other users can guess its name and create it
+ * first. Such state is kept in a directory of the current user which no one
+ * else may enter, and the owner and permissions of that directory are
+ * checked each time it is used, so one created by someone else is never
+ * trusted.</p>
+ * 
+ * <p>The permissions are only checked on file systems supporting POSIX
+ * permissions; elsewhere only the owner is checked.</p>
+ */
+public final class PrivateFiles {
+
+  private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" );
+
+  private static final Set<PosixFilePermission> DIRECTORY = PosixFilePermissions.fromString( "rwx------" );
+
+  private static final Set<PosixFilePermission> FILE = PosixFilePermissions.fromString( "rw-------" );
+
+  private static final Set<PosixFilePermission> OTHERS = EnumSet.of( PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE );
+
+
+
+
+  /**
+   * Check the given file or directory belongs to the current user and no one
+   * else may access it.
+   * 
+   * <p>Symbolic links are not followed, a link is never private.</p>
+   * 
+   * @param file the file or directory to check
+   * 
+   * @throws IOException if it does not exist, is a link, belongs to someone
+   *         else or may be accessed by others
+   */
+  public static void check( final File file ) throws IOException {
+    final Path path = file.toPath();
+    final BasicFileAttributes attributes = Files.readAttributes( path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+    if ( attributes.isSymbolicLink() ) {
+      throw new IOException( "'" + file + "' is a symbolic link" );
+    }
+
+    final UserPrincipal owner = Files.getOwner( path, LinkOption.NOFOLLOW_LINKS );
+    if ( !owner.equals( path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName( System.getProperty( "user.name" ) ) ) ) {
+      throw new IOException( "'" + file + "' belongs to " + owner.getName() );
+    }
+
+    if ( POSIX ) {
+      final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions( path, LinkOption.NOFOLLOW_LINKS );
+      permissions.retainAll( OTHERS );
+      if ( !permissions.isEmpty() ) {
+        throw new IOException( "'" + file + "' may be accessed by other users (" + PosixFilePermissions.toString( Files.getPosixFilePermissions( path, LinkOption.NOFOLLOW_LINKS ) ) + ")" );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Create the given directory so only the current user may use it, or check
+   * an existing one is private.
+   * 
+   * <p>Missing parents are created as usual, only the directory itself is
+   * private.</p>
+   * 
+   * @param directory the directory to create
+   * 
+   * @return the directory
+   * 
+   * @throws IOException if the directory could not be created or exists but
+   *         is not private to the current user
+   */
+  public static File createDirectory( final File directory ) throws IOException {
+    final Path path = directory.getAbsoluteFile().toPath();
+    if ( !Files.exists( path, LinkOption.NOFOLLOW_LINKS ) ) {
+      if ( path.getParent() != null ) {
+        Files.createDirectories( path.getParent() );
+      }
+      try {
+        if ( POSIX ) {
+          Files.createDirectory( path, PosixFilePermissions.asFileAttribute( DIRECTORY ) );
+        } else {
+          Files.createDirectory( path );
+        }
+      } catch ( final FileAlreadyExistsException e ) {
+        // created by another process at the same time, checked below
+      }
+    }
+    check( directory );
+    return directory;
+  }
+
+
+
+
+  /**
+   * Create a new, empty file only the current user may read or write.
+   * 
+   * <p>The file is created with its permissions in one step, so there is no
+   * moment in which others could open it.</p>
+   * 
+   * @param file the file to create
+   * 
+   * @return the file
+   * 
+   * @throws FileAlreadyExistsException if the file already exists
+   * @throws IOException if the file could not be created
+   */
+  public static File createFile( final File file ) throws IOException {
+    if ( POSIX ) {
+      Files.createFile( file.toPath(), PosixFilePermissions.asFileAttribute( FILE ) );
+    } else {
+      Files.createFile( file.toPath() );
+    }
+    return file;
+  }
+
+
+
+
+  /**
+   * Return the private directory of the current user in the local temporary
+   * directory.
+   * 
+   * <p>The directory is not created, use {@link #createDirectory(File)}
+   * before writing to it and {@link #check(File)} before trusting what is
+   * read from it.</p>
+   * 
+   * @param name the name of the application (e.g. cliqs)
+   * 
+   * @return the directory of the current user for the application
+   */
+  public static File getTempDirectory( final String name ) {
+    return new File( System.getProperty( "java.io.tmpdir" ), name + "-" + System.getProperty( "user.name" ) );
+  }
+
+
+
+
+  private PrivateFiles() {}
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+
+/**
+ * The merged result of loading several properties files, saved so later runs
+ * can load it with a single read instead of searching and parsing each file.
+ * 
+ * <p>The snapshot records the path, modification time and size of every file
+ * which was (or could have been) loaded. It is current only as long as none
+ * of those have changed; a file which was missing is recorded too, so
+ * creating it later invalidates the snapshot.</p>
+ * 
+ * <p>The key identifies the inputs which decide which files are searched
+ * (e.g. the home and working directories). A snapshot is only used by a load
+ * with the same key.</p>
+ */
+class PropertySnapshot {
+
+  /** "CFGS" */
+  private static final int MAGIC = 0x43464753;
+
+  private static final int VERSION = 1;
+
+  /** Files modified this recently may change again within their timestamp */
+  private static final long SETTLE_TIME = 2000;
+
+  /**
+   * A file the properties were (or could have been) loaded from.
+   */
+  private static class Source {
+    final String path;
+    final long modified;
+    final long size;
+
+
+
+
+    Source( final String path, final long modified, final long size ) {
+      this.path = path;
+      this.modified = modified;
+      this.size = size;
+    }
+  }
+
+  private final String key;
+  private final List<Source> sources = new ArrayList<Source>();
+  private final Properties properties = new Properties();
+
+
+
+
+  /**
+   * @param key identifies the inputs which decided which files were searched
+   */
+  PropertySnapshot( final String key ) {
+    this.key = key;
+  }
+
+
+
+
+  /**
+   * Read the snapshot in the given file.
+   * 
+   * @param file the snapshot file
+   * @param key the key the snapshot must have been saved with
+   * 
+   * @return the snapshot, or null if the file does not exist, is not a
+   *         snapshot or was saved with a different key
+   * 
+   * @throws IOException if the file could not be read, or belongs to someone
+   *         else or may be written by others, so its properties cannot be 
+   *         trusted
+   */
+  static PropertySnapshot read( final File file, final String key ) throws IOException {
+    if ( !file.isFile() ) {
+      return null;
+    }
+    PrivateFiles.check( file );
+
+    // one sequential read, then parse from memory
+    final DataInputStream in = new DataInputStream( new ByteArrayInputStream( Files.readAllBytes( file.toPath() ) ) );
+    if ( ( in.readInt() != MAGIC ) || ( in.readInt() != VERSION ) || !key.equals( readString( in ) ) ) {
+      return null;
+    }
+
+    final PropertySnapshot retval = new PropertySnapshot( key );
+    for ( int count = in.readInt(); count > 0; count-- ) {
+      retval.sources.add( new Source( readString( in ), in.readLong(), in.readLong() ) );
+    }
+    for ( int count = in.readInt(); count > 0; count-- ) {
+      retval.properties.setProperty( readString( in ), readString( in ) );
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Record a file the properties are loaded from.
+   * 
+   * <p>Call this before the file is read so a change made while it is being
+   * read is detected by the next run.</p>
+   * 
+   * @param file the file, which need not exist
+   */
+  void addSource( final File file ) {
+    final BasicFileAttributes attributes = stat( file );
+    if ( attributes == null ) {
+      sources.add( new Source( file.getAbsolutePath(), -1, -1 ) );
+    } else {
+      sources.add( new Source( file.getAbsolutePath(), attributes.lastModifiedTime().toMillis(), attributes.size() ) );
+    }
+  }
+
+
+
+
+  /**
+   * @return the merged properties
+   */
+  Properties getProperties() {
+    return properties;
+  }
+
+
+
+
+  /**
+   * @return true if none of the source files have changed since the snapshot
+   *         was taken
+   */
+  boolean isCurrent() {
+    for ( final Source source : sources ) {
+      final BasicFileAttributes attributes = stat( new File( source.path ) );
+      if ( attributes == null ) {
+        if ( source.modified != -1 ) {
+          return false;
+        }
+      } else if ( ( attributes.lastModifiedTime().toMillis() != source.modified ) || ( attributes.size() != source.size ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * A file modified in the last moments could be modified again without its
+   * time or size changing, so such a snapshot should not be saved.
+   * 
+   * @return true if all the source files were last modified long enough ago
+   *         to trust their timestamps
+   */
+  boolean isSettled() {
+    final long now = System.currentTimeMillis();
+    for ( final Source source : sources ) {
+      if ( ( source.modified != -1 ) && ( Math.abs( now - source.modified ) < SETTLE_TIME ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Add the properties loaded from a source, overwriting any previously
+   * added with the same names.
+   * 
+   * @param props the properties to add
+   */
+  void putAll( final Properties props ) {
+    properties.putAll( props );
+  }
+
+
+
+
+  /**
+   * Save the snapshot to the given file.
+   * 
+   * <p>The file is replaced atomically where possible, so a concurrent run
+   * reads either the old or the new snapshot. Only the owner may read it as
+   * it may contain (encrypted) credentials.</p>
+   * 
+   * @param file the snapshot file
+   * 
+   * @throws IOException if the snapshot could not be written
+   */
+  void write( final File file ) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream( bytes );
+    out.writeInt( MAGIC );
+    out.writeInt( VERSION );
+    writeString( out, key );
+    out.writeInt( sources.size() );
+    for ( final Source source : sources ) {
+      writeString( out, source.path );
+      out.writeLong( source.modified );
+      out.writeLong( source.size );
+    }
+    out.writeInt( properties.size() );
+    for ( final Map.Entry<Object, Object> entry : properties.entrySet() ) {
+      writeString( out, entry.getKey().toString() );
+      writeString( out, entry.getValue().toString() );
+    }
+    out.flush();
+
+    final File temp = File.createTempFile( file.getName(), ".tmp", file.getAbsoluteFile().getParentFile() );
+    try {
+      temp.setReadable( false, false );
+      temp.setWritable( false, false );
+      temp.setReadable( true, true );
+      temp.setWritable( true, true );
+      try (FileOutputStream stream = new FileOutputStream( temp )) {
+        bytes.writeTo( stream );
+      }
+      try {
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      } catch ( final IOException e ) {
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      }
+    }
+    finally {
+      temp.delete();
+    }
+  }
+
+
+
+
+  private static String readString( final DataInputStream in ) throws IOException {
+    final byte[] data = new byte[in.readInt()];
+    in.readFully( data );
+    return new String( data, StringUtil.UTF_8 );
+  }
+
+
+
+
+  /**
+   * @return the attributes of the file or null if it does not exist or
+   *         cannot be read
+   */
+  private static BasicFileAttributes stat( final File file ) {
+    try {
+      return Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+    } catch ( final IOException e ) {
+      return null;
+    }
+  }
+
+
+
+
+  private static void writeString( final DataOutputStream out, final String text ) throws IOException {
+    final byte[] data = text.getBytes( StringUtil.UTF_8 );
+    out.writeInt( data.length );
+    out.write( data );
+  }
+
+}
@@ -12,6 +12,8 @@
 package coyote.commons;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -215,4 +217,61 @@ public class StringUtil {
     return StringUtil.newString( bytes, StringUtil.UTF_8 );
   }
 
+
+
+
+  /**
+   * Split a line into arguments the way a command shell would.
+   * 
+   * <p>Arguments are separated by whitespace. Text within single or double 
+   * quotes is kept together (without the quotes) and a backslash outside of 
+   * single quotes escapes the character which follows it.</p>
+   * 
+   * @param line the line to split, may be {@code null}
+   * 
+   * @return the arguments in the line, never {@code null}
+   */
+  public static String[] splitArguments( final String line ) {
+    final List<String> retval = new ArrayList<String>();
+    if ( line == null ) {
+      return new String[0];
+    }
+
+    final StringBuilder arg = new StringBuilder();
+    boolean inArg = false;
+    char quote = 0;
+
+    for ( int i = 0; i < line.length(); i++ ) {
+      final char ch = line.charAt( i );
+
+      if ( ( ch == '\\' ) && ( quote != '\'' ) && ( i + 1 < line.length() ) ) {
+        arg.append( line.charAt( ++i ) );
+        inArg = true;
+      } else if ( quote != 0 ) {
+        if ( ch == quote ) {
+          quote = 0;
+        } else {
+          arg.append( ch );
+        }
+      } else if ( ( ch == '"' ) || ( ch == '\'' ) ) {
+        quote = ch;
+        inArg = true;
+      } else if ( Character.isWhitespace( ch ) ) {
+        if ( inArg ) {
+          retval.add( arg.toString() );
+          arg.setLength( 0 );
+          inArg = false;
+        }
+      } else {
+        arg.append( ch );
+        inArg = true;
+      }
+    }
+    if ( inArg ) {
+      retval.add( arg.toString() );
+    }
+
+    return retval.toArray( new String[retval.size()] );
+  }
+
 }
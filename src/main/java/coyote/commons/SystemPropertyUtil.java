@@ -14,8 +14,11 @@ package coyote.commons;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
+import java.net.URL;
+import java.net.URLDecoder;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -42,6 +45,19 @@ public class SystemPropertyUtil {
    */
   public static final String CONFIG_DIR = "cfg.dir";
 
+  /**
+   * System property which, when set to false, disables the snapshot of the
+   * loaded properties
+   */
+  public static final String SNAPSHOT = "cfg.snapshot";
+
+  /**
+   * System property which specifies the working directory of the command 
+   * when the JVM is started in another (e.g. by the start scripts using a 
+   * class data sharing archive)
+   */
+  public static final String WORK_DIR = "work.dir";
+
   private static final Logger LOG = LoggerFactory.getLogger( SystemPropertyUtil.class );
 
 
@@ -93,7 +109,16 @@ public class SystemPropertyUtil {
    * <li>currently set class path</li>
    * <li>home directory of the user running the JVM</li>
    * <li>directory specified by the {@code cfg.dir} system property</li>
-   * <li>current working directory</li></ol></p>
+   * <li>current working directory, or the one specified by the 
+   * {@code work.dir} system property</li></ol></p>
+   *
+   * <p>The merged result is saved as a snapshot in the private directory of 
+   * the user in the temporary directory (see {@link PrivateFiles}) along 
+   * with the modification time and size of each file searched. Later loads 
+   * use the snapshot with a single read for as long as none of those files 
+   * change, which saves searching and parsing each file on slow (e.g. 
+   * network mounted) home directories. Set the {@code cfg.snapshot} system 
+   * property to false to always load the files.</p>
    *
    * <p>If the secure flag is set to true, the system will treat the proxy 
    * password as encrypted text. In this case the value will be read in, 
@@ -107,18 +132,49 @@ public class SystemPropertyUtil {
    */
   private static void load( String name, boolean secure ) {
 
-    // Start with loading the property file from the classpath
-    loadPropertiesFromClasspath( name );
+    // these decide which files are searched, so the snapshot depends on them
+    final String key = name + File.pathSeparator + System.getProperty( "user.home" ) + File.pathSeparator + getWorkPath() + File.pathSeparator + System.getProperty( CONFIG_DIR ) + File.pathSeparator + System.getProperty( "java.class.path" );
+    final File file = getSnapshotFile( name, key );
+
+    PropertySnapshot snapshot = null;
+    if ( ( file != null ) && file.exists() ) {
+      try {
+        PrivateFiles.check( file.getParentFile() );
+        snapshot = PropertySnapshot.read( file, key );
+      } catch ( final IOException e ) {
+        LOG.debug( "Could not read properties snapshot '{}' - Reason: {}", file, e.getMessage() );
+      }
+    }
+
+    if ( ( snapshot != null ) && snapshot.isCurrent() ) {
+      LOG.debug( "Loading {} properties from snapshot '{}'", snapshot.getProperties().size(), file );
+      System.getProperties().putAll( snapshot.getProperties() );
+    } else {
+      snapshot = new PropertySnapshot( key );
+
+      // Start with loading the property file from the classpath
+      loadPropertiesFromClasspath( name, snapshot );
 
-    // then load from the user's home directory
-    loadPropertiesIntoSystem( name, false, System.getProperty( "user.home" ) );
+      // then load from the user's home directory
+      loadPropertiesIntoSystem( name, false, System.getProperty( "user.home" ), snapshot );
 
-    // Load specific property files from the configuration directory which
-    // over-rides those properties previously loaded
-    loadPropertiesIntoSystem( name, false, getConfigPath() );
+      // Load specific property files from the configuration directory which
+      // over-rides those properties previously loaded
+      loadPropertiesIntoSystem( name, false, getConfigPath(), snapshot );
 
-    // Next load specific property files from the current working directory
-    loadPropertiesIntoSystem( name, false, System.getProperty( "user.dir" ) );
+      // Next load specific property files from the current working directory
+      loadPropertiesIntoSystem( name, false, getWorkPath(), snapshot );
+
+      if ( ( file != null ) && snapshot.isSettled() ) {
+        try {
+          PrivateFiles.createDirectory( file.getParentFile() );
+          snapshot.write( file );
+          LOG.debug( "Saved properties snapshot '{}'", file );
+        } catch ( final IOException e ) {
+          LOG.debug( "Could not save properties snapshot '{}' - Reason: {}", file, e.getMessage() );
+        }
+      }
+    }
 
     // Load the Java proxy authenticator if system properties contained the
     // necessary data
@@ -129,6 +185,22 @@ public class SystemPropertyUtil {
 
 
 
+  /**
+   * Return the working directory of the command.
+   * 
+   * <p>This is the working directory of the JVM unless the {@code work.dir}
+   * system property says the command was given in another.</p>
+   * 
+   * @return the path to the working directory of the command
+   */
+  public static String getWorkPath() {
+    final String retval = System.getProperty( WORK_DIR );
+    return isBlank( retval ) ? System.getProperty( "user.dir" ) : retval.trim();
+  }
+
+
+
+
   /**
    * Return the configuration path set in the system properties.
    * 
@@ -152,6 +224,31 @@ public class SystemPropertyUtil {
 
 
 
+  /**
+   * Return the file in which the snapshot of the properties loaded with the 
+   * given name and key is kept.
+   * 
+   * <p>Snapshots are kept in the private directory of the user in the local 
+   * temporary directory, not the (possibly network mounted) home directory, 
+   * one for each key. A snapshot someone else could have written is never 
+   * loaded, as its properties (e.g. {@code http.proxyHost}) decide where the 
+   * commands connect.</p>
+   * 
+   * @param name base name of the properties files
+   * @param key the inputs which decide which files are searched
+   * 
+   * @return the snapshot file or null if snapshots are disabled
+   */
+  private static File getSnapshotFile( final String name, final String key ) {
+    if ( "false".equalsIgnoreCase( System.getProperty( SNAPSHOT ) ) ) {
+      return null;
+    }
+    return new File( PrivateFiles.getTempDirectory( name ), Integer.toHexString( key.hashCode() ) + ".snapshot" );
+  }
+
+
+
+
   /**
    * Searches for the property with the specified key in this property list. 
    * 
@@ -290,13 +387,30 @@ public class SystemPropertyUtil {
 
 
 
-  private static void loadPropertiesFromClasspath( final String name ) {
+  private static void loadPropertiesFromClasspath( final String name, final PropertySnapshot snapshot ) {
     final Properties props = new Properties();
     final String resourcename = name + ".properties";
+
+    // a file added to a directory on the class path changes the directory
+    for ( final String entry : System.getProperty( "java.class.path", "" ).split( File.pathSeparator ) ) {
+      if ( isNotBlank( entry ) && new File( entry ).isDirectory() ) {
+        snapshot.addSource( new File( entry ) );
+      }
+    }
+
     try {
-      props.load( SystemPropertyUtil.class.getClassLoader().getResourceAsStream( resourcename ) );
+      final URL resource = SystemPropertyUtil.class.getClassLoader().getResource( resourcename );
+      final File file = toFile( resource );
+      if ( file != null ) {
+        snapshot.addSource( file );
+      }
+
+      try (InputStream in = resource.openStream()) {
+        props.load( in );
+      }
       LOG.debug( "Loading {} properties from classpath resource '{}'", props.size(), resourcename );
       System.getProperties().putAll( props );
+      snapshot.putAll( props );
     } catch ( final Exception e ) {
       LOG.debug( "Could not find properties file named '{}' on classpath", resourcename );
     }
@@ -306,15 +420,17 @@ public class SystemPropertyUtil {
 
 
 
-  private static void loadPropertiesIntoSystem( final String fileName, final boolean errIfMissing, final String pathName ) {
+  private static void loadPropertiesIntoSystem( final String fileName, final boolean errIfMissing, final String pathName, final PropertySnapshot snapshot ) {
     if ( isNotBlank( pathName ) ) {
       final String filename = pathName + File.separator + fileName + ".properties";
       LOG.debug( String.format( "Trying to load properties from %s into system", filename ) );
+      snapshot.addSource( new File( filename ) );
       final Properties props = new Properties();
-      try {
-        props.load( new FileInputStream( filename ) );
+      try (InputStream in = new FileInputStream( filename )) {
+        props.load( in );
         LOG.debug( "Loading {} properties from '{}'", props.size(), filename );
         System.getProperties().putAll( props );
+        snapshot.putAll( props );
       } catch ( final IOException e ) {
         final String msg = String.format( "Failed to read from %s", filename );
         LOG.debug( String.format( "%s - Reason: %s", msg, e.getMessage() ) );
@@ -328,6 +444,23 @@ public class SystemPropertyUtil {
 
 
 
+  /**
+   * @return the file (or archive) holding the given resource, or null if it 
+   *         is not held in a local file
+   */
+  private static File toFile( final URL resource ) throws IOException {
+    String path = null;
+    if ( "file".equals( resource.getProtocol() ) ) {
+      path = resource.getPath();
+    } else if ( "jar".equals( resource.getProtocol() ) && resource.getPath().startsWith( "file:" ) && resource.getPath().contains( "!/" ) ) {
+      path = resource.getPath().substring( 5, resource.getPath().indexOf( "!/" ) );
+    }
+    return ( path == null ) ? null : new File( URLDecoder.decode( path, StringUtil.UTF_8 ) );
+  }
+
+
+
+
   /**
    * Set a system property.
    * 
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial API and implementation
+ */
+package coyote.cli.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+
+/**
+ * Generates the action registry from the {@code @Noun} annotations on the
+ * actions.
+ * 
+ * <p>The generated class maps each noun to a constructor call of its action so
+ * the CLI can create the action it needs without parsing XML or using
+ * reflection. The annotation and the action interface are referenced by name
+ * so this processor can be compiled before the code it processes.</p>
+ * 
+ * <p>The registry is generated even if no class carries the annotation, as 
+ * the CLI always refers to it, so this processor looks at every round. It 
+ * only claims the annotations of a round if {@code @Noun} is the only one 
+ * besides those of the platform, leaving the rest to other processors.</p>
+ */
+@SupportedAnnotationTypes("*")
+public class NounProcessor extends AbstractProcessor {
+
+  static final String NOUN = "coyote.cli.actions.Noun";
+  static final String ACTION = "coyote.cli.actions.Action";
+  static final String PACKAGE = "coyote.cli";
+  static final String REGISTRY = "GeneratedActionRegistry";
+
+  /** Noun to the qualified name of its action class, sorted for stable output */
+  private final Map<String, String> nouns = new TreeMap<String, String>();
+
+  private boolean generated = false;
+
+
+
+
+  /**
+   * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+   */
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+
+
+
+  /**
+   * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+   */
+  @Override
+  public boolean process( final Set<? extends TypeElement> annotations, final RoundEnvironment round ) {
+    final TypeElement noun = processingEnv.getElementUtils().getTypeElement( NOUN );
+    final TypeElement action = processingEnv.getElementUtils().getTypeElement( ACTION );
+    if ( action == null ) {
+      return false;
+    }
+
+    for ( final Element element : ( noun != null ) ? round.getElementsAnnotatedWith( noun ) : Collections.<Element> emptySet() ) {
+      if ( isValidAction( element, action ) ) {
+        final String name = getNoun( element, noun ).toLowerCase();
+        final String type = ( (TypeElement)element ).getQualifiedName().toString();
+
+        if ( nouns.containsKey( name ) ) {
+          error( element, "The noun '" + name + "' is already used by " + nouns.get( name ) );
+        } else {
+          nouns.put( name, type );
+        }
+      }
+    }
+
+    // all the actions are found in the first round, generate once they are, 
+    // with no nouns at all if there are none
+    if ( !generated ) {
+      generate();
+      generated = true;
+    }
+
+    return isClaimed( annotations, noun );
+  }
+
+
+
+
+  /**
+   * Write the registry class.
+   */
+  private void generate() {
+    try {
+      final JavaFileObject file = processingEnv.getFiler().createSourceFile( PACKAGE + "." + REGISTRY );
+      try (PrintWriter out = new PrintWriter( file.openWriter() )) {
+        out.println( "package " + PACKAGE + ";" );
+        out.println();
+        out.println( "import " + ACTION + ";" );
+        out.println();
+        out.println();
+        out.println( "/**" );
+        out.println( " * Actions registered with the @Noun annotation." );
+        out.println( " * " );
+        out.println( " * <p>Generated by " + NounProcessor.class.getName() + " - do not edit.</p>" );
+        out.println( " */" );
+        out.println( "public final class " + REGISTRY + " implements ActionRegistry {" );
+        out.println();
+        out.print( "  private static final String[] NOUNS = {" );
+        String separator = " ";
+        for ( final String name : nouns.keySet() ) {
+          out.print( separator + "\"" + name + "\"" );
+          separator = ", ";
+        }
+        out.println( " };" );
+        out.println();
+        out.println();
+        out.println();
+        out.println();
+        out.println( "  @Override" );
+        out.println( "  public String[] getNouns() {" );
+        out.println( "    return NOUNS.clone();" );
+        out.println( "  }" );
+        out.println();
+        out.println();
+        out.println();
+        out.println();
+        out.println( "  @Override" );
+        out.println( "  public Action newAction( final String noun ) {" );
+        out.println( "    switch ( noun ) {" );
+        for ( final Map.Entry<String, String> entry : nouns.entrySet() ) {
+          out.println( "      case \"" + entry.getKey() + "\":" );
+          out.println( "        return new " + entry.getValue() + "();" );
+        }
+        out.println( "      default:" );
+        out.println( "        return null;" );
+        out.println( "    }" );
+        out.println( "  }" );
+        out.println();
+        out.println( "}" );
+      }
+    } catch ( final IOException e ) {
+      processingEnv.getMessager().printMessage( Kind.ERROR, "Could not generate the action registry: " + e.getMessage() );
+    }
+  }
+
+
+
+
+  /**
+   * @return the value of the noun annotation on the given element
+   */
+  private String getNoun( final Element element, final TypeElement noun ) {
+    for ( final AnnotationMirror mirror : element.getAnnotationMirrors() ) {
+      if ( mirror.getAnnotationType().asElement().equals( noun ) ) {
+        for ( final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet() ) {
+          if ( "value".equals( entry.getKey().getSimpleName().toString() ) ) {
+            return entry.getValue().getValue().toString();
+          }
+        }
+      }
+    }
+    return "";
+  }
+
+
+
+
+  /**
+   * @return true if the given annotations may be claimed, as none but the 
+   *         noun annotation and those of the platform are among them
+   */
+  private static boolean isClaimed( final Set<? extends TypeElement> annotations, final TypeElement noun ) {
+    if ( ( noun == null ) || !annotations.contains( noun ) ) {
+      return false;
+    }
+    for ( final TypeElement annotation : annotations ) {
+      if ( !annotation.equals( noun ) && !annotation.getQualifiedName().toString().startsWith( "java." ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Make sure the annotated element is an action the registry can create.
+   * 
+   * @return true if the element is a concrete, public action class with a
+   *         public no-argument constructor
+   */
+  private boolean isValidAction( final Element element, final TypeElement action ) {
+    if ( element.getKind() != ElementKind.CLASS ) {
+      error( element, "@Noun can only be placed on classes" );
+      return false;
+    }
+    if ( !element.getModifiers().contains( Modifier.PUBLIC ) || element.getModifiers().contains( Modifier.ABSTRACT ) ) {
+      error( element, "@Noun actions must be public and not abstract" );
+      return false;
+    }
+    if ( !processingEnv.getTypeUtils().isAssignable( element.asType(), action.asType() ) ) {
+      error( element, "@Noun actions must implement " + ACTION );
+      return false;
+    }
+
+    for ( final ExecutableElement constructor : ElementFilter.constructorsIn( element.getEnclosedElements() ) ) {
+      if ( constructor.getParameters().isEmpty() && constructor.getModifiers().contains( Modifier.PUBLIC ) ) {
+        return true;
+      }
+    }
+    error( element, "@Noun actions must have a public no-argument constructor" );
+    return false;
+  }
+
+
+
+
+  private void error( final Element element, final String message ) {
+    processingEnv.getMessager().printMessage( Kind.ERROR, message, element );
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class BlockCompressorTest {
+
+  @Test
+  public void testGzip() throws IOException {
+    final byte[] data = sample( BlockCompressor.BLOCK_SIZE * 3 + 1234 );
+    final byte[] compressed = compress( BlockCompressor.GZIP, data );
+    assertArrayEquals( data, read( new GZIPInputStream( new ByteArrayInputStream( compressed ) ) ) );
+  }
+
+
+
+
+  @Test
+  public void testZlib() throws IOException {
+    final byte[] data = sample( BlockCompressor.BLOCK_SIZE * 3 + 1234 );
+    final byte[] compressed = compress( BlockCompressor.DEFLATE, data );
+    assertArrayEquals( data, read( new InflaterInputStream( new ByteArrayInputStream( compressed ) ) ) );
+  }
+
+
+
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertArrayEquals( new byte[0], read( new GZIPInputStream( new ByteArrayInputStream( compress( BlockCompressor.GZIP, new byte[0] ) ) ) ) );
+    assertArrayEquals( new byte[0], read( new InflaterInputStream( new ByteArrayInputStream( compress( BlockCompressor.DEFLATE, new byte[0] ) ) ) ) );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupported() {
+    new BlockCompressor( new ByteArrayOutputStream(), "bzip2", -1 );
+  }
+
+
+
+
+  /**
+   * Compress the data in uneven writes with flushes in between.
+   */
+  private static byte[] compress( final String format, final byte[] data ) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final BlockCompressor out = new BlockCompressor( bytes, format, -1 );
+    int off = 0;
+    for ( int len = 1; off < data.length; len = len * 3 + 7 ) {
+      final int count = Math.min( len, data.length - off );
+      out.write( data, off, count );
+      off += count;
+      out.flush();
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+
+
+
+  private static byte[] read( final InputStream in ) throws IOException {
+    final ByteArrayOutputStream retval = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    for ( int count = in.read( buffer ); count >= 0; count = in.read( buffer ) ) {
+      retval.write( buffer, 0, count );
+    }
+    in.close();
+    return retval.toByteArray();
+  }
+
+
+
+
+  /**
+   * @return text-like data which compresses, with some noise so it is not 
+   *         trivial
+   */
+  private static byte[] sample( final int size ) {
+    final Random random = new Random( 42 );
+    final byte[] retval = new byte[size];
+    for ( int x = 0; x < size; x++ ) {
+      retval[x] = (byte)( ( random.nextInt( 8 ) == 0 ) ? random.nextInt( 256 ) : 'a' + ( x % 26 ) );
+    }
+    return retval;
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class ConsoleWriterTest {
+
+  @Test(timeout = 10000)
+  public void testOrder() {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream target = new PrintStream( bytes, true );
+    final ExecutionContext command = newCommand( target );
+    final StringBuilder expected = new StringBuilder();
+    for ( int x = 0; x < ConsoleWriter.CAPACITY * 2; x++ ) {
+      ConsoleWriter.post( command, target, x );
+      expected.append( x ).append( '\n' );
+    }
+    ConsoleWriter.await( target );
+    assertEquals( expected.toString(), bytes.toString() );
+  }
+
+
+
+
+  @Test(timeout = 10000)
+  public void testOrderAcrossStreams() {
+    // standard output and error of a command on the same terminal
+    final ByteArrayOutputStream terminal = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream( terminal, true );
+    final PrintStream err = new PrintStream( terminal, true );
+    final ExecutionContext command = newCommand( out );
+    final StringBuilder expected = new StringBuilder();
+    for ( int x = 0; x < ConsoleWriter.CAPACITY; x++ ) {
+      ConsoleWriter.post( command, ( ( x % 3 ) == 0 ) ? err : out, x );
+      expected.append( x ).append( '\n' );
+    }
+    ConsoleWriter.flush( command );
+    assertEquals( expected.toString(), terminal.toString() );
+  }
+
+
+
+
+  @Test(timeout = 10000)
+  public void testSlowStream() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final PrintStream slow = new PrintStream( new OutputStream() {
+      @Override
+      public void write( final int b ) {
+        try {
+          release.await();
+        } catch ( final InterruptedException ignore ) {}
+      }
+    }, true );
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream fast = new PrintStream( bytes, true );
+
+    // a command whose stream does not take its messages holds up no other
+    ConsoleWriter.post( newCommand( slow ), slow, "stuck" );
+    final ExecutionContext command = newCommand( fast );
+    ConsoleWriter.post( command, fast, "one" );
+    ConsoleWriter.flush( command );
+    ConsoleWriter.await( fast );
+    assertEquals( "one\n", bytes.toString() );
+
+    release.countDown();
+    ConsoleWriter.flush();
+  }
+
+
+
+
+  private static ExecutionContext newCommand( final PrintStream out ) {
+    return new ExecutionContext( new ByteArrayInputStream( new byte[0] ), out, out );
+  }
+
+}
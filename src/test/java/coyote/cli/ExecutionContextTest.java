@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import coyote.cli.actions.AbstractAction;
+import coyote.cli.actions.ActionExecutor;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * 
+ */
+public class ExecutionContextTest {
+
+  @Test(timeout = 10000)
+  public void testDetach() throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream( output, true );
+    final ExecutionContext context = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), out, out );
+    final CountDownLatch started = new CountDownLatch( 1 );
+    final CountDownLatch proceed = new CountDownLatch( 1 );
+
+    // an action which does not stop when it is interrupted
+    final AbstractAction action = new AbstractAction() {
+      @Override
+      public void execute() {
+        started.countDown();
+        boolean waiting = true;
+        while ( waiting ) {
+          try {
+            waiting = !proceed.await( 10, TimeUnit.SECONDS );
+          } catch ( final InterruptedException ignore ) {}
+        }
+        ExecutionContext.current().getOut().print( "late" );
+        ExecutionContext.current().emit( new DataFrame(), "CSV" );
+      }
+    };
+
+    final CompletableFuture<Void> future = action.executeAsync( context );
+    started.await();
+    future.cancel( true );
+    final CompletableFuture<Void> stopped = ActionExecutor.whenStopped( future );
+    assertTrue( future.isDone() );
+    assertFalse( stopped.isDone() );
+
+    // the command has ended, nothing the action still does reaches it
+    context.detach();
+    assertSame( out, context.getOut() );
+    proceed.countDown();
+    stopped.get();
+    context.finishRecords();
+    assertEquals( 0, output.size() );
+  }
+
+
+
+
+  @Test(timeout = 30000)
+  public void testCancelledBeforeStart() throws Exception {
+    final ExecutionContext context = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), System.out, System.err );
+    final AbstractAction action = new AbstractAction() {
+      @Override
+      public void execute() {}
+    };
+
+    // cancelled at once, most never reach their thread
+    for ( int x = 0; x < 1000; x++ ) {
+      final CompletableFuture<Void> future = action.executeAsync( context );
+      future.cancel( true );
+      ActionExecutor.whenStopped( future ).get( 5, TimeUnit.SECONDS );
+    }
+  }
+
+}
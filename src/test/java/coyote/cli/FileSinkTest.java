@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class FileSinkTest {
+
+  private File file;
+
+
+
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile( "filesink", ".out" );
+  }
+
+
+
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+
+
+
+  @Test
+  public void testParse() {
+    assertEquals( FileSink.NEVER, FileSink.Sync.parse( "never" ).getMode() );
+    assertEquals( FileSink.CLOSE, FileSink.Sync.parse( " Close " ).getMode() );
+    assertEquals( 5000, FileSink.Sync.parse( "interval:5s" ).getInterval() );
+    assertEquals( OutputSink.DEFAULT_INTERVAL, FileSink.Sync.parse( "interval" ).getInterval() );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseInvalid() {
+    FileSink.Sync.parse( "close:5s" );
+  }
+
+
+
+
+  @Test
+  public void testWrite() throws IOException {
+    // more than the buffer holds, so it is written in several pieces
+    final byte[] data = new byte[FileSink.BUFFER_SIZE * 2 + 100];
+    for ( int x = 0; x < data.length; x++ ) {
+      data[x] = (byte)x;
+    }
+    final FileSink sink = new FileSink( file, new FileSink.Sync( FileSink.INTERVAL, 0 ) );
+    sink.write( data, 0, 10 );
+    sink.flush();
+    assertEquals( 10, file.length() );
+    sink.write( data, 10, data.length - 10 );
+    sink.close();
+    assertArrayEquals( data, Files.readAllBytes( file.toPath() ) );
+
+    try {
+      sink.write( 1 );
+      fail( "Wrote to a closed file" );
+    } catch ( final IOException e ) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void testIntervalSync() throws IOException, InterruptedException {
+    // written through an output sink with its default policy, as an export
+    // with -o is, so only full buffers reach the file
+    final FileSink sink = new FileSink( file, new FileSink.Sync( FileSink.INTERVAL, 1 ) );
+    final OutputSink out = new OutputSink( sink, true, new OutputSink.Policy( OutputSink.SIZE, OutputSink.DEFAULT_SIZE, 0 ) );
+    final byte[] line = new byte[1024];
+    line[line.length - 1] = '\n';
+    for ( int x = 0; x < ( FileSink.BUFFER_SIZE * 3 ) / line.length; x++ ) {
+      out.write( line, 0, line.length );
+      if ( ( x % 64 ) == 0 ) {
+        Thread.sleep( 2 );
+      }
+    }
+    assertTrue( "No sync while the output was written", sink.getSyncCount() > 0 );
+    out.close();
+    assertEquals( FileSink.BUFFER_SIZE * 3, file.length() );
+
+    // never leaves it to the operating system
+    final FileSink never = new FileSink( file, null );
+    never.write( new byte[FileSink.BUFFER_SIZE * 2], 0, FileSink.BUFFER_SIZE * 2 );
+    never.flush();
+    never.close();
+    assertEquals( 0, never.getSyncCount() );
+  }
+
+
+
+
+  @Test
+  public void testTransferFrom() throws IOException {
+    final byte[] data = new byte[FileSink.BUFFER_SIZE + 1];
+    data[data.length - 1] = 7;
+    final FileSink sink = new FileSink( file, null );
+    sink.write( 1 );
+    assertEquals( data.length, sink.transferFrom( Channels.newChannel( new ByteArrayInputStream( data ) ) ) );
+    sink.close();
+
+    final byte[] written = Files.readAllBytes( file.toPath() );
+    assertEquals( data.length + 1, written.length );
+    assertEquals( 1, written[0] );
+    assertEquals( 7, written[written.length - 1] );
+  }
+
+}
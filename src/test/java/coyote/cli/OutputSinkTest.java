@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class OutputSinkTest {
+
+  @Test
+  public void testParse() {
+    assertEquals( OutputSink.LINE, OutputSink.Policy.parse( "line" ).getMode() );
+    assertEquals( 256 * 1024, OutputSink.Policy.parse( "size:256k" ).getSize() );
+    assertEquals( OutputSink.DEFAULT_SIZE, OutputSink.Policy.parse( " SIZE " ).getSize() );
+    assertEquals( 500, OutputSink.Policy.parse( "time:500ms" ).getInterval() );
+    assertEquals( 2L * 1024 * 1024 * 1024, OutputSink.parseBytes( "2g" ) );
+    assertEquals( 10 * 1024 * 1024, OutputSink.parseBytes( "10MB" ) );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseInvalid() {
+    OutputSink.Policy.parse( "line:5" );
+  }
+
+
+
+
+  @Test
+  public void testLinePolicy() {
+    final ByteArrayOutputStream target = new ByteArrayOutputStream();
+    final OutputSink sink = new OutputSink( target, false, OutputSink.Policy.parse( "line" ) );
+    sink.print( "abc" );
+    assertEquals( 0, target.size() );
+    sink.print( "def\nghi" );
+    assertEquals( "abcdef\nghi", target.toString() );
+    sink.close();
+  }
+
+
+
+
+  @Test
+  public void testSizePolicy() {
+    final ByteArrayOutputStream target = new ByteArrayOutputStream();
+    final OutputSink sink = new OutputSink( target, false, new OutputSink.Policy( OutputSink.SIZE, 16, 0 ) );
+    sink.print( "0123456789\n" );
+    assertEquals( 0, target.size() );
+
+    // only written when the next write does not fit
+    sink.print( "0123456789" );
+    assertEquals( 11, target.size() );
+
+    // bigger than the buffer, written as it is
+    sink.print( "01234567890123456789" );
+    assertEquals( 41, target.size() );
+
+    sink.close();
+    assertEquals( 41, target.size() );
+  }
+
+
+
+
+  @Test
+  public void testFullBufferNotFlushed() {
+    final int[] flushes = { 0 };
+    final ByteArrayOutputStream target = new ByteArrayOutputStream() {
+      @Override
+      public void flush() {
+        flushes[0]++;
+      }
+    };
+    final OutputSink sink = new OutputSink( target, false, new OutputSink.Policy( OutputSink.SIZE, 16, 0 ) );
+    for ( int x = 0; x < 10; x++ ) {
+      sink.print( "0123456789" );
+    }
+    assertEquals( 90, target.size() );
+    assertEquals( 0, flushes[0] );
+
+    sink.flush();
+    assertEquals( 100, target.size() );
+    assertEquals( 1, flushes[0] );
+    sink.close();
+  }
+
+
+
+
+  @Test
+  public void testDetect() {
+    final PrintStream console = new PrintStream( new ByteArrayOutputStream() );
+    final ExecutionContext context = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), console, console );
+    final ExecutionContext previous = context.bind();
+    try {
+      assertEquals( OutputSink.SIZE, OutputSink.Policy.detect( console ).getMode() );
+      context.setTerminal( true );
+      assertEquals( OutputSink.LINE, OutputSink.Policy.detect( console ).getMode() );
+      assertEquals( OutputSink.SIZE, OutputSink.Policy.detect( new ByteArrayOutputStream() ).getMode() );
+    }
+    finally {
+      ExecutionContext.release( previous );
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * 
+ */
+public class RecordPipeTest {
+
+  @Test
+  public void testOrder() {
+    final RecordPipe pipe = new RecordPipe( 4 );
+    final DataFrame first = new DataFrame();
+    final DataFrame second = new DataFrame();
+    pipe.put( first );
+    pipe.put( second );
+    pipe.close();
+
+    // nothing is sent after the end
+    pipe.put( new DataFrame() );
+
+    assertSame( first, pipe.take() );
+    assertSame( second, pipe.take() );
+    assertNull( pipe.take() );
+    assertNull( pipe.take() );
+  }
+
+
+
+
+  @Test(timeout = 10000)
+  public void testBackPressure() throws InterruptedException {
+    final RecordPipe pipe = new RecordPipe( 2 );
+    final int[] sent = { 0 };
+    final Thread producer = new Thread() {
+      @Override
+      public void run() {
+        for ( int x = 0; x < 100; x++ ) {
+          pipe.put( new DataFrame() );
+          synchronized( sent ) {
+            sent[0]++;
+          }
+        }
+        pipe.close();
+      }
+    };
+    producer.start();
+
+    // the producer waits once the pipe is full
+    Thread.sleep( 300 );
+    synchronized( sent ) {
+      assertEquals( 2, sent[0] );
+    }
+
+    int received = 0;
+    while ( pipe.take() != null ) {
+      received++;
+    }
+    producer.join();
+    assertEquals( 100, received );
+  }
+
+
+
+
+  @Test(timeout = 10000)
+  public void testCancel() throws InterruptedException {
+    final RecordPipe pipe = new RecordPipe( 1 );
+    final Thread producer = new Thread() {
+      @Override
+      public void run() {
+        for ( int x = 0; x < 100; x++ ) {
+          pipe.put( new DataFrame() );
+        }
+        pipe.close();
+      }
+    };
+    producer.start();
+    pipe.take();
+
+    // the consumer ends early, the producer must not be left waiting
+    pipe.cancel();
+    producer.join( 5000 );
+    assertFalse( producer.isAlive() );
+  }
+
+
+
+
+  @Test
+  public void testSplit() {
+    List<String[]> stages = Pipeline.split( new String[] { "geoip", "-fmt", "csv", "|", "enrich", "|", "filter", "a" } );
+    assertEquals( 3, stages.size() );
+    assertArrayEquals( new String[] { "geoip", "-fmt", "csv" }, stages.get( 0 ) );
+    assertArrayEquals( new String[] { "enrich" }, stages.get( 1 ) );
+    assertArrayEquals( new String[] { "filter", "a" }, stages.get( 2 ) );
+
+    // the whole pipeline as one argument
+    stages = Pipeline.split( new String[] { "geoip | enrich" } );
+    assertEquals( 2, stages.size() );
+    assertArrayEquals( new String[] { "geoip" }, stages.get( 0 ) );
+    assertArrayEquals( new String[] { "enrich" }, stages.get( 1 ) );
+
+    // not a pipeline
+    stages = Pipeline.split( new String[] { "geoip", "list" } );
+    assertEquals( 1, stages.size() );
+    assertEquals( 0, Pipeline.split( null ).size() );
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * 
+ */
+public class ResultCacheTest {
+
+  private File directory;
+  private ByteArrayOutputStream output;
+  private ExecutionContext context;
+
+
+
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File( Files.createTempDirectory( "cache" ).toFile(), "entries" );
+    output = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream( output, true );
+    context = new ExecutionContext( new ByteArrayInputStream( new byte[0] ), out, out );
+  }
+
+
+
+
+  @After
+  public void tearDown() {
+    final File[] entries = directory.listFiles();
+    if ( entries != null ) {
+      for ( final File entry : entries ) {
+        entry.delete();
+      }
+    }
+    directory.delete();
+    directory.getParentFile().delete();
+  }
+
+
+
+
+  @Test
+  public void testReplay() {
+    final ResultCache cache = new ResultCache( directory, ResultCache.DEFAULT_SIZE );
+    assertFalse( cache.replay( context, "geoip" ) );
+
+    store( cache, "geoip", "result\n", 60000 );
+    assertEquals( "result\n", output.toString() );
+
+    output.reset();
+    assertTrue( cache.replay( context, "geoip" ) );
+    assertEquals( "result\n", output.toString() );
+    assertFalse( cache.replay( context, "other" ) );
+  }
+
+
+
+
+  @Test
+  public void testFailedNotStored() {
+    final ResultCache cache = new ResultCache( directory, ResultCache.DEFAULT_SIZE );
+    final ResultCache.Recorder recorder = cache.record( context, "geoip", 60000 );
+    context.getOut().print( "partial" );
+    recorder.finish( false );
+    assertFalse( cache.replay( context, "geoip" ) );
+    assertEquals( 0, directory.listFiles().length );
+  }
+
+
+
+
+  @Test
+  public void testExpired() throws InterruptedException {
+    final ResultCache cache = new ResultCache( directory, ResultCache.DEFAULT_SIZE );
+    store( cache, "geoip", "result\n", 1 );
+    Thread.sleep( 20 );
+
+    output.reset();
+    assertFalse( cache.replay( context, "geoip" ) );
+    assertEquals( 0, output.size() );
+
+    // the expired entry is removed
+    assertEquals( 0, directory.listFiles().length );
+  }
+
+
+
+
+  @Test
+  public void testEviction() throws InterruptedException {
+    final ResultCache cache = new ResultCache( directory, 250 );
+    final String result = new String( new char[100] ).replace( '\0', 'x' );
+    store( cache, "first", result, 60000 );
+    store( cache, "second", result, 60000 );
+    Thread.sleep( 1100 );
+
+    // using the first keeps it, so the second is the least recently used
+    assertTrue( cache.replay( context, "first" ) );
+    store( cache, "third", result, 60000 );
+
+    assertTrue( cache.replay( context, "first" ) );
+    assertFalse( cache.replay( context, "second" ) );
+    assertTrue( cache.replay( context, "third" ) );
+  }
+
+
+
+
+  @Test
+  public void testRecords() {
+    final ResultCache cache = new ResultCache( directory, ResultCache.DEFAULT_SIZE );
+    context.downstream = new RecordPipe( 4 );
+    final ResultCache.Recorder recorder = cache.record( context, "geoip", 60000 );
+    final DataFrame record = new DataFrame();
+    record.add( "name", "value" );
+    record.add( "count", 3 );
+    context.emit( record, null );
+    recorder.finish( true );
+    context.downstream.take();
+
+    assertTrue( cache.replay( context, "geoip" ) );
+    final DataFrame replayed = context.downstream.take();
+    assertEquals( "name", replayed.getField( 0 ).getName() );
+    assertEquals( "value", replayed.getField( 0 ).getObjectValue() );
+    assertEquals( 3, replayed.getField( 1 ).getObjectValue() );
+  }
+
+
+
+
+  @Test
+  public void testUntrusted() throws IOException {
+    Assume.assumeTrue( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) );
+
+    final ResultCache cache = new ResultCache( directory, ResultCache.DEFAULT_SIZE );
+    store( cache, "geoip", "result\n", 60000 );
+    final File entry = directory.listFiles()[0];
+
+    // others could have written it
+    entry.setWritable( true, false );
+    assertFalse( cache.replay( context, "geoip" ) );
+
+    // nor is anything stored in a directory others may use
+    entry.setWritable( false, false );
+    entry.setWritable( true, true );
+    directory.setReadable( true, false );
+    assertFalse( cache.replay( context, "geoip" ) );
+    assertNull( cache.record( context, "geoip", 60000 ) );
+  }
+
+
+
+
+  private void store( final ResultCache cache, final String key, final String result, final long ttl ) {
+    final ResultCache.Recorder recorder = cache.record( context, key, ttl );
+    assertNotNull( recorder );
+    context.getOut().print( result );
+    recorder.finish( true );
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import coyote.commons.StringUtil;
+
+
+/**
+ * 
+ */
+public class RotatingOutputTest {
+
+  @Test
+  public void testParse() {
+    assertEquals( 256L * 1024 * 1024, RotatingOutput.Limit.parse( "256MB" ).getSize() );
+    assertEquals( 3600000, RotatingOutput.Limit.parse( "1h" ).getInterval() );
+    final RotatingOutput.Limit both = RotatingOutput.Limit.parse( "1GB, 1h" );
+    assertEquals( 1024L * 1024 * 1024, both.getSize() );
+    assertEquals( 3600000, both.getInterval() );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseInvalid() {
+    RotatingOutput.Limit.parse( "lots" );
+  }
+
+
+
+
+  @Test
+  public void testLineBoundaries() throws IOException {
+    final List<ByteArrayOutputStream> segments = new ArrayList<ByteArrayOutputStream>();
+    final RotatingOutput out = new RotatingOutput( new RotatingOutput.Segments() {
+      @Override
+      public OutputStream open() {
+        final ByteArrayOutputStream retval = new ByteArrayOutputStream();
+        segments.add( retval );
+        return retval;
+      }
+    }, new RotatingOutput.Limit( 10, 0 ) );
+
+    // the limit is crossed in the middle of a line, which is finished first
+    write( out, "12345678" );
+    write( out, "90abc\nde" );
+    write( out, "f\n" );
+    write( out, "ghijklmnopq\nrs\n" );
+    out.close();
+
+    assertEquals( 3, segments.size() );
+    assertEquals( "1234567890abc\n", segments.get( 0 ).toString() );
+    assertEquals( "def\nghijklmnopq\n", segments.get( 1 ).toString() );
+    assertEquals( "rs\n", segments.get( 2 ).toString() );
+  }
+
+
+
+
+  @Test
+  public void testSegmentRenamed() throws IOException {
+    final File file = File.createTempFile( "segment", ".txt" );
+    final File temporary = new File( file.getParentFile(), "." + file.getName() + ".part" );
+    try {
+      final RotatingOutput.Segment segment = new RotatingOutput.Segment( new FileSink( temporary, null ), temporary, file );
+      segment.write( "data\n".getBytes( StringUtil.UTF_8 ) );
+      segment.flush();
+      assertTrue( temporary.exists() );
+      assertEquals( 0, file.length() );
+
+      segment.close();
+      segment.close();
+      assertFalse( temporary.exists() );
+      assertEquals( "data\n", new String( Files.readAllBytes( file.toPath() ), StringUtil.UTF_8 ) );
+    }
+    finally {
+      temporary.delete();
+      file.delete();
+    }
+  }
+
+
+
+
+  private static void write( final OutputStream out, final String text ) throws IOException {
+    out.write( text.getBytes( StringUtil.UTF_8 ) );
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli.actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * 
+ */
+public class HttpConnectionsTest {
+
+  @Test
+  public void testSettings() {
+    System.setProperty( "POOLTEST." + HttpConnections.MAX_PER_ROUTE, "7" );
+    System.setProperty( HttpConnections.MAX_TOTAL, "50" );
+    System.setProperty( "POOLBAD." + HttpConnections.MAX_PER_ROUTE, "-3" );
+    try {
+      // the environment's own setting first, then the one for all of them
+      assertEquals( 7, HttpConnections.getManager( "POOLTEST" ).getDefaultMaxPerRoute() );
+      assertEquals( 50, HttpConnections.getManager( "POOLTEST" ).getMaxTotal() );
+
+      // an invalid setting is ignored
+      assertEquals( 20, HttpConnections.getManager( "POOLBAD" ).getDefaultMaxPerRoute() );
+
+      // one pool for each environment
+      assertSame( HttpConnections.getManager( "POOLTEST" ), HttpConnections.getManager( "POOLTEST" ) );
+    }
+    finally {
+      System.clearProperty( "POOLTEST." + HttpConnections.MAX_PER_ROUTE );
+      System.clearProperty( HttpConnections.MAX_TOTAL );
+      System.clearProperty( "POOLBAD." + HttpConnections.MAX_PER_ROUTE );
+    }
+  }
+
+
+
+
+  @Test(timeout = 30000)
+  public void testExecuteAsync() throws Exception {
+    final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+    server.createContext( "/", exchange -> {
+      final byte[] body = exchange.getRequestURI().getPath().getBytes( "UTF-8" );
+      exchange.sendResponseHeaders( 200, body.length );
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write( body );
+      }
+    } );
+    server.start();
+    try {
+      final HttpHost target = new HttpHost( "127.0.0.1", server.getAddress().getPort() );
+      final List<CompletableFuture<HttpResponse>> responses = new ArrayList<CompletableFuture<HttpResponse>>();
+      for ( int x = 0; x < 100; x++ ) {
+        responses.add( HttpConnections.executeAsync( target, new HttpGet( "/" + x ), new BasicHttpContext() ) );
+      }
+      for ( int x = 0; x < responses.size(); x++ ) {
+        final HttpResponse response = responses.get( x ).get();
+        assertEquals( 200, response.getStatusLine().getStatusCode() );
+        assertEquals( "/" + x, EntityUtils.toString( response.getEntity() ) );
+      }
+    }
+    finally {
+      server.stop( 0 );
+    }
+  }
+
+}
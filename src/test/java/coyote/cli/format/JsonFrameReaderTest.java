@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * 
+ */
+public class JsonFrameReaderTest {
+
+  @Test
+  public void testArray() throws IOException {
+    final List<DataFrame> records = read( "[ {\"a\":1}, {\"a\":2.5, \"b\":null} ,\n{} ]" );
+    assertEquals( 3, records.size() );
+    assertEquals( "a", records.get( 0 ).getField( 0 ).getName() );
+    assertEquals( 1L, records.get( 0 ).getField( 0 ).getObjectValue() );
+    assertEquals( 2.5, records.get( 1 ).getField( 0 ).getObjectValue() );
+    assertNull( records.get( 1 ).getField( 1 ).getObjectValue() );
+    assertEquals( 0, records.get( 2 ).getFieldCount() );
+
+    assertEquals( 0, read( "[]" ).size() );
+    assertEquals( 0, read( "  " ).size() );
+  }
+
+
+
+
+  @Test
+  public void testNdjson() throws IOException {
+    final List<DataFrame> records = read( "{\"n\":\"one\"}\n{\"n\":\"two\"}\n\n{\"n\":\"three\"}\n" );
+    assertEquals( 3, records.size() );
+    assertEquals( "three", records.get( 2 ).getField( 0 ).getObjectValue() );
+  }
+
+
+
+
+  @Test
+  public void testValues() throws IOException {
+    final DataFrame record = read( "{\"s\":\"q\\\"\\\\\\n\\u00e9\",\"t\":true,\"f\":false,\"e\":1e3,\"neg\":-7,\"big\":12345678901234567890,\"o\":{\"x\":[1,2]}}" ).get( 0 );
+    assertEquals( "q\"\\\n\u00e9", record.getField( 0 ).getObjectValue() );
+    assertEquals( Boolean.TRUE, record.getField( 1 ).getObjectValue() );
+    assertEquals( Boolean.FALSE, record.getField( 2 ).getObjectValue() );
+    assertEquals( 1000.0, record.getField( 3 ).getObjectValue() );
+    assertEquals( -7L, record.getField( 4 ).getObjectValue() );
+    assertTrue( record.getField( 5 ).getObjectValue() instanceof Double );
+
+    final DataFrame nested = (DataFrame)record.getField( 6 ).getObjectValue();
+    final DataFrame array = (DataFrame)nested.getField( 0 ).getObjectValue();
+    assertEquals( 2, array.getFieldCount() );
+    assertNull( array.getField( 1 ).getName() );
+    assertEquals( 2L, array.getField( 1 ).getObjectValue() );
+  }
+
+
+
+
+  @Test
+  public void testScalarRecords() throws IOException {
+    final List<DataFrame> records = read( "[1, \"two\"]" );
+    assertEquals( 2, records.size() );
+    assertEquals( 1, records.get( 0 ).getFieldCount() );
+    assertEquals( "two", records.get( 1 ).getField( 0 ).getObjectValue() );
+  }
+
+
+
+
+  @Test
+  public void testMalformed() {
+    assertMalformed( "[{\"a\":1}" );
+    assertMalformed( "[{\"a\":1} {\"a\":2}]" );
+    assertMalformed( "{\"a\" 1}" );
+    assertMalformed( "{a:1}" );
+    assertMalformed( "{\"a\":tru}" );
+    assertMalformed( "{\"a\":\"open}" );
+    assertMalformed( "{\"a\":1" );
+  }
+
+
+
+
+  @Test
+  public void testErrorPosition() {
+    try {
+      read( "{\"a\":1}\n{\"b\":}" );
+      fail( "Read malformed JSON" );
+    } catch ( final IOException e ) {
+      assertTrue( e.getMessage(), e.getMessage().contains( "line 2" ) );
+    }
+  }
+
+
+
+
+  private static void assertMalformed( final String json ) {
+    try {
+      read( json );
+      fail( "Read malformed JSON: " + json );
+    } catch ( final IOException e ) {
+      // expected
+    }
+  }
+
+
+
+
+  private static List<DataFrame> read( final String json ) throws IOException {
+    final List<DataFrame> retval = new ArrayList<DataFrame>();
+    try (JsonFrameReader reader = new JsonFrameReader( new StringReader( json ) )) {
+      reader.forEach( record -> retval.add( record ) );
+    }
+    return retval;
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.cli.format;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * 
+ */
+public class RecordFormatterTest {
+
+  @Test
+  public void testCsvQuoting() {
+    final DataFrame record = new DataFrame();
+    record.add( "name", "a,b" );
+    record.add( "quote", "say \"hi\"" );
+    record.add( "lines", "one\ntwo" );
+    record.add( "space", " padded " );
+    record.add( "plain", "text" );
+    assertEquals( "name,quote,lines,space,plain\n\"a,b\",\"say \"\"hi\"\"\",\"one\ntwo\",\" padded \",text\n", format( "CSV", record ) );
+  }
+
+
+
+
+  @Test
+  public void testCsvColumns() {
+    final DataFrame first = new DataFrame();
+    first.add( "a", "1" );
+    first.add( "b", "2" );
+    first.add( "c", "3" );
+    final DataFrame reordered = new DataFrame();
+    reordered.add( "c", "6" );
+    reordered.add( "a", "4" );
+    assertEquals( "a,b,c\n1,2,3\n4,,6\n", format( "CSV", first, reordered ) );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCsvUnknownColumn() {
+    final DataFrame first = new DataFrame();
+    first.add( "a", "1" );
+    final DataFrame other = new DataFrame();
+    other.add( "b", "2" );
+    format( "CSV", first, other );
+  }
+
+
+
+
+  @Test
+  public void testTabEscaping() {
+    final DataFrame first = new DataFrame();
+    first.add( "a", "x\ty" );
+    first.add( "b", "back\\slash" );
+    final DataFrame second = new DataFrame();
+    second.add( "b", "line\nbreak" );
+    assertEquals( "a\tb\nx\\ty\tback\\\\slash\n\tline\\nbreak\n", format( "TAB", first, second ) );
+  }
+
+
+
+
+  @Test
+  public void testJsonEscaping() {
+    final DataFrame record = new DataFrame();
+    record.add( "text", "say \"hi\"\\\n\t\u0001" );
+    record.add( "number", 42 );
+    record.add( "nothing", Double.NaN );
+    assertEquals( "[\n{\"text\":\"say \\\"hi\\\"\\\\\\n\\t\\u0001\",\"number\":42,\"nothing\":null}\n]\n", format( "JSON", record ) );
+  }
+
+
+
+
+  @Test
+  public void testJsonEmpty() {
+    assertEquals( "[]\n", format( "JSON" ) );
+  }
+
+
+
+
+  private static String format( final String format, final DataFrame... records ) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream( bytes, true );
+    final RecordFormatter formatter = RecordFormatter.newInstance( format );
+    for ( final DataFrame record : records ) {
+      formatter.write( record, out );
+    }
+    formatter.finish( out );
+    return bytes.toString();
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class CronExpressionTest {
+
+  @Test
+  public void testEveryFiveMinutes() {
+    final CronExpression cron = new CronExpression( "*/5 * * * *" );
+    assertEquals( date( 2015, 3, 11, 10, 5 ), cron.next( date( 2015, 3, 11, 10, 0 ) ) );
+    assertEquals( date( 2015, 3, 11, 10, 5 ), cron.next( date( 2015, 3, 11, 10, 3 ) ) );
+    assertEquals( date( 2015, 3, 11, 11, 0 ), cron.next( date( 2015, 3, 11, 10, 58 ) ) );
+  }
+
+
+
+
+  @Test
+  public void testRangesAndNames() {
+    // weekdays at 8:30 and 17:30, 11 Mar 2015 was a Wednesday
+    final CronExpression cron = new CronExpression( "30 8,17 * JAN-dec MON-FRI" );
+    assertEquals( date( 2015, 3, 11, 17, 30 ), cron.next( date( 2015, 3, 11, 9, 0 ) ) );
+    assertEquals( date( 2015, 3, 16, 8, 30 ), cron.next( date( 2015, 3, 13, 18, 0 ) ) );
+  }
+
+
+
+
+  @Test
+  public void testDayOrWeekday() {
+    // the 1st of the month or any Sunday (0 and 7)
+    final CronExpression cron = new CronExpression( "0 0 1 * 7" );
+    assertEquals( date( 2015, 3, 15, 0, 0 ), cron.next( date( 2015, 3, 11, 0, 0 ) ) );
+    assertEquals( date( 2015, 4, 1, 0, 0 ), cron.next( date( 2015, 3, 29, 0, 0 ) ) );
+  }
+
+
+
+
+  @Test
+  public void testNever() {
+    assertNull( new CronExpression( "0 0 30 2 *" ).next( date( 2015, 3, 11, 0, 0 ) ) );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidValue() {
+    new CronExpression( "60 * * * *" );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingField() {
+    new CronExpression( "* * * *" );
+  }
+
+
+
+
+  private static Date date( final int year, final int month, final int day, final int hour, final int minute ) {
+    final Calendar cal = Calendar.getInstance();
+    cal.clear();
+    cal.set( year, month - 1, day, hour, minute );
+    return cal.getTime();
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class DateUtilTest {
+
+  /**
+   * Test method for {@link coyote.commons.DateUtil#parseInterval(java.lang.String)}.
+   */
+  @Test
+  public void testParseInterval() {
+    assertEquals( 60000, DateUtil.parseInterval( "60s" ) );
+    assertEquals( 60000, DateUtil.parseInterval( "60" ) );
+    assertEquals( 250, DateUtil.parseInterval( "250ms" ) );
+    assertEquals( 300000, DateUtil.parseInterval( " 5M " ) );
+    assertEquals( 7200000, DateUtil.parseInterval( "2h" ) );
+    assertEquals( 86400000, DateUtil.parseInterval( "1d" ) );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseIntervalUnit() {
+    DateUtil.parseInterval( "5 weeks" );
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseIntervalZero() {
+    DateUtil.parseInterval( "0s" );
+  }
+
+}
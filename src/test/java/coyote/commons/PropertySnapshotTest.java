@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ * 
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class PropertySnapshotTest {
+
+  private File source;
+  private File missing;
+  private File file;
+
+
+
+
+  @Before
+  public void setUp() throws IOException {
+    source = File.createTempFile( "snapshot", ".properties" );
+    missing = new File( source.getPath() + ".missing" );
+    file = File.createTempFile( "snapshot", ".snapshot" );
+    write( source, "a=1" );
+    source.setLastModified( System.currentTimeMillis() - 60000 );
+  }
+
+
+
+
+  @After
+  public void tearDown() {
+    source.delete();
+    missing.delete();
+    file.delete();
+  }
+
+
+
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final PropertySnapshot snapshot = new PropertySnapshot( "key" );
+    snapshot.addSource( source );
+    snapshot.addSource( missing );
+    final Properties props = new Properties();
+    props.setProperty( "a", "1" );
+    props.setProperty( "b", "caf\u00e9 = \u00fcber" );
+    snapshot.putAll( props );
+    assertTrue( snapshot.isSettled() );
+    snapshot.write( file );
+
+    final PropertySnapshot loaded = PropertySnapshot.read( file, "key" );
+    assertNotNull( loaded );
+    assertTrue( loaded.isCurrent() );
+    assertEquals( props, loaded.getProperties() );
+
+    // a different key never uses the snapshot
+    assertNull( PropertySnapshot.read( file, "other" ) );
+  }
+
+
+
+
+  @Test
+  public void testChangedSource() throws IOException {
+    final PropertySnapshot snapshot = new PropertySnapshot( "key" );
+    snapshot.addSource( source );
+    snapshot.write( file );
+
+    write( source, "a=22" );
+    assertFalse( PropertySnapshot.read( file, "key" ).isCurrent() );
+  }
+
+
+
+
+  @Test
+  public void testCreatedSource() throws IOException {
+    final PropertySnapshot snapshot = new PropertySnapshot( "key" );
+    snapshot.addSource( missing );
+    snapshot.write( file );
+    assertTrue( PropertySnapshot.read( file, "key" ).isCurrent() );
+
+    write( missing, "a=1" );
+    assertFalse( PropertySnapshot.read( file, "key" ).isCurrent() );
+
+    // just modified, its timestamp cannot be trusted yet
+    snapshot.addSource( missing );
+    assertFalse( snapshot.isSettled() );
+  }
+
+
+
+
+  @Test
+  public void testUntrusted() throws IOException {
+    Assume.assumeTrue( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) );
+
+    final PropertySnapshot snapshot = new PropertySnapshot( "key" );
+    snapshot.addSource( source );
+    snapshot.write( file );
+    assertNotNull( PropertySnapshot.read( file, "key" ) );
+
+    // others could have written it
+    file.setWritable( true, false );
+    try {
+      PropertySnapshot.read( file, "key" );
+      fail( "Read a snapshot others may write" );
+    } catch ( final IOException e ) {
+      // expected
+    }
+  }
+
+
+
+
+  private static void write( final File target, final String text ) throws IOException {
+    try (FileOutputStream out = new FileOutputStream( target )) {
+      out.write( text.getBytes( StringUtil.UTF_8 ) );
+    }
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ *
+ * Contributors:
+ *   Stephan D. Cote 
+ *      - Initial concept and initial implementation
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+/**
+ * 
+ */
+public class StringUtilTest {
+
+  /**
+   * Test method for {@link coyote.commons.StringUtil#splitArguments(java.lang.String)}.
+   */
+  @Test
+  public void testSplitArguments() {
+    assertArrayEquals( new String[] { "geoip", "-env", "DEV" }, StringUtil.splitArguments( "  geoip  -env\tDEV " ) );
+    assertArrayEquals( new String[] { "encrypt", "-token", "two words" }, StringUtil.splitArguments( "encrypt -token \"two words\"" ) );
+    assertArrayEquals( new String[] { "encrypt", "-token", "it's \\\"here\\\"" }, StringUtil.splitArguments( "encrypt -token 'it'\\''s \\\"here\\\"'" ) );
+    assertArrayEquals( new String[] { "a b", "" }, StringUtil.splitArguments( "a\\ b ''" ) );
+  }
+
+
+
+
+  @Test
+  public void testSplitArgumentsEmpty() {
+    assertEquals( 0, StringUtil.splitArguments( null ).length );
+    assertEquals( 0, StringUtil.splitArguments( "   " ).length );
+  }
+
+}